@@ -0,0 +1,97 @@
+package com.springboot.brushup.students.benchmark;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+
+/**
+ * Lombok generated equals/hashCode of the entities in the hash sets behind Course.addStudent and Student.addCourse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityHashingBenchmark {
+
+	@Param({"100", "10000", "100000"})
+	private int setSize;
+
+	private Course course;
+
+	private Student present;
+
+	private Student absent;
+
+	private Student added;
+
+	private Set<Student> studentSet;
+
+	private Set<Course> courseSet;
+
+	@Setup
+	public void setup() {
+		List<Course> courses = Fixtures.courses(setSize, true);
+		List<Student> students = Fixtures.students(setSize + 2, courses, 5, true);
+
+		course = courses.get(0);
+		for (Student student: students.subList(0, setSize)) {
+			course.addStudent(student);
+		}
+		present = students.get(setSize / 2);
+		absent = students.get(setSize);
+		added = students.get(setSize + 1);
+
+		studentSet = course.getStudents();
+		courseSet = new HashSet<>(courses);
+	}
+
+	@Benchmark
+	public int studentHashCode() {
+		return present.hashCode();
+	}
+
+	@Benchmark
+	public boolean studentEquals() {
+		return present.equals(absent);
+	}
+
+	@Benchmark
+	public boolean containsStudent() {
+		return studentSet.contains(present);
+	}
+
+	@Benchmark
+	public boolean missingStudent() {
+		return studentSet.contains(absent);
+	}
+
+	@Benchmark
+	public boolean addStudent() {
+		// keeps the set at its size for the next invocation
+		course.addStudent(added);
+		return studentSet.remove(added);
+	}
+
+	@Benchmark
+	public boolean containsCourse() {
+		return courseSet.contains(course);
+	}
+}
@@ -0,0 +1,45 @@
+package com.springboot.brushup.students.benchmark;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+
+/**
+ * Entity graphs shared by the benchmarks, built the way the API builds them (students own the enrollments).
+ */
+final class Fixtures {
+
+	private static final long START = Timestamp.valueOf("2017-09-01 08:00:00").getTime();
+
+	private Fixtures() {
+	}
+
+	static List<Course> courses(int count, boolean withIds) {
+		List<Course> courses = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			courses.add(Course.builder().id(withIds ? i + 1 : null).name("Course " + i).build());
+		}
+		return courses;
+	}
+
+	/**
+	 * @param coursesPerStudent every student takes this many courses, picked round robin
+	 */
+	static List<Student> students(int count, List<Course> courses, int coursesPerStudent, boolean withIds) {
+		List<Student> students = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Student.StudentBuilder student = Student.builder()
+					.id(withIds ? i + 1 : null)
+					.name("Student " + i)
+					.startDt(new Timestamp(START + i * 1000L));
+			for (int c = 0; c < coursesPerStudent && !courses.isEmpty(); c++) {
+				student.course(courses.get((i + c) % courses.size()));
+			}
+			students.add(student.build());
+		}
+		return students;
+	}
+}
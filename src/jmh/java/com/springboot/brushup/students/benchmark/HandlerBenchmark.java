@@ -0,0 +1,133 @@
+package com.springboot.brushup.students.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.springboot.brushup.students.Application;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.StudentDetail;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.StudentRepository;
+import com.springboot.brushup.students.rest.CourseService;
+import com.springboot.brushup.students.rest.StudentService;
+
+/**
+ * Direct invocation of the REST handlers (no HTTP, no serialization) against the embedded database of the
+ * "embedded" profile, with the production cache setup: single lookups are served by the cache after the first call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+
+	@Param({"1000"})
+	private int students;
+
+	@Param({"100"})
+	private int courses;
+
+	@Param({"5"})
+	private int coursesPerStudent;
+
+	@Param({"100"})
+	private int pageSize;
+
+	private ConfigurableApplicationContext context;
+
+	private CourseService courseService;
+
+	private StudentService studentService;
+
+	private Integer courseId;
+
+	private Integer studentId;
+
+	private String coursesEtag;
+
+	@Setup
+	public void setup() {
+		context = new SpringApplicationBuilder(Application.class)
+				.profiles("embedded")
+				.web(false)
+				.run();
+		courseService = context.getBean(CourseService.class);
+		studentService = context.getBean(StudentService.class);
+
+		List<Course> savedCourses = context.getBean(CourseRepository.class).save(Fixtures.courses(courses, false));
+		List<Student> savedStudents = context.getBean(StudentRepository.class)
+				.save(Fixtures.students(students, savedCourses, coursesPerStudent, false));
+		courseId = savedCourses.get(courses / 2).getId();
+		studentId = savedStudents.get(students / 2).getId();
+
+		ServletWebRequest request = webRequest(null);
+		courseService.getAllCourses(null, pageSize, request);
+		coursesEtag = request.getResponse().getHeader(HttpHeaders.ETAG);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Course getCourse() throws Exception {
+		return courseService.getCourse(courseId, webRequest(null)).call();
+	}
+
+	@Benchmark
+	public ResponseEntity<List<Course>> getAllCourses() throws Exception {
+		return courseService.getAllCourses(null, pageSize, webRequest(null)).call();
+	}
+
+	@Benchmark
+	public ResponseEntity<List<Course>> getAllCoursesNotModified() throws Exception {
+		return courseService.getAllCourses(null, pageSize, webRequest(coursesEtag)).call();
+	}
+
+	@Benchmark
+	public Student getStudent() throws Exception {
+		return studentService.getStudent(studentId, webRequest(null)).call();
+	}
+
+	@Benchmark
+	public StudentDetail getStudentDetail() throws Exception {
+		return studentService.getStudentDetail(studentId).call();
+	}
+
+	@Benchmark
+	public ResponseEntity<List<Student>> getAllStudents() throws Exception {
+		return studentService.getAllStudents(null, pageSize, webRequest(null)).call();
+	}
+
+	private static ServletWebRequest webRequest(String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		return new ServletWebRequest(request, new MockHttpServletResponse());
+	}
+}
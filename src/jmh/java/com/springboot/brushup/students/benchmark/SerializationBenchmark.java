@@ -0,0 +1,85 @@
+package com.springboot.brushup.students.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.rest.BinaryFormats;
+
+/**
+ * Jackson serialization of the response bodies, for pages of different sizes and enrollment fan outs,
+ * in JSON and in the binary formats clients can ask for instead (see BinaryFormats).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({"1", "100", "1000"})
+	private int students;
+
+	@Param({"0", "5", "50"})
+	private int coursesPerStudent;
+
+	@Param({"json", "smile", "cbor"})
+	private String format;
+
+	private ObjectMapper mapper;
+
+	private List<Course> courseList;
+
+	private List<Student> studentList;
+
+	@Setup
+	public void setup() {
+		// configured like the mappers of the message converters
+		switch (format) {
+		case "smile":
+			mapper = BinaryFormats.objectMapper(new SmileFactory(), Jackson2ObjectMapperBuilder.json());
+			break;
+		case "cbor":
+			mapper = BinaryFormats.objectMapper(new CBORFactory(), Jackson2ObjectMapperBuilder.json());
+			break;
+		default:
+			mapper = Jackson2ObjectMapperBuilder.json().build();
+		}
+		courseList = Fixtures.courses(Math.max(coursesPerStudent * 2, 1), true);
+		studentList = Fixtures.students(students, courseList, coursesPerStudent, true);
+	}
+
+	@Benchmark
+	public byte[] students() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(studentList);
+	}
+
+	@Benchmark
+	public byte[] student() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(studentList.get(0));
+	}
+
+	@Benchmark
+	public byte[] courses() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(courseList);
+	}
+}
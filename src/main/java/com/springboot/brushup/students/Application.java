@@ -1,24 +1,31 @@
 package com.springboot.brushup.students;
 
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.List;
 
-import javax.transaction.Transactional;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
 import com.springboot.brushup.students.domain.Course;
 import com.springboot.brushup.students.domain.Student;
 import com.springboot.brushup.students.repository.CourseRepository;
 import com.springboot.brushup.students.repository.StudentRepository;
+import com.springboot.brushup.students.roster.RosterImport;
+import com.springboot.brushup.students.roster.RosterImporter;
 
 @SpringBootApplication
+@EnableCaching
 //@EntityScan(basePackages = "com.springboot.brushup.students.domain") // not needed since this main App class is in the base package
 //@EnableJpaRepositories //(basePackages = "com.springboot.brushup.students.repository") // not needed since this main App class is in the base package
 public class Application implements CommandLineRunner {
@@ -31,6 +38,20 @@ public class Application implements CommandLineRunner {
 	@Autowired
 	private CourseRepository courseRepo;
 	
+	@Autowired
+	private RosterImporter rosterImporter;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	// the dumps load both tables, off in the fast-startup profile
+	@Value("${startup.dump-tables:true}")
+	private boolean dumpTables;
+	
+	// roster to import at startup (see RosterImporter), as in --roster-import.file=roster.csv
+	@Value("${roster-import.file:}")
+	private String rosterFile;
+	
 
 	public static void main(String []args) {
 		
@@ -41,10 +62,25 @@ public class Application implements CommandLineRunner {
 			.build().run(args);
 	}
 	
-	@Transactional
 	public void run(String... args) {
-		printStudents();
-		printCourses();
+		if (dumpTables) {
+			// only reads, so a read replica serves the dumps when there is one
+			TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+			readOnly.setReadOnly(true);
+			readOnly.execute(status -> {
+				printStudents();
+				printCourses();
+				return null;
+			});
+		}
+		
+		// outside of any transaction, the import commits as it goes
+		if (StringUtils.hasText(rosterFile)) {
+			RosterImport rosterImport = rosterImporter.importFile(Paths.get(rosterFile));
+			if (rosterImport.getState() == RosterImport.State.FAILED) {
+				logger.error("Roster import of {} failed: {}", rosterFile, rosterImport.getFailure());
+			}
+		}
 		
 		//createEntriesIfNotExist();
 	}
@@ -0,0 +1,242 @@
+package com.springboot.brushup.students.admission;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.springboot.brushup.students.async.AsyncConfiguration;
+import com.springboot.brushup.students.rest.constants.RestPaths;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admission control of the REST API, ahead of the handlers, so that a client hammering the API or its expensive
+ * endpoints cannot take the repository executor threads (and database connections) from the cheap lookups:
+ * <ul>
+ * <li>a rate limit per client, a token bucket of admission.rate-limit.per-second requests a second,
+ * with bursts of admission.rate-limit.burst (0 for no limit), answered 429 beyond it.
+ * Clients are told apart by their API key (the admission.api-key-header header), or else by their address</li>
+ * <li>a cap on the concurrent requests of each expensive endpoint, admission.max-concurrent.listings (full pages
+ * of courses and students), .export and .batches (0 for no cap), answered 503 beyond it. Keep their sum below
+ * the pool size of the repository executor, the threads left are the cheap lookups' own</li>
+ * </ul>
+ * Rejected requests are answered right away, without a body, with a Retry-After. They show up in /metrics as
+ * admission.rate-limited and admission.shed.&lt;endpoint&gt;, next to admission.active.&lt;endpoint&gt;
+ * (requests in progress) and admission.clients (clients with a bucket).
+ *
+ * The address is the connection's, or the forwarded one behind a proxy (see server.use-forward-headers).
+ * API keys are taken as sent, nothing authenticates them yet.
+ */
+@Slf4j
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+	public static final String METRICS_PREFIX = "admission.";
+
+	// clients idle for that long come back to a full bucket anyway
+	private static final long IDLE_MINUTES = 10;
+	private static final long MAX_CLIENTS = 100_000;
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static final UrlPathHelper PATHS = new UrlPathHelper();
+
+	@Value("${admission.rate-limit.per-second:50}")
+	private double ratePerSecond;
+
+	@Value("${admission.rate-limit.burst:100}")
+	private double burst;
+
+	@Value("${admission.api-key-header:X-API-Key}")
+	private String apiKeyHeader;
+
+	@Value("${admission.max-concurrent.listings:4}")
+	private int maxListings;
+
+	@Value("${admission.max-concurrent.export:2}")
+	private int maxExports;
+
+	@Value("${admission.max-concurrent.batches:2}")
+	private int maxBatches;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	private final Cache<String, TokenBucket> buckets = Caffeine.newBuilder()
+			.maximumSize(MAX_CLIENTS)
+			.expireAfterAccess(IDLE_MINUTES, TimeUnit.MINUTES)
+			.build();
+
+	private final List<ConcurrencyLimit> limits = new ArrayList<>();
+
+	private Meter rateLimited;
+
+	@PostConstruct
+	void init() {
+		rateLimited = registry.meter(METRICS_PREFIX + "rate-limited");
+		registry.register(METRICS_PREFIX + "clients", (Gauge<Long>) buckets::estimatedSize);
+
+		addLimit("listings", HttpMethod.GET, maxListings, RestPaths.COURSES, RestPaths.STUDENTS);
+		addLimit("export", HttpMethod.GET, maxExports, RestPaths.STUDENTS + "/export");
+		addLimit("batches", HttpMethod.POST, maxBatches, RestPaths.COURSES + "/batch", RestPaths.STUDENTS + "/batch");
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !PATHS.getPathWithinApplication(request).startsWith(RestPaths.BASE_PATH + "/");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		if (ratePerSecond > 0) {
+			String client = client(request);
+			long now = System.nanoTime();
+			long waitNanos = buckets.get(client, key -> new TokenBucket(burst, ratePerSecond, now)).tryTake(now);
+			if (waitNanos > 0) {
+				log.debug("Rate limited {}", client);
+				rateLimited.mark();
+				// in whole seconds, rounded up
+				reject(response, HttpStatus.TOO_MANY_REQUESTS, (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+				return;
+			}
+		}
+
+		ConcurrencyLimit limit = limitOf(request);
+		if (limit == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		if (!limit.permits.tryAcquire()) {
+			log.debug("Shed {} request", limit.name);
+			limit.shed.mark();
+			reject(response, HttpStatus.SERVICE_UNAVAILABLE, Long.parseLong(AsyncConfiguration.RETRY_AFTER_SECONDS));
+			return;
+		}
+		boolean async = false;
+		try {
+			filterChain.doFilter(request, response);
+			if (request.isAsyncStarted()) {
+				// the handler returned a Callable: the request is over once its result is written, on another thread
+				// (the container only dispatches it once this thread is done, the listener is there by then)
+				request.getAsyncContext().addListener(limit.releasing());
+				async = true;
+			}
+		} finally {
+			if (!async) {
+				limit.permits.release();
+			}
+		}
+	}
+
+	private String client(HttpServletRequest request) {
+		String apiKey = request.getHeader(apiKeyHeader);
+		return (StringUtils.hasText(apiKey) ? "key:" + apiKey : "address:" + request.getRemoteAddr());
+	}
+
+	private ConcurrencyLimit limitOf(HttpServletRequest request) {
+		String path = normalized(PATHS.getPathWithinApplication(request));
+		for (ConcurrencyLimit limit: limits) {
+			if (limit.method.matches(request.getMethod()) && limit.paths.contains(path)) {
+				return limit;
+			}
+		}
+		return null;
+	}
+
+	// the handlers are mapped to the paths with a trailing slash and a format extension too (/courses/, /courses.json)
+	static String normalized(String path) {
+		String normalized = path;
+		while (normalized.length() > 1 && normalized.endsWith("/")) {
+			normalized = normalized.substring(0, normalized.length() - 1);
+		}
+		int extension = normalized.lastIndexOf('.');
+		if (extension > normalized.lastIndexOf('/')) {
+			normalized = normalized.substring(0, extension);
+		}
+		return normalized;
+	}
+
+	private void addLimit(String name, HttpMethod method, int maxConcurrent, String... paths) {
+		if (maxConcurrent <= 0) {
+			return;
+		}
+		ConcurrencyLimit limit = new ConcurrencyLimit(name, method, Arrays.asList(paths), new Semaphore(maxConcurrent),
+				registry.meter(METRICS_PREFIX + "shed." + name));
+		registry.register(METRICS_PREFIX + "active." + name, (Gauge<Integer>) () -> maxConcurrent - limit.permits.availablePermits());
+		limits.add(limit);
+	}
+
+	private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds) {
+		response.setStatus(status.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+	}
+
+	private static class ConcurrencyLimit {
+		final String name;
+		final HttpMethod method;
+		final List<String> paths;
+		final Semaphore permits;
+		final Meter shed;
+
+		ConcurrencyLimit(String name, HttpMethod method, List<String> paths, Semaphore permits, Meter shed) {
+			this.name = name;
+			this.method = method;
+			this.paths = paths;
+			this.permits = permits;
+			this.shed = shed;
+		}
+
+		// releases the permit once the asynchronous request completes (also after a timeout or an error)
+		AsyncListener releasing() {
+			AtomicBoolean released = new AtomicBoolean();
+			return new AsyncListener() {
+				@Override
+				public void onComplete(AsyncEvent event) {
+					if (released.compareAndSet(false, true)) {
+						permits.release();
+					}
+				}
+
+				@Override
+				public void onTimeout(AsyncEvent event) {
+				}
+
+				@Override
+				public void onError(AsyncEvent event) {
+				}
+
+				@Override
+				public void onStartAsync(AsyncEvent event) {
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.springboot.brushup.students.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit of one client: a burst of up to capacity requests, then ratePerSecond requests a second on average.
+ * Refilled on use, from the time elapsed since the previous request (no timer).
+ */
+class TokenBucket {
+
+	private final double capacity;
+
+	private final double tokensPerNano;
+
+	private double tokens;
+
+	private long refilled;
+
+	TokenBucket(double capacity, double ratePerSecond, long nowNanos) {
+		this.capacity = capacity;
+		this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.tokens = capacity;
+		this.refilled = nowNanos;
+	}
+
+	/**
+	 * Takes a token if there is one.
+	 *
+	 * @return 0 if a token was taken, otherwise the nanoseconds until the next one
+	 */
+	synchronized long tryTake(long nowNanos) {
+		tokens = Math.min(capacity, tokens + (nowNanos - refilled) * tokensPerNano);
+		refilled = nowNanos;
+		if (tokens >= 1) {
+			tokens -= 1;
+			return 0;
+		}
+		return (long) Math.ceil((1 - tokens) / tokensPerNano);
+	}
+}
@@ -0,0 +1,125 @@
+package com.springboot.brushup.students.async;
+
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * With repository-executor.enabled, handlers returning a Callable run it on the bounded repository executor, releasing
+ * the servlet thread while they wait on the database. When the executor queue is full the request is rejected right away 
+ * (503, see the handlers of the controllers), and requests running longer than the timeout get a 503 too.
+ * The executor is exposed in /metrics as executor.repository.* (active threads, queue depth, time spent queued, rejections).
+ * 
+ * Otherwise (the default) the Callable runs right away on the servlet thread, as a synchronous handler would
+ * (no async request is started, see InlineCallableReturnValueHandler), the servlet container's threads then being the only bound.
+ */
+@Configuration
+public class AsyncConfiguration extends WebMvcConfigurerAdapter {
+
+	public static final String METRICS_PREFIX = "executor.repository.";
+	
+	// sent with the 503 of rejected requests
+	public static final String RETRY_AFTER_SECONDS = "1";
+
+	@Value("${repository-executor.enabled:false}")
+	private boolean enabled;
+
+	@Value("${repository-executor.pool-size:16}")
+	private int poolSize;
+
+	@Value("${repository-executor.queue-capacity:200}")
+	private int queueCapacity;
+
+	@Value("${repository-executor.timeout-ms:10000}")
+	private long timeoutMillis;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	@Bean
+	@ConditionalOnProperty("repository-executor.enabled")
+	public ThreadPoolTaskExecutor repositoryExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		// a fixed size, threads only get added beyond the core size once the queue is full
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("repository-");
+
+		Timer queueWait = registry.timer(METRICS_PREFIX + "queue.wait");
+		executor.setTaskDecorator(task -> {
+			Timer.Context queued = queueWait.time();
+			// the request's log sampling decision (see LogSamplingFilter) moves with it
+			Map<String, String> mdc = MDC.getCopyOfContextMap();
+			return () -> {
+				queued.stop();
+				if (mdc != null) {
+					MDC.setContextMap(mdc);
+				}
+				try {
+					task.run();
+				} finally {
+					MDC.clear();
+				}
+			};
+		});
+
+		Meter rejected = registry.meter(METRICS_PREFIX + "rejected");
+		ThreadPoolExecutor.AbortPolicy abort = new ThreadPoolExecutor.AbortPolicy();
+		executor.setRejectedExecutionHandler((task, pool) -> {
+			rejected.mark();
+			abort.rejectedExecution(task, pool);
+		});
+
+		registry.register(METRICS_PREFIX + "active", (Gauge<Integer>) executor::getActiveCount);
+		registry.register(METRICS_PREFIX + "pool.size", (Gauge<Integer>) executor::getPoolSize);
+		registry.register(METRICS_PREFIX + "queue.size", 
+				(Gauge<Integer>) () -> (executor.getThreadPoolExecutor() != null ? executor.getThreadPoolExecutor().getQueue().size() : 0));
+		registry.register(METRICS_PREFIX + "queue.remaining", 
+				(Gauge<Integer>) () -> (executor.getThreadPoolExecutor() != null ? executor.getThreadPoolExecutor().getQueue().remainingCapacity() : 0));
+		return executor;
+	}
+
+	@Bean
+	@ConditionalOnProperty(name="repository-executor.enabled", havingValue="false", matchIfMissing=true)
+	public static BeanPostProcessor inlineCallables() {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) {
+				return bean;
+			}
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof RequestMappingHandlerAdapter) {
+					InlineCallableReturnValueHandler.install((RequestMappingHandlerAdapter) bean);
+				}
+				return bean;
+			}
+		};
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		if (enabled) {
+			configurer.setTaskExecutor(repositoryExecutor());
+			configurer.setDefaultTimeout(timeoutMillis);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.springboot.brushup.students.async;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Calls the Callables returned by the handlers right away, on the servlet thread, and handles their result
+ * as the one of a synchronous handler: no async request is started, and the request is not dispatched again.
+ * Put ahead of Spring's own handler of Callables while the repository executor is off (see AsyncConfiguration).
+ */
+class InlineCallableReturnValueHandler implements HandlerMethodReturnValueHandler {
+
+	private final HandlerMethodReturnValueHandler results;
+
+	InlineCallableReturnValueHandler(HandlerMethodReturnValueHandler results) {
+		this.results = results;
+	}
+
+	/**
+	 * Puts the handler first among the ones of the adapter, the others then handle the results of the Callables.
+	 */
+	static void install(RequestMappingHandlerAdapter adapter) {
+		HandlerMethodReturnValueHandlerComposite results = new HandlerMethodReturnValueHandlerComposite()
+				.addHandlers(adapter.getReturnValueHandlers());
+		List<HandlerMethodReturnValueHandler> handlers = new ArrayList<>();
+		handlers.add(new InlineCallableReturnValueHandler(results));
+		handlers.addAll(adapter.getReturnValueHandlers());
+		adapter.setReturnValueHandlers(handlers);
+	}
+
+	@Override
+	public boolean supportsReturnType(MethodParameter returnType) {
+		return Callable.class.isAssignableFrom(returnType.getParameterType());
+	}
+
+	@Override
+	public void handleReturnValue(Object returnValue, MethodParameter returnType, ModelAndViewContainer mavContainer, 
+			NativeWebRequest webRequest) throws Exception {
+		Object result = (returnValue != null ? ((Callable<?>) returnValue).call() : null);
+		if (result == null) {
+			// as for a synchronous handler returning nothing: the 304 of a conditional GET, or the @ResponseStatus
+			mavContainer.setRequestHandled(true);
+			return;
+		}
+		results.handleReturnValue(result, new ResultType(returnType, result), mavContainer, webRequest);
+	}
+
+	/**
+	 * The return type of the handler, seen as the one of the Callable's result (the way Spring sees it 
+	 * when the result comes back from the executor).
+	 */
+	private static class ResultType extends MethodParameter {
+
+		private final Class<?> resultClass;
+
+		private final ResolvableType resultType;
+
+		ResultType(MethodParameter returnType, Object result) {
+			super(returnType);
+			this.resultClass = result.getClass();
+			this.resultType = ResolvableType.forMethodParameter(returnType).getGeneric(0);
+		}
+
+		@Override
+		public Class<?> getParameterType() {
+			return resultClass;
+		}
+
+		@Override
+		public Type getGenericParameterType() {
+			return resultType.getType();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.springboot.brushup.students.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.springboot.brushup.students.batch.BatchResult.RowResult;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Inserts many new entities with as few round trips as possible.
+ * 
+ * Rows are persisted in chunks of hibernate.jdbc.batch_size, each chunk in its own transaction, 
+ * so Hibernate sends every chunk as a single JDBC batch (IDs come from a pooled table generator, 
+ * which does not need a round trip per insert like IDENTITY columns do). 
+ * The persistence context is cleared after every chunk to keep memory flat.
+ * If a chunk fails, its rows are retried one by one so that only the offending rows are reported as failed.
+ * Callers can report the rows inserted from within the transaction that inserts them, what they defer to its commit
+ * (see AfterCommit) is then dropped along with the rows of a failed chunk.
+ */
+@Slf4j
+@Component
+public class BatchInserter {
+
+	public static final int MAX_ROWS = 10000;
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	private int chunkSize = 50;
+	
+	/**
+	 * @param rows the new entities, in request order
+	 * @param getId reads the entity ID
+	 * @param setId resets the entity ID when a failed chunk is retried
+	 * @param validator returns why a row cannot be inserted, or null if it is valid
+	 * @return the result of every row, failed rows are never inserted
+	 * @throws IllegalArgumentException if there are more than {@link #MAX_ROWS} rows
+	 */
+	public <T> BatchResult insert(List<T> rows, Function<T, Integer> getId, BiConsumer<T, Integer> setId, Function<T, String> validator) {
+		return insert(rows, getId, setId, validator, inserted -> { });
+	}
+
+	/**
+	 * @param inserted called in the transaction of every chunk (or retried row) with the rows it inserted, IDs assigned
+	 * @see #insert(List, Function, BiConsumer, Function)
+	 */
+	public <T> BatchResult insert(List<T> rows, Function<T, Integer> getId, BiConsumer<T, Integer> setId, Function<T, String> validator,
+			Consumer<List<T>> inserted) {
+		if (rows.size() > MAX_ROWS) {
+			throw new IllegalArgumentException("At most " + MAX_ROWS + " rows can be sent in a batch, got " + rows.size());
+		}
+		
+		RowResult[] results = new RowResult[rows.size()];
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		
+		int[] chunk = new int[chunkSize];
+		int chunkLength = 0;
+		for (int i = 0; i < rows.size(); i++) {
+			String error = validator.apply(rows.get(i));
+			if (error != null) {
+				results[i] = new RowResult(i, null, error);
+				continue;
+			}
+			
+			chunk[chunkLength++] = i;
+			if (chunkLength == chunkSize) {
+				insertChunk(transaction, rows, chunk, chunkLength, getId, setId, inserted, results);
+				chunkLength = 0;
+			}
+		}
+		if (chunkLength > 0) {
+			insertChunk(transaction, rows, chunk, chunkLength, getId, setId, inserted, results);
+		}
+		
+		return BatchResult.of(results);
+	}
+	
+	private <T> void insertChunk(TransactionTemplate transaction, List<T> rows, int[] chunk, int chunkLength, 
+			Function<T, Integer> getId, BiConsumer<T, Integer> setId, Consumer<List<T>> inserted, RowResult[] results) {
+		try {
+			transaction.execute(status -> {
+				List<T> chunkRows = new ArrayList<>(chunkLength);
+				for (int i = 0; i < chunkLength; i++) {
+					chunkRows.add(rows.get(chunk[i]));
+					entityManager.persist(rows.get(chunk[i]));
+				}
+				entityManager.flush();
+				inserted.accept(chunkRows);
+				entityManager.clear();
+				return null;
+			});
+			
+			for (int i = 0; i < chunkLength; i++) {
+				results[chunk[i]] = new RowResult(chunk[i], getId.apply(rows.get(chunk[i])), null);
+			}
+		} catch (RuntimeException e) {
+			log.debug("Batch chunk of {} rows failed, retrying row by row", chunkLength, e);
+			
+			for (int i = 0; i < chunkLength; i++) {
+				results[chunk[i]] = insertRow(transaction, rows.get(chunk[i]), chunk[i], getId, setId, inserted);
+			}
+		}
+	}
+
+	private <T> RowResult insertRow(TransactionTemplate transaction, T row, int index, Function<T, Integer> getId, BiConsumer<T, Integer> setId,
+			Consumer<List<T>> inserted) {
+		// the ID assigned by the failed chunk would make the row look detached
+		setId.accept(row, null);
+		
+		try {
+			transaction.execute(status -> {
+				entityManager.persist(row);
+				entityManager.flush();
+				inserted.accept(Collections.singletonList(row));
+				entityManager.clear();
+				return null;
+			});
+			return new RowResult(index, getId.apply(row), null);
+		} catch (RuntimeException e) {
+			log.debug("Batch row {} failed", index, e);
+			setId.accept(row, null);
+			return new RowResult(index, null, NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+		}
+	}
+}
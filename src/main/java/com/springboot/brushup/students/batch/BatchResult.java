@@ -0,0 +1,46 @@
+package com.springboot.brushup.students.batch;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a batch request, with one entry per submitted row (in submission order).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResult {
+
+	private int succeeded;
+	private int failed;
+	private List<RowResult> rows;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static class RowResult {
+		// position of the row in the request
+		private int index;
+		// ID of the created entity, null if the row failed
+		private Integer id;
+		// why the row failed, null if it succeeded
+		private String error;
+	}
+	
+	public static BatchResult of(RowResult[] rows) {
+		int failed = 0;
+		for (RowResult row: rows) {
+			if (row.getError() != null) {
+				failed++;
+			}
+		}
+		return new BatchResult(rows.length - failed, failed, Arrays.asList(rows));
+	}
+}
@@ -0,0 +1,27 @@
+package com.springboot.brushup.students.cache;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs cache and index updates once the current transaction commits (right away outside of one),
+ * so readers can't put the uncommitted state back in the meantime, and rolled back writes leave no trace.
+ */
+public final class AfterCommit {
+
+	private AfterCommit() {
+	}
+
+	public static void run(Runnable update) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					update.run();
+				}
+			});
+		} else {
+			update.run();
+		}
+	}
+}
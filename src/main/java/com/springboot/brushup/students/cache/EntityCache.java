@@ -0,0 +1,224 @@
+package com.springboot.brushup.students.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.StudentRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Read-through cache in front of the single entity lookups.
+ * Size, TTL and statistics are configured through spring.cache.caffeine.spec.
+ *
+ * Cached entities outlive the persistence context they were loaded in, so everything serialized
+ * from them (a student's courses) is initialized before they are cached.
+ * Writers have to evict what they change, including the other side of the student x course relationship.
+ * Evictions requested inside a transaction happen once it commits, so readers can't cache the uncommitted state
+ * back in the meantime. A load that started before an eviction may still have read the previous state: every eviction
+ * moves the generation of its keys, and a load caching its entity checks the generation afterwards, evicting it again
+ * when it moved since the load started.
+ *
+ * With read replicas (see DataSourceConfiguration), misses are loaded from the primary, in a transaction of their own:
+ * an entity a lagging replica served would be cached for everyone until it expires.
+ *
+ * Concurrent misses of the same entity share a single query (see SingleFlight), rather than all hitting the database
+ * when a popular entity was just evicted, or with the cache disabled. How many callers were spared their query shows
+ * up in /metrics as coalescing.courses.* and coalescing.students.* (loads, shared, collapseRatio).
+ */
+@Slf4j
+@Component
+public class EntityCache {
+
+	public static final String COURSES = "courses";
+	public static final String STUDENTS = "students";
+
+	public static final String METRICS_PREFIX = "coalescing.";
+
+	@Autowired
+	private CourseRepository courses;
+
+	@Autowired
+	private StudentRepository students;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${replica-datasource.urls:}")
+	private String[] replicaUrls;
+
+	// null without replicas, the loads then run in the caller's transaction
+	private TransactionTemplate primaryReads;
+
+	private final SingleFlight<Integer, Course> courseLoads = new SingleFlight<>();
+
+	private final SingleFlight<Integer, Student> studentLoads = new SingleFlight<>();
+
+	// eviction counts by key modulo the number of slots
+	private static final int GENERATION_SLOTS = 64;
+
+	private final AtomicLongArray courseGenerations = new AtomicLongArray(GENERATION_SLOTS);
+
+	private final AtomicLongArray studentGenerations = new AtomicLongArray(GENERATION_SLOTS);
+
+	@PostConstruct
+	void register() {
+		if (Arrays.stream(replicaUrls).anyMatch(StringUtils::hasText)) {
+			// read-write, so that the routing data source hands out a connection of the primary
+			primaryReads = new TransactionTemplate(transactionManager);
+			primaryReads.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		}
+		register(COURSES, courseLoads);
+		register(STUDENTS, studentLoads);
+	}
+
+	private void register(String name, SingleFlight<?, ?> loads) {
+		registry.register(METRICS_PREFIX + name + ".loads", (Gauge<Long>) loads::getLoads);
+		registry.register(METRICS_PREFIX + name + ".shared", (Gauge<Long>) loads::getShared);
+		registry.register(METRICS_PREFIX + name + ".collapseRatio", (Gauge<Double>) loads::getCollapseRatio);
+	}
+
+	public Course findCourse(Integer id) {
+		return find(COURSES, courseGenerations, courseLoads, id, () -> courses.findOne(id));
+	}
+
+	public Student findStudent(Integer id) {
+		// courses are fetched with the student, in one statement
+		return find(STUDENTS, studentGenerations, studentLoads, id, () -> students.findWithCoursesById(id));
+	}
+
+	private <T> T find(String cacheName, AtomicLongArray generations, SingleFlight<Integer, T> loads, Integer id, Supplier<T> load) {
+		Cache cache = cacheManager.getCache(cacheName);
+		Cache.ValueWrapper cached = cache.get(id);
+		if (cached != null) {
+			@SuppressWarnings("unchecked")
+			T entity = (T) cached.get();
+			return entity;
+		}
+		// only the caller running the load caches it
+		return loads.load(id, () -> {
+			int slot = slot(id);
+			long generation = generations.get(slot);
+			T entity = fromPrimary(load);
+			if (entity != null) {
+				cache.put(id, entity);
+				if (generations.get(slot) != generation) {
+					// evicted meantime, the entity may have been read before the change
+					cache.evict(id);
+				}
+			}
+			return entity;
+		});
+	}
+
+	private <T> T fromPrimary(Supplier<T> load) {
+		return (primaryReads != null ? primaryReads.execute(status -> load.get()) : load.get());
+	}
+
+	/**
+	 * Evicts a course and every cached student enrolled in it (students are serialized with their courses).
+	 */
+	public void evictCourse(Integer courseId) {
+		AfterCommit.run(() -> {
+			log.debug("Evicting course {}", courseId);
+	
+			courseLoads.forget(courseId);
+			courseGenerations.incrementAndGet(slot(courseId));
+			cacheManager.getCache(COURSES).evict(courseId);
+			// the students loading meanwhile may have the course too
+			studentLoads.forgetAll();
+			for (int i = 0; i < GENERATION_SLOTS; i++) {
+				studentGenerations.incrementAndGet(i);
+			}
+			evictIf(cacheManager.getCache(STUDENTS),
+					value -> value instanceof Student && ((Student) value).getCourses() != null
+							&& ((Student) value).getCourses().stream().anyMatch(course -> courseId.equals(course.getId())));
+		});
+	}
+
+	/**
+	 * Evicts a student and the courses on the other side of its enrollments.
+	 *
+	 * @param previousCourses the student's courses before the change, may be null
+	 * @param newCourses the student's courses after the change, may be null
+	 */
+	public void evictStudent(Integer studentId, Collection<Course> previousCourses, Collection<Course> newCourses) {
+		AfterCommit.run(() -> {
+			log.debug("Evicting student {}", studentId);
+	
+			if (studentId != null) {
+				studentLoads.forget(studentId);
+				studentGenerations.incrementAndGet(slot(studentId));
+				cacheManager.getCache(STUDENTS).evict(studentId);
+			}
+		});
+		evictCourses(previousCourses);
+		evictCourses(newCourses);
+	}
+
+	/**
+	 * Evicts only the given courses, for writes that change their enrollments but not their students' data.
+	 */
+	public void evictCourses(Collection<Course> courseSet) {
+		if (courseSet == null) {
+			return;
+		}
+		
+		List<Integer> courseIds = courseSet.stream()
+				.filter(course -> course != null && course.getId() != null)
+				.map(Course::getId)
+				.collect(Collectors.toList());
+		AfterCommit.run(() -> {
+			Cache cache = cacheManager.getCache(COURSES);
+			courseIds.forEach(courseId -> {
+				courseLoads.forget(courseId);
+				courseGenerations.incrementAndGet(slot(courseId));
+				cache.evict(courseId);
+			});
+		});
+	}
+	
+	private static int slot(Integer id) {
+		return Math.floorMod(id, GENERATION_SLOTS);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void evictIf(Cache cache, Predicate<Object> evicted) {
+		if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+			Map<Object, Object> entries = ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache()).asMap();
+			entries.values().removeIf(evicted);
+		} else {
+			// no way to look into other cache implementations
+			cache.clear();
+		}
+	}
+}
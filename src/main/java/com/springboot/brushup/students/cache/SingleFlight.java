@@ -0,0 +1,96 @@
+package com.springboot.brushup.students.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller loads, the callers coming in meanwhile
+ * wait for it and share its result (or its exception) instead of loading the same thing again.
+ * Nothing is kept once the load is over, caching is up to the caller.
+ *
+ * Callers only join loads still in flight, so what they get was read after they came in,
+ * except when the key was changed meanwhile: writers {@link #forget(Object)} the key (once they commit),
+ * so that the callers after them start a load of their own.
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+	private final LongAdder loads = new LongAdder();
+
+	private final LongAdder shared = new LongAdder();
+
+	public V load(K key, Supplier<V> loader) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+		if (inFlight != null) {
+			shared.increment();
+			return join(inFlight);
+		}
+
+		loads.increment();
+		try {
+			V value = loader.get();
+			flight.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+		}
+	}
+
+	/**
+	 * Lets the next callers load the key again, rather than join the load in flight (which started before a change).
+	 */
+	public void forget(K key) {
+		flights.remove(key);
+	}
+
+	public void forgetAll() {
+		flights.clear();
+	}
+
+	/**
+	 * @return the loads run by the callers
+	 */
+	public long getLoads() {
+		return loads.sum();
+	}
+
+	/**
+	 * @return the callers served by the load of another
+	 */
+	public long getShared() {
+		return shared.sum();
+	}
+
+	/**
+	 * @return the share of the callers served by the load of another, 0 to 1
+	 */
+	public double getCollapseRatio() {
+		long sharedCount = getShared();
+		long callers = getLoads() + sharedCount;
+		return (callers == 0 ? 0 : (double) sharedCount / callers);
+	}
+
+	private static <V> V join(CompletableFuture<V> flight) {
+		try {
+			return flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a load in flight", e);
+		} catch (ExecutionException e) {
+			// the exception of the loading caller, rethrown as is
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw (Error) e.getCause();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.springboot.brushup.students.changes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.springboot.brushup.students.dto.ChangeEvent;
+
+/**
+ * The last events of the feed, in a ring: replays start from any of them, the older ones are gone.
+ */
+class ChangeBuffer {
+
+	private final ChangeEvent[] ring;
+
+	// sequence number of the next event
+	private long next = 1;
+
+	ChangeBuffer(int capacity) {
+		ring = new ChangeEvent[capacity];
+	}
+
+	/**
+	 * Numbers the event and adds it, dropping the oldest one when full.
+	 */
+	synchronized void add(ChangeEvent event) {
+		event.setSeq(next);
+		ring[(int) (next % ring.length)] = event;
+		next++;
+	}
+
+	/**
+	 * @return sequence number of the last event, 0 if none
+	 */
+	synchronized long getLast() {
+		return next - 1;
+	}
+
+	/**
+	 * @param seq sequence number of the last event the client has
+	 * @param max most events returned
+	 * @return the events following it, in order, none if the client is up to date,
+	 * null if some of them were dropped already (or if the sequence number is unknown)
+	 */
+	synchronized List<ChangeEvent> after(long seq, int max) {
+		long oldest = Math.max(1, next - ring.length);
+		if (seq < oldest - 1 || seq >= next) {
+			return null;
+		}
+		List<ChangeEvent> events = new ArrayList<>();
+		for (long s = seq + 1; s < next && events.size() < max; s++) {
+			events.add(ring[(int) (s % ring.length)]);
+		}
+		return events;
+	}
+}
@@ -0,0 +1,330 @@
+package com.springboot.brushup.students.changes;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.springboot.brushup.students.cache.AfterCommit;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.ChangeEvent;
+import com.springboot.brushup.students.dto.Enrollment;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Feed of the committed writes of courses, students and enrollments, pushed to its subscribers as Server-Sent Events
+ * (see ChangeFeedService), so that they need not poll the listings to find out what changed.
+ *
+ * Writes reach the feed once their transaction commits, roughly in commit order: the JPA ones through
+ * {@link ChangeFeedListener}, the others (JPQL updates and deletes, JDBC enrollments) reported by their writers.
+ * The enrollments of a deleted course go with it, without events of their own.
+ *
+ * The last changes.buffer-size events are kept: a subscriber reconnecting with the ID of the last event it got
+ * (Last-Event-ID, which EventSource clients send on their own) is sent the ones it missed first. When they are
+ * gone already, or the ID is from before a restart, it is sent a reset event instead: it has to read the listings
+ * again, then carries on from there. A subscriber too slow to keep up with the buffer gets a reset too.
+ *
+ * Events are sent on the feed's own threads (changes.sender-threads), a subscriber at a time, so that writers never
+ * wait on the subscribers. Idle streams get a comment every changes.heartbeat-seconds, for proxies to keep them open
+ * and for closed connections to be noticed. Streams end after changes.stream-timeout-ms, subscribers then reconnect.
+ * Subscribers show up in /metrics as changes.subscribers, next to changes.published and changes.resets.
+ */
+@Slf4j
+@Component
+public class ChangeFeed {
+
+	public static final String METRICS_PREFIX = "changes.";
+
+	public static final String RESET_EVENT = "reset";
+
+	// events sent to a subscriber before the buffer is looked at again
+	private static final int SEND_BATCH = 100;
+
+	@Value("${changes.buffer-size:10000}")
+	private int bufferSize;
+
+	@Value("${changes.max-subscribers:100}")
+	private int maxSubscribers;
+
+	@Value("${changes.sender-threads:4}")
+	private int senderThreads;
+
+	@Value("${changes.heartbeat-seconds:15}")
+	private long heartbeatSeconds;
+
+	@Value("${changes.stream-timeout-ms:600000}")
+	private long streamTimeoutMillis;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	// event IDs from before a restart are told apart by it
+	private final String generation = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+	private final Collection<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	// a slot per subscriber, taken before subscribing and given back once it is removed
+	private Semaphore slots;
+
+	private ChangeBuffer buffer;
+
+	private ThreadPoolTaskExecutor sender;
+
+	private ThreadPoolTaskScheduler heartbeats;
+
+	private Meter published;
+
+	private Meter resets;
+
+	@PostConstruct
+	void start() {
+		buffer = new ChangeBuffer(bufferSize);
+		slots = new Semaphore(maxSubscribers);
+
+		sender = new ThreadPoolTaskExecutor();
+		sender.setCorePoolSize(senderThreads);
+		sender.setMaxPoolSize(senderThreads);
+		// a subscriber is never queued twice
+		sender.setQueueCapacity(maxSubscribers);
+		sender.setThreadNamePrefix("changes-");
+		sender.initialize();
+
+		heartbeats = new ThreadPoolTaskScheduler();
+		heartbeats.setThreadNamePrefix("changes-heartbeat-");
+		heartbeats.initialize();
+		heartbeats.scheduleAtFixedRate(this::heartbeat, TimeUnit.SECONDS.toMillis(heartbeatSeconds));
+
+		published = registry.meter(METRICS_PREFIX + "published");
+		resets = registry.meter(METRICS_PREFIX + "resets");
+		registry.register(METRICS_PREFIX + "subscribers", (Gauge<Integer>) subscribers::size);
+
+		ChangeFeedListener.setChangeFeed(this);
+	}
+
+	@PreDestroy
+	void stop() {
+		ChangeFeedListener.setChangeFeed(null);
+		heartbeats.shutdown();
+		sender.shutdown();
+		subscribers.forEach(subscriber -> subscriber.emitter.complete());
+	}
+
+	/**
+	 * For a course or a student created, updated or deleted.
+	 */
+	public void changed(Object entity, ChangeEvent.Type type) {
+		if (entity instanceof Course) {
+			changed(ChangeEvent.Entity.COURSE, type, ((Course) entity).getId());
+		} else if (entity instanceof Student) {
+			changed(ChangeEvent.Entity.STUDENT, type, ((Student) entity).getId());
+		}
+	}
+
+	public void changed(ChangeEvent.Entity entity, ChangeEvent.Type type, Integer id) {
+		publish(new ChangeEvent(0, entity, type, id, null, null, 0));
+	}
+
+	/**
+	 * For a student created, updated or deleted with its courses, which may be null: the enrollments that differ.
+	 */
+	public void studentCoursesChanged(Integer studentId, Collection<Course> previousCourses, Collection<Course> newCourses) {
+		Set<Integer> previous = idsOf(previousCourses);
+		Set<Integer> current = idsOf(newCourses);
+		previous.stream().filter(id -> !current.contains(id))
+				.forEach(id -> enrollmentChanged(studentId, id, ChangeEvent.Type.DELETED));
+		current.stream().filter(id -> !previous.contains(id))
+				.forEach(id -> enrollmentChanged(studentId, id, ChangeEvent.Type.CREATED));
+	}
+
+	/**
+	 * For enrollments inserted (or deleted) with single row statements.
+	 */
+	public void enrollmentsChanged(Collection<Enrollment> changed, boolean enrolled) {
+		changed.forEach(enrollment -> enrollmentChanged(enrollment.getStudentId(), enrollment.getCourseId(),
+				enrolled ? ChangeEvent.Type.CREATED : ChangeEvent.Type.DELETED));
+	}
+
+	/**
+	 * Streams the events following the given one, then the new ones as they come.
+	 *
+	 * @param lastEventId ID of the last event the subscriber got, null to start with the next one
+	 * @throws RejectedExecutionException if there are too many subscribers already
+	 */
+	public SseEmitter subscribe(String lastEventId) {
+		if (!slots.tryAcquire()) {
+			throw new RejectedExecutionException("Too many change feed subscribers");
+		}
+
+		Subscriber subscriber = new Subscriber(new SseEmitter(streamTimeoutMillis));
+		Long resumed = seqOf(lastEventId);
+		if (!StringUtils.hasText(lastEventId)) {
+			subscriber.lastSent = buffer.getLast();
+		} else if (resumed != null && buffer.after(resumed, 0) != null) {
+			subscriber.lastSent = resumed;
+		} else {
+			log.debug("Change feed subscriber resuming after unknown event {}", lastEventId);
+			subscriber.lastSent = buffer.getLast();
+			subscriber.resetDue = true;
+		}
+
+		subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+		subscriber.emitter.onTimeout(() -> unsubscribe(subscriber));
+		subscribers.add(subscriber);
+		// sends what was missed, and what was published since the buffer was looked at
+		schedule(subscriber);
+		return subscriber.emitter;
+	}
+
+	// once per subscriber, however it ends (completed, timed out, failed to send)
+	private void unsubscribe(Subscriber subscriber) {
+		if (subscribers.remove(subscriber)) {
+			slots.release();
+		}
+	}
+
+	private void enrollmentChanged(Integer studentId, Integer courseId, ChangeEvent.Type type) {
+		publish(new ChangeEvent(0, ChangeEvent.Entity.ENROLLMENT, type, null, studentId, courseId, 0));
+	}
+
+	private void publish(ChangeEvent event) {
+		AfterCommit.run(() -> {
+			event.setCommittedAt(System.currentTimeMillis());
+			buffer.add(event);
+			published.mark();
+			subscribers.forEach(this::schedule);
+		});
+	}
+
+	private void heartbeat() {
+		subscribers.forEach(subscriber -> {
+			subscriber.heartbeatDue = true;
+			schedule(subscriber);
+		});
+	}
+
+	private void schedule(Subscriber subscriber) {
+		if (subscriber.scheduled.compareAndSet(false, true)) {
+			try {
+				sender.execute(() -> send(subscriber));
+			} catch (RejectedExecutionException e) {
+				// shutting down
+				subscriber.scheduled.set(false);
+			}
+		}
+	}
+
+	// only ever run by one thread at a time for a subscriber, the one that scheduled it
+	private void send(Subscriber subscriber) {
+		try {
+			while (true) {
+				if (subscriber.resetDue) {
+					resets.mark();
+					subscriber.resetDue = false;
+					subscriber.emitter.send(SseEmitter.event().id(eventId(subscriber.lastSent)).name(RESET_EVENT)
+							.data(Collections.singletonMap("lastSeq", subscriber.lastSent), MediaType.APPLICATION_JSON));
+				}
+
+				List<ChangeEvent> events = buffer.after(subscriber.lastSent, SEND_BATCH);
+				if (events == null) {
+					// fell behind the buffer
+					subscriber.lastSent = buffer.getLast();
+					subscriber.resetDue = true;
+					continue;
+				}
+				for (ChangeEvent event: events) {
+					subscriber.emitter.send(SseEmitter.event().id(eventId(event.getSeq()))
+							.name(event.getEntity().name().toLowerCase(Locale.ROOT)).data(event, MediaType.APPLICATION_JSON));
+					subscriber.lastSent = event.getSeq();
+				}
+				if (!events.isEmpty()) {
+					continue;
+				}
+
+				if (subscriber.heartbeatDue) {
+					subscriber.heartbeatDue = false;
+					subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+				}
+				subscriber.scheduled.set(false);
+				// unless something was published in between, whose publisher found the subscriber still scheduled
+				if (buffer.getLast() == subscriber.lastSent || !subscriber.scheduled.compareAndSet(false, true)) {
+					return;
+				}
+			}
+		} catch (IOException | IllegalStateException e) {
+			// closed by the client, or timed out; stays scheduled, so that nothing is sent anymore
+			log.debug("Change feed subscriber gone: {}", e.toString());
+			unsubscribe(subscriber);
+			try {
+				subscriber.emitter.completeWithError(e);
+			} catch (IllegalStateException alreadyComplete) {
+				// nothing left to do
+			}
+		}
+	}
+
+	private String eventId(long seq) {
+		return generation + "-" + seq;
+	}
+
+	// null if not one of this feed's event IDs
+	private Long seqOf(String eventId) {
+		if (eventId == null || !eventId.startsWith(generation + "-")) {
+			return null;
+		}
+		try {
+			return Long.valueOf(eventId.substring(generation.length() + 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Set<Integer> idsOf(Collection<Course> courses) {
+		if (courses == null) {
+			return Collections.emptySet();
+		}
+		return courses.stream().filter(Objects::nonNull).map(Course::getId).filter(Objects::nonNull).collect(Collectors.toSet());
+	}
+
+	private static class Subscriber {
+		final SseEmitter emitter;
+
+		final AtomicBoolean scheduled = new AtomicBoolean();
+
+		// sequence number of the last event sent
+		volatile long lastSent;
+
+		volatile boolean resetDue;
+
+		volatile boolean heartbeatDue;
+
+		Subscriber(SseEmitter emitter) {
+			this.emitter = emitter;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.springboot.brushup.students.changes;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import com.springboot.brushup.students.dto.ChangeEvent;
+
+/**
+ * JPA listener of the courses and students, passing their writes on to the {@link ChangeFeed}.
+ * Hibernate creates the listener itself, the feed registers with it on startup.
+ */
+public class ChangeFeedListener {
+
+	private static volatile ChangeFeed changeFeed;
+
+	static void setChangeFeed(ChangeFeed feed) {
+		changeFeed = feed;
+	}
+
+	@PostPersist
+	void created(Object entity) {
+		changed(entity, ChangeEvent.Type.CREATED);
+	}
+
+	@PostUpdate
+	void updated(Object entity) {
+		changed(entity, ChangeEvent.Type.UPDATED);
+	}
+
+	@PostRemove
+	void removed(Object entity) {
+		changed(entity, ChangeEvent.Type.DELETED);
+	}
+
+	private static void changed(Object entity, ChangeEvent.Type type) {
+		ChangeFeed feed = changeFeed;
+		if (feed != null) {
+			feed.changed(entity, type);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.springboot.brushup.students.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.util.StringUtils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.springboot.brushup.students.metrics.TimedDataSource;
+
+/**
+ * Connection pools of the primary database (spring.datasource.*) and of its read replicas,
+ * listed in replica-datasource.urls (comma separated). Without replicas, Spring Boot's own data source is left alone.
+ * Replicas take the read-only transactions (see ReplicaRoutingDataSource), with the primary's driver,
+ * and its credentials unless replica-datasource.username and replica-datasource.password are set.
+ * Every pool takes the spring.datasource.tomcat.* settings, as Spring Boot's pool would.
+ *
+ * Replicas lag behind the primary, and what they serve must not be cached for everyone: read-only transactions
+ * don't fill the Hibernate second-level cache (they still read from it), and EntityCache loads from the primary.
+ *
+ * The pools are exposed in /metrics as datasource.pool.&lt;name&gt;.active (connections in use) and .borrowed (so far),
+ * with datasource.pool.replica-&lt;n&gt;.healthy
+ * and datasource.replica.failovers (read-only transactions the primary had to serve).
+ */
+@Configuration
+@ConditionalOnExpression("!'${replica-datasource.urls:}'.trim().isEmpty()")
+public class DataSourceConfiguration {
+
+	public static final String METRICS_PREFIX = "datasource.";
+
+	@Value("${replica-datasource.urls:}")
+	private String[] replicaUrls;
+
+	@Value("${replica-datasource.username:${spring.datasource.username:}}")
+	private String replicaUsername;
+
+	@Value("${replica-datasource.password:${spring.datasource.password:}}")
+	private String replicaPassword;
+
+	@Value("${replica-datasource.retry-ms:5000}")
+	private long retryMillis;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	private final List<org.apache.tomcat.jdbc.pool.DataSource> pools = new ArrayList<>();
+
+	/**
+	 * Settings shared by the pools, copied into each of them.
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.tomcat")
+	public PoolProperties poolProperties() {
+		return new PoolProperties();
+	}
+
+	/**
+	 * Read-only transactions get their entities from the second-level cache, but don't put the replicas' ones in it.
+	 */
+	// static, so that the configuration is not created early along with it
+	@Bean
+	public static BeanPostProcessor replicaJpaDialectPostProcessor() {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+				return bean;
+			}
+
+			// the transaction manager takes the factory's dialect when initialized
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+				if (bean instanceof JpaTransactionManager) {
+					((JpaTransactionManager) bean).setJpaDialect(new ReplicaJpaDialect());
+				}
+				return bean;
+			}
+		};
+	}
+
+	/**
+	 * The data source of JPA and JDBC: asks the routing data source for a connection on the first statement only,
+	 * once the transaction is known to be read-only or not.
+	 * The only DataSource bean, as Spring Boot initializes the database through every DataSource bean it finds.
+	 */
+	@Bean
+	public DataSource dataSource(DataSourceProperties properties, PoolProperties poolProperties) {
+		return new LazyConnectionDataSourceProxy(replicaRoutingDataSource(properties, poolProperties));
+	}
+
+	private DataSource replicaRoutingDataSource(DataSourceProperties properties, PoolProperties poolProperties) {
+		DataSource primary = pool("primary", properties.determineUrl(), properties.determineUsername(), properties.determinePassword(),
+				false, properties, poolProperties);
+
+		List<DataSource> replicas = new ArrayList<>();
+		for (String url: replicaUrls) {
+			if (StringUtils.hasText(url)) {
+				replicas.add(pool("replica-" + replicas.size(), url.trim(), replicaUsername, replicaPassword, true,
+						properties, poolProperties));
+			}
+		}
+
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, retryMillis);
+		for (int i = 0; i < replicas.size(); i++) {
+			int replica = i;
+			registry.register(METRICS_PREFIX + "pool.replica-" + i + ".healthy", (Gauge<Integer>) () -> (routing.isHealthy(replica) ? 1 : 0));
+		}
+		registry.register(METRICS_PREFIX + "replica.failovers", (Gauge<Long>) routing::getFailovers);
+		return routing;
+	}
+
+	private DataSource pool(String name, String url, String username, String password, boolean replica,
+			DataSourceProperties properties, PoolProperties poolProperties) {
+		PoolProperties settings = new PoolProperties();
+		BeanUtils.copyProperties(poolProperties, settings, PoolConfiguration.class);
+		org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource(settings);
+		pool.setName(name);
+		pool.setDriverClassName(properties.determineDriverClassName());
+		pool.setUrl(url);
+		pool.setUsername(username);
+		pool.setPassword(password);
+		if (replica) {
+			// a mistaken write fails instead of diverging from the primary
+			pool.setDefaultReadOnly(true);
+		}
+		// as Spring Boot sets up its own pool, unless configured: connections are checked when borrowed,
+		// a restarted database fails no request
+		String validationQuery = DatabaseDriver.fromJdbcUrl(url).getValidationQuery();
+		if (poolProperties.getValidationQuery() == null && validationQuery != null) {
+			pool.setTestOnBorrow(true);
+			pool.setValidationQuery(validationQuery);
+		}
+
+		// read from the pool once created only, the data source would try to create it (and connect) on every read otherwise
+		registry.register(METRICS_PREFIX + "pool." + name + ".active", 
+				(Gauge<Integer>) () -> (pool.getPool() != null ? pool.getPool().getActive() : 0));
+		registry.register(METRICS_PREFIX + "pool." + name + ".borrowed", 
+				(Gauge<Long>) () -> (pool.getPool() != null ? pool.getPool().getBorrowedCount() : 0));
+		pools.add(pool);
+		return new TimedDataSource(pool, registry);
+	}
+
+	@PreDestroy
+	void close() {
+		pools.forEach(org.apache.tomcat.jdbc.pool.DataSource::close);
+	}
+}
@@ -0,0 +1,61 @@
+package com.springboot.brushup.students.datasource;
+
+import java.sql.SQLException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+
+/**
+ * Keeps what the read replicas serve out of the Hibernate second-level cache: read-only transactions
+ * (the ones routed to the replicas, see ReplicaRoutingDataSource) read the cache, but never put in it.
+ * A replica lagging behind would otherwise have its entities served to every reader, until they expire.
+ */
+class ReplicaJpaDialect extends HibernateJpaDialect {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+	throws PersistenceException, SQLException, TransactionException {
+		Object transactionData = super.beginTransaction(entityManager, definition);
+		if (!definition.isReadOnly()) {
+			return transactionData;
+		}
+		// the entity manager can outlive the transaction (open in view), its cache mode is put back at the end
+		Session session = entityManager.unwrap(Session.class);
+		CacheMode previousCacheMode = session.getCacheMode();
+		session.setCacheMode(CacheMode.GET);
+		return new ReadOnlyTransactionData(transactionData, session, previousCacheMode);
+	}
+
+	@Override
+	public void cleanupTransaction(Object transactionData) {
+		if (transactionData instanceof ReadOnlyTransactionData) {
+			ReadOnlyTransactionData readOnly = (ReadOnlyTransactionData) transactionData;
+			readOnly.session.setCacheMode(readOnly.previousCacheMode);
+			transactionData = readOnly.transactionData;
+		}
+		super.cleanupTransaction(transactionData);
+	}
+
+	private static class ReadOnlyTransactionData {
+
+		private final Object transactionData;
+
+		private final Session session;
+
+		private final CacheMode previousCacheMode;
+
+		ReadOnlyTransactionData(Object transactionData, Session session, CacheMode previousCacheMode) {
+			this.transactionData = transactionData;
+			this.session = session;
+			this.previousCacheMode = previousCacheMode;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.springboot.brushup.students.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands out connections of the primary database, except inside read-only transactions,
+ * which are served by the read replicas in turn (round robin).
+ *
+ * A replica failing to hand out a connection is skipped for a while (retry interval), then a single caller tries it again.
+ * When no replica is available, the primary serves the reads too.
+ *
+ * Transaction managers take their connection before they mark the transaction read-only,
+ * so this data source has to be wrapped in a {@link LazyConnectionDataSourceProxy}, which only asks for the
+ * connection on the first statement (none at all when everything comes from the caches).
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+	private final DataSource primary;
+
+	private final List<Replica> replicas = new ArrayList<>();
+
+	private final long retryMillis;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	// read-only transactions served by the primary, as no replica was available
+	private final LongAdder failovers = new LongAdder();
+
+	/**
+	 * @param replicas may be empty, everything then goes to the primary
+	 * @param retryMillis time a failing replica is skipped for
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, long retryMillis) {
+		this.primary = primary;
+		for (int i = 0; i < replicas.size(); i++) {
+			this.replicas.add(new Replica(i, replicas.get(i)));
+		}
+		this.retryMillis = retryMillis;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return route(DataSource::getConnection);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return route(dataSource -> dataSource.getConnection(username, password));
+	}
+
+	private Connection route(ConnectionSource source) throws SQLException {
+		// writes, and reads of read-write transactions (read-your-writes), stay on the primary
+		if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			return source.connect(primary);
+		}
+
+		int first = next.getAndIncrement();
+		for (int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get(Math.floorMod(first + i, replicas.size()));
+			if (replica.available()) {
+				try {
+					Connection connection = source.connect(replica.dataSource);
+					replica.up();
+					return connection;
+				} catch (SQLException e) {
+					replica.down(e);
+				}
+			}
+		}
+
+		failovers.increment();
+		return source.connect(primary);
+	}
+
+	public int getReplicaCount() {
+		return replicas.size();
+	}
+
+	public boolean isHealthy(int replica) {
+		return replicas.get(replica).downUntil.get() == 0;
+	}
+
+	public long getFailovers() {
+		return failovers.sum();
+	}
+
+	@FunctionalInterface
+	private interface ConnectionSource {
+		Connection connect(DataSource dataSource) throws SQLException;
+	}
+
+	private class Replica {
+
+		private final int index;
+
+		private final DataSource dataSource;
+
+		// 0 while healthy, otherwise when the replica can be tried again
+		private final AtomicLong downUntil = new AtomicLong();
+
+		Replica(int index, DataSource dataSource) {
+			this.index = index;
+			this.dataSource = dataSource;
+		}
+
+		boolean available() {
+			long until = downUntil.get();
+			if (until == 0) {
+				return true;
+			}
+			long now = System.currentTimeMillis();
+			// the first caller past the retry time tries it again, the others keep skipping it meanwhile
+			return now >= until && downUntil.compareAndSet(until, now + retryMillis);
+		}
+
+		void up() {
+			if (downUntil.getAndSet(0) != 0) {
+				log.info("Read replica {} is back", index);
+			}
+		}
+
+		void down(SQLException e) {
+			if (downUntil.getAndSet(System.currentTimeMillis() + retryMillis) == 0) {
+				log.warn("Read replica {} failed, skipped for {} ms: {}", index, retryMillis, e.getMessage());
+			}
+		}
+	}
+}
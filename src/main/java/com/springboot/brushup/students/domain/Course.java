@@ -3,18 +3,32 @@ package com.springboot.brushup.students.domain;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.ManyToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.springboot.brushup.students.changes.ChangeFeedListener;
+import com.springboot.brushup.students.repository.TableVersionListener;
+import com.springboot.brushup.students.search.SearchIndexListener;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
@@ -26,23 +40,53 @@ import lombok.ToString;
 // need to exclude students to break the cycle
 // another way would be to write our own toString(), where only student IDs and/or names are printed
 @ToString(exclude={"students"})
+// same for equals and hashcode, which would also load the students of every course put in a hash set
+// the modification markers are not part of the course data either
+@EqualsAndHashCode(exclude={"students", "lastModified", "version"})
 @Builder(toBuilder=true)
 
 @Entity
+// keeps the name search and the table versions in sync
+@EntityListeners({SearchIndexListener.class, ChangeFeedListener.class, TableVersionListener.class})
+// second-level cache: the catalogue is small and mostly read, courses of students are looked up there
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
 //@JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class , property = "id")
 public class Course {
 
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	public static final int NAME_LENGTH = 50;
+
+	// a pooled table generator hands out IDs without a round trip per insert, so inserts can be JDBC batched
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "course_id")
+	@TableGenerator(name = "course_id", table = "ID_GENERATOR", pkColumnValue = "COURSE", allocationSize = 50)
 	@Id
 	private Integer id;
 
-	@Column(nullable=false, unique=true, length=50)
+	@Column(nullable=false, unique=true, length=NAME_LENGTH)
 	private String name;
 	
 	@JsonIgnore
 	@ManyToMany(mappedBy="courses")
 	private Set<Student> students;
 	
+	// optimistic lock, bumped by every write (JDBC ones included), the ETags of the REST API carry it;
+	// not null, so that courses referenced by their ID only are not taken for new ones
+	@JsonIgnore
+	@Version
+	@ColumnDefault("0")
+	private long version;
+	
+	// epoch millis of the last write, the ETags of the students carry the latest of their courses'
+	@JsonIgnore
+	@Column(name = "LAST_MODIFIED")
+	private Long lastModified;
+	
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		lastModified = System.currentTimeMillis();
+	}
+	
 	public void addStudent(Student student) {
 		if (students == null) {
 			students = new HashSet<>();
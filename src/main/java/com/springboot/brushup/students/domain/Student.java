@@ -4,16 +4,31 @@ import java.sql.Timestamp;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.TableGenerator;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.springboot.brushup.students.changes.ChangeFeedListener;
+import com.springboot.brushup.students.repository.TableVersionListener;
+import com.springboot.brushup.students.search.SearchIndexListener;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -28,22 +43,32 @@ import lombok.Singular;
 @AllArgsConstructor
 @Builder(toBuilder=true)
 // can't let equals and hashcode use the courses set, otherwise the cycle will cause an overflow 
-@EqualsAndHashCode(exclude="courses")
+// the modification markers are not part of the student data either
+@EqualsAndHashCode(exclude={"courses", "lastModified", "version"})
 
 @Entity
+// keeps the name search and the table versions in sync
+@EntityListeners({SearchIndexListener.class, ChangeFeedListener.class, TableVersionListener.class})
+// second-level cache: the query cache only keeps IDs, the cached findByName results are resolved from here
+@Cacheable
+@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
 //@JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class , property = "id")
 public class Student {
 
+	// a pooled table generator hands out IDs without a round trip per insert, so inserts can be JDBC batched
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "student_id")
+	@TableGenerator(name = "student_id", table = "ID_GENERATOR", pkColumnValue = "STUDENT", allocationSize = 50)
 	private Integer id;
 
 	@Column(nullable=false, unique=true)
 	@NotNull
 	private String name;
 
+	// the course IDs of the student are cached, the courses are then read from their own region
 	@Singular
 	@ManyToMany
+	@Cache(usage=CacheConcurrencyStrategy.READ_WRITE)
 	@JoinTable(name = "COURSE_STUDENT", 
 				joinColumns = @JoinColumn(name = "STUD_ID", referencedColumnName = "ID"), 
 				inverseJoinColumns = @JoinColumn(name = "COURSE_ID", referencedColumnName = "ID")
@@ -53,6 +78,23 @@ public class Student {
 	@Column(name = "START_DT")
 	private Timestamp startDt;
 
+	// optimistic lock, bumped by every write (enrollment changes and JDBC ones included), the ETags of the REST API carry it
+	@JsonIgnore
+	@Version
+	@ColumnDefault("0")
+	private long version;
+	
+	// epoch millis of the last write (including enrollment changes), backs the ETags of the REST API
+	@JsonIgnore
+	@Column(name = "LAST_MODIFIED")
+	private Long lastModified;
+	
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		lastModified = System.currentTimeMillis();
+	}
+
 	public void addCourse(Course course) {
 		if (courses == null) {
 			courses = new HashSet<>();
@@ -0,0 +1,26 @@
+package com.springboot.brushup.students.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Version of a whole table, bumped by every transaction writing it (see TableVersionRepository).
+ * Only mapped for the schema to be generated and validated with the others, it is read and written through JDBC.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class TableVersion {
+
+	@Id
+	@Column(length=32)
+	private String name;
+
+	private long version;
+}
@@ -0,0 +1,38 @@
+package com.springboot.brushup.students.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A committed write, as sent by the change feed: a course or student created, updated or deleted
+ * (id set), or a student enrolled in or unenrolled from a course (studentId and courseId set).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChangeEvent {
+
+	public enum Entity { COURSE, STUDENT, ENROLLMENT }
+
+	public enum Type { CREATED, UPDATED, DELETED }
+
+	// position in the feed, from 1
+	private long seq;
+
+	private Entity entity;
+
+	private Type type;
+
+	private Integer id;
+
+	private Integer studentId;
+
+	private Integer courseId;
+
+	// epoch millis of the commit
+	private long committedAt;
+}
@@ -0,0 +1,19 @@
+package com.springboot.brushup.students.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The enrollment figures of a course.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CourseStats {
+
+	private Integer courseId;
+
+	// number of enrolled students
+	private int students;
+}
@@ -0,0 +1,20 @@
+package com.springboot.brushup.students.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The course columns a student is shown with.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder=true)
+public class CourseSummary {
+
+	private Integer id;
+	
+	private String name;
+}
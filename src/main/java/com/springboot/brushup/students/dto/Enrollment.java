@@ -0,0 +1,20 @@
+package com.springboot.brushup.students.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A student x course pair, a row of the enrollment batches.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder=true)
+public class Enrollment {
+
+	private Integer studentId;
+
+	private Integer courseId;
+}
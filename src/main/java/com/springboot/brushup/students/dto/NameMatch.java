@@ -0,0 +1,20 @@
+package com.springboot.brushup.students.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A student or course found by the name search, with just what a type-ahead shows.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder=true)
+public class NameMatch {
+
+	private Integer id;
+
+	private String name;
+}
@@ -0,0 +1,30 @@
+package com.springboot.brushup.students.dto;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Singular;
+
+/**
+ * Read-only view of a student with compact course summaries, serialized the same way as a {@code Student}.
+ * Built from scalar rows (see {@link StudentDetailRows}), so no entity or lazy collection is involved.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder=true)
+public class StudentDetail {
+
+	private Integer id;
+
+	private String name;
+	
+	@Singular
+	private List<CourseSummary> courses;
+	
+	private Timestamp startDt;
+}
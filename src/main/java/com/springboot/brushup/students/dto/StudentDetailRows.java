@@ -0,0 +1,55 @@
+package com.springboot.brushup.students.dto;
+
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Groups the rows of a student x course left join into one {@link StudentDetail} per student. 
+ * 
+ * Rows are (student id, student name, student start date, course id, course name), with null course columns 
+ * for students without courses, and must be ordered by student id. 
+ * Only the rows of the student being built are held in memory.
+ */
+public class StudentDetailRows implements Iterator<StudentDetail> {
+
+	private final Iterator<Object[]> rows;
+	
+	// first row of the next student, already read from the underlying rows
+	private Object[] pending;
+	
+	public StudentDetailRows(Iterator<Object[]> rows) {
+		this.rows = rows;
+		this.pending = (rows.hasNext() ? rows.next() : null);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return pending != null;
+	}
+
+	@Override
+	public StudentDetail next() {
+		if (pending == null) {
+			throw new NoSuchElementException();
+		}
+		
+		Object[] row = pending;
+		Integer studentId = (Integer) row[0];
+		StudentDetail.StudentDetailBuilder student = StudentDetail.builder()
+				.id(studentId)
+				.name((String) row[1])
+				.startDt((Timestamp) row[2]);
+		
+		do {
+			if (row[3] != null) {
+				student.course(new CourseSummary((Integer) row[3], (String) row[4]));
+			}
+			row = (rows.hasNext() ? rows.next() : null);
+		} while (row != null && studentId.equals(row[0]));
+		
+		pending = row;
+		
+		return student.build();
+	}
+}
@@ -0,0 +1,48 @@
+package com.springboot.brushup.students.logging;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Logback's AsyncAppender (a bounded queue drained by one worker thread), counting what it throws away:
+ * events below WARN once the queue is past its discarding threshold ({@link #getDiscarded()}),
+ * and any event while the queue is full and the appender is set to never block ({@link #getDropped()}).
+ *
+ * Overflows are counted by checking the queue before handing the event over,
+ * so the dropped count is a lower bound when many threads race for the last slots.
+ */
+public class CountingAsyncAppender extends AsyncAppender {
+
+	private final LongAdder discarded = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	@Override
+	protected boolean isDiscardable(ILoggingEvent event) {
+		// only asked once the queue is past the discarding threshold
+		boolean discardable = super.isDiscardable(event);
+		if (discardable) {
+			discarded.increment();
+		}
+		return discardable;
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		if (isNeverBlock() && getRemainingCapacity() == 0) {
+			dropped.increment();
+			return;
+		}
+		super.append(event);
+	}
+
+	public long getDiscarded() {
+		return discarded.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+}
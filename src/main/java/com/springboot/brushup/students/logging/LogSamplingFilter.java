@@ -0,0 +1,76 @@
+package com.springboot.brushup.students.logging;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Picks the requests whose debug logs are written (logging.sampling.rate, from 0 to 1),
+ * marking them in the MDC with an id that shows up in every line they log.
+ * The other requests are marked as not sampled: only their debug logs are dropped, not the ones of the threads
+ * outside of requests (startup, background work).
+ * The MDC follows the request to the repository executor when enabled (see AsyncConfiguration), and to the dispatch
+ * writing the response of an async handler.
+ */
+@Component
+public class LogSamplingFilter extends OncePerRequestFilter {
+
+	public static final String SAMPLED = "sampled";
+	public static final String REQUEST_ID = "requestId";
+
+	// the request ID of a sampled request, "" for the others: the async dispatch keeps the decision
+	private static final String DECISION_ATTRIBUTE = LogSamplingFilter.class.getName() + ".requestId";
+
+	private final AtomicLong requestIds = new AtomicLong();
+
+	@Value("${logging.sampling.rate:0.01}")
+	private double rate;
+
+	public static boolean isSampled() {
+		return Boolean.TRUE.toString().equals(MDC.get(SAMPLED));
+	}
+
+	/**
+	 * @return true for a request that was not sampled, false for a sampled one and outside of requests
+	 */
+	public static boolean isNotSampled() {
+		return Boolean.FALSE.toString().equals(MDC.get(SAMPLED));
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String requestId = (String) request.getAttribute(DECISION_ATTRIBUTE);
+		if (requestId == null) {
+			boolean sampled = (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+			requestId = (sampled ? Long.toString(requestIds.incrementAndGet()) : "");
+			request.setAttribute(DECISION_ATTRIBUTE, requestId);
+		}
+
+		MDC.put(SAMPLED, Boolean.toString(!requestId.isEmpty()));
+		if (!requestId.isEmpty()) {
+			MDC.put(REQUEST_ID, requestId);
+		}
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			MDC.remove(SAMPLED);
+			MDC.remove(REQUEST_ID);
+		}
+	}
+}
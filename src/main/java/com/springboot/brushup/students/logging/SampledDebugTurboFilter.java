@@ -0,0 +1,32 @@
+package com.springboot.brushup.students.logging;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Drops the DEBUG and TRACE events of the given loggers in the requests that are not sampled (see {@link LogSamplingFilter}).
+ * Outside of requests (startup, background work) they are left to the configured levels.
+ * Turbo filters are asked before the logging event is created, also by isDebugEnabled(),
+ * so the debug statements of requests that are not sampled cost a thread local lookup.
+ */
+public class SampledDebugTurboFilter extends TurboFilter {
+
+	private String loggerPrefix = "";
+
+	@Override
+	public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+		if (level.isGreaterOrEqual(Level.INFO) || !logger.getName().startsWith(loggerPrefix)) {
+			return FilterReply.NEUTRAL;
+		}
+		return LogSamplingFilter.isNotSampled() ? FilterReply.DENY : FilterReply.NEUTRAL;
+	}
+
+	public void setLoggerPrefix(String loggerPrefix) {
+		this.loggerPrefix = loggerPrefix;
+	}
+}
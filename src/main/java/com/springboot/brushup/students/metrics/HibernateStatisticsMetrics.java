@@ -0,0 +1,96 @@
+package com.springboot.brushup.students.metrics;
+
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.springboot.brushup.students.domain.Course;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hibernate statement, query, load and cache hit counts as gauges (hibernate.*), 
+ * when statistics are enabled (spring.jpa.properties.hibernate.generate_statistics).
+ */
+@Slf4j
+@Component
+public class HibernateStatisticsMetrics {
+
+	public static final String PREFIX = "hibernate.";
+
+	private static final String DOMAIN_PACKAGE = Course.class.getPackage().getName() + ".";
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	@PostConstruct
+	void register() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		if (!statistics.isStatisticsEnabled()) {
+			log.info("Hibernate statistics disabled, not exposing them as metrics");
+			return;
+		}
+
+		register(statistics, "statements.prepared", Statistics::getPrepareStatementCount);
+		register(statistics, "statements.closed", Statistics::getCloseStatementCount);
+		register(statistics, "queries.executed", Statistics::getQueryExecutionCount);
+		register(statistics, "queries.maxTime", Statistics::getQueryExecutionMaxTime);
+		register(statistics, "entities.loaded", Statistics::getEntityLoadCount);
+		register(statistics, "entities.fetched", Statistics::getEntityFetchCount);
+		register(statistics, "entities.inserted", Statistics::getEntityInsertCount);
+		register(statistics, "entities.updated", Statistics::getEntityUpdateCount);
+		register(statistics, "entities.deleted", Statistics::getEntityDeleteCount);
+		register(statistics, "collections.loaded", Statistics::getCollectionLoadCount);
+		register(statistics, "collections.fetched", Statistics::getCollectionFetchCount);
+		register(statistics, "connections.obtained", Statistics::getConnectCount);
+		register(statistics, "transactions", Statistics::getTransactionCount);
+		register(statistics, "flushes", Statistics::getFlushCount);
+
+		register(statistics, "secondLevelCache.hits", Statistics::getSecondLevelCacheHitCount);
+		register(statistics, "secondLevelCache.misses", Statistics::getSecondLevelCacheMissCount);
+		register(statistics, "secondLevelCache.puts", Statistics::getSecondLevelCachePutCount);
+		registry.register(PREFIX + "secondLevelCache.hitRatio", (Gauge<Double>) () -> 
+				hitRatio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount()));
+		register(statistics, "queryCache.hits", Statistics::getQueryCacheHitCount);
+		register(statistics, "queryCache.misses", Statistics::getQueryCacheMissCount);
+		register(statistics, "queryCache.puts", Statistics::getQueryCachePutCount);
+		registry.register(PREFIX + "queryCache.hitRatio", (Gauge<Double>) () -> 
+				hitRatio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount()));
+
+		// per region, named after the entity or collection role (Course, Student.courses...)
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			String name = PREFIX + "secondLevelCache." + regionName(region) + ".";
+			Supplier<SecondLevelCacheStatistics> regionStatistics = () -> statistics.getSecondLevelCacheStatistics(region);
+			registry.register(name + "hits", (Gauge<Long>) () -> regionStatistics.get().getHitCount());
+			registry.register(name + "misses", (Gauge<Long>) () -> regionStatistics.get().getMissCount());
+			registry.register(name + "elements", (Gauge<Long>) () -> regionStatistics.get().getElementCountInMemory());
+			registry.register(name + "hitRatio", (Gauge<Double>) () -> 
+					hitRatio(regionStatistics.get().getHitCount(), regionStatistics.get().getMissCount()));
+		}
+	}
+
+	private static String regionName(String region) {
+		return region.startsWith(DOMAIN_PACKAGE) ? region.substring(DOMAIN_PACKAGE.length()) : region.substring(region.lastIndexOf('.') + 1);
+	}
+
+	private static double hitRatio(long hits, long misses) {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	private void register(Statistics statistics, String name, ToLongFunction<Statistics> value) {
+		registry.register(PREFIX + name, (Gauge<Long>) () -> value.applyAsLong(statistics));
+	}
+}
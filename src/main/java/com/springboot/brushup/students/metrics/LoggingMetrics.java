@@ -0,0 +1,58 @@
+package com.springboot.brushup.students.metrics;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.springboot.brushup.students.logging.CountingAsyncAppender;
+
+import ch.qos.logback.classic.LoggerContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Queue depth and lost events of the asynchronous log appender (logging.async.*),
+ * when logback-spring.xml configures one.
+ */
+@Slf4j
+@Component
+public class LoggingMetrics {
+
+	public static final String PREFIX = "logging.async.";
+
+	// name of the appender in logback-spring.xml
+	public static final String APPENDER = "ASYNC";
+
+	@Autowired
+	private MetricRegistry registry;
+
+	@PostConstruct
+	void register() {
+		CountingAsyncAppender appender = findAppender();
+		if (appender == null) {
+			log.info("No {} log appender, not exposing it as metrics", APPENDER);
+			return;
+		}
+
+		registry.register(PREFIX + "queue.size", (Gauge<Integer>) appender::getNumberOfElementsInQueue);
+		registry.register(PREFIX + "queue.remaining", (Gauge<Integer>) appender::getRemainingCapacity);
+		registry.register(PREFIX + "discarded", (Gauge<Long>) appender::getDiscarded);
+		registry.register(PREFIX + "dropped", (Gauge<Long>) appender::getDropped);
+	}
+
+	private CountingAsyncAppender findAppender() {
+		if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+			return null;
+		}
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		return context.getLoggerList().stream()
+				.map(logger -> logger.getAppender(APPENDER))
+				.filter(appender -> appender instanceof CountingAsyncAppender)
+				.map(appender -> (CountingAsyncAppender) appender)
+				.findFirst()
+				.orElse(null);
+	}
+}
@@ -0,0 +1,26 @@
+package com.springboot.brushup.students.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@Configuration
+public class MetricsConfiguration {
+
+	@Autowired
+	private MetricRegistry registry;
+
+	// smaller bodies are sent with a Content-Length, which keeps them from being compressed
+	@Value("${server.compression.min-response-size:2048}")
+	private int compressionMinSize;
+
+	// replaces the JSON converter Spring Boot would register, with the same object mapper
+	@Bean
+	public TimedJackson2HttpMessageConverter timedJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+		return new TimedJackson2HttpMessageConverter(objectMapper, registry, compressionMinSize);
+	}
+}
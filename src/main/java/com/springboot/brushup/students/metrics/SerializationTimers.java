@@ -0,0 +1,137 @@
+package com.springboot.brushup.students.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Serialization timers of a message converter, one per body type (List.Course...), created on first use.
+ */
+class SerializationTimers {
+
+	@FunctionalInterface
+	interface BodyWriter {
+		void write(HttpOutputMessage outputMessage) throws IOException;
+	}
+
+	private final MetricRegistry registry;
+
+	private final String prefix;
+
+	private final int contentLengthLimit;
+
+	private final ConcurrentMap<Type, Timer> timers = new ConcurrentHashMap<>();
+
+	/**
+	 * @param contentLengthLimit the size up to which bodies are buffered, to be sent with a Content-Length
+	 */
+	SerializationTimers(MetricRegistry registry, String prefix, int contentLengthLimit) {
+		this.registry = registry;
+		this.prefix = prefix;
+		this.contentLengthLimit = contentLengthLimit;
+	}
+
+	/**
+	 * Times the writer, which streams the body to the client. Bodies up to the limit are buffered first, to get
+	 * a Content-Length: the server would compress every body without one, however small
+	 * (see server.compression.min-response-size). Larger ones are sent as they are serialized, without one.
+	 *
+	 * @param type the declared body type, may be null
+	 */
+	void write(Object body, Type type, HttpOutputMessage outputMessage, BodyWriter writer) throws IOException {
+		Type bodyType = (type != null ? type : body.getClass());
+		SmallBodyBuffer buffer = new SmallBodyBuffer(outputMessage);
+		Timer.Context context = timers.computeIfAbsent(bodyType, key -> registry.timer(prefix + name(key))).time();
+		try {
+			writer.write(new HttpOutputMessage() {
+				@Override
+				public OutputStream getBody() {
+					return buffer;
+				}
+
+				@Override
+				public HttpHeaders getHeaders() {
+					return outputMessage.getHeaders();
+				}
+			});
+		} finally {
+			context.stop();
+		}
+		// a buffered body goes out once timed, the client could otherwise have all of it before the timer stops
+		buffer.finish();
+	}
+
+	/**
+	 * Keeps the body until it outgrows the limit, then writes it through to the response.
+	 */
+	private class SmallBodyBuffer extends OutputStream {
+
+		private final HttpOutputMessage outputMessage;
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		// the response body, once the limit was passed
+		private OutputStream body;
+
+		SmallBodyBuffer(HttpOutputMessage outputMessage) {
+			this.outputMessage = outputMessage;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if (body == null && buffer.size() + length > contentLengthLimit) {
+				// the headers are sent with the first bytes of the body
+				body = outputMessage.getBody();
+				buffer.writeTo(body);
+			}
+			if (body != null) {
+				body.write(bytes, offset, length);
+			} else {
+				buffer.write(bytes, offset, length);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (body != null) {
+				body.flush();
+			}
+		}
+
+		void finish() throws IOException {
+			if (body == null) {
+				outputMessage.getHeaders().setContentLength(buffer.size());
+				buffer.writeTo(outputMessage.getBody());
+			}
+		}
+	}
+
+	static String name(Type type) {
+		if (type instanceof Class) {
+			return ((Class<?>) type).getSimpleName();
+		}
+		if (type instanceof ParameterizedType) {
+			StringBuilder name = new StringBuilder(name(((ParameterizedType) type).getRawType()));
+			for (Type argument: ((ParameterizedType) type).getActualTypeArguments()) {
+				name.append('.').append(name(argument));
+			}
+			return name.toString();
+		}
+		return type.getTypeName();
+	}
+}
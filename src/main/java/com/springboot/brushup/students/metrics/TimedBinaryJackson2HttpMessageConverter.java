@@ -0,0 +1,40 @@
+package com.springboot.brushup.students.metrics;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Converter of a binary Jackson format (Smile, CBOR...), for the clients asking for it in their Accept header.
+ * Times the serialization of response bodies like the JSON converter, under serialization.&lt;format&gt;.List.Course...
+ */
+public class TimedBinaryJackson2HttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+	private final SerializationTimers timers;
+
+	/**
+	 * @param objectMapper a mapper of the binary format (built with its JsonFactory)
+	 * @param format the name of the format in the timers
+	 * @param contentLengthLimit the size up to which bodies are sent with a Content-Length
+	 */
+	public TimedBinaryJackson2HttpMessageConverter(ObjectMapper objectMapper, MediaType mediaType, String format, MetricRegistry registry,
+			int contentLengthLimit) {
+		super(objectMapper, mediaType);
+		// binary, the content type takes no charset
+		setDefaultCharset(null);
+		this.timers = new SerializationTimers(registry, TimedJackson2HttpMessageConverter.SERIALIZATION_PREFIX + format + ".", contentLengthLimit);
+	}
+
+	@Override
+	protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+	throws IOException, HttpMessageNotWritableException {
+		timers.write(object, type, outputMessage, streamed -> super.writeInternal(object, type, streamed));
+	}
+}
@@ -0,0 +1,57 @@
+package com.springboot.brushup.students.metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Times the connections taken from a pool, in {@link TimingAspect#CONNECTION_WAIT}: the time spent waiting 
+ * for a pooled connection (plus opening it, when the pool has to). 
+ * The pools of the replica setup are not beans (see DataSourceConfiguration), so the aspect can't time them itself
+ * as it does Spring Boot's pool.
+ */
+public class TimedDataSource extends DelegatingDataSource {
+
+	private final Timer timer;
+
+	private final Meter errors;
+
+	public TimedDataSource(DataSource pool, MetricRegistry registry) {
+		super(pool);
+		timer = registry.timer(TimingAspect.CONNECTION_WAIT);
+		errors = registry.meter(TimingAspect.CONNECTION_WAIT + TimingAspect.ERRORS_SUFFIX);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Timer.Context context = timer.time();
+		try {
+			return super.getConnection();
+		} catch (SQLException | RuntimeException e) {
+			errors.mark();
+			throw e;
+		} finally {
+			context.stop();
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		Timer.Context context = timer.time();
+		try {
+			return super.getConnection(username, password);
+		} catch (SQLException | RuntimeException e) {
+			errors.mark();
+			throw e;
+		} finally {
+			context.stop();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.springboot.brushup.students.metrics;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON converter timing the serialization of response bodies, per body type (serialization.List.Course...).
+ * The time includes lazy loads triggered while serializing and writing to the client.
+ * Bodies are streamed, small ones are buffered to be sent with a Content-Length.
+ */
+public class TimedJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+	public static final String SERIALIZATION_PREFIX = "serialization.";
+
+	private final SerializationTimers timers;
+
+	/**
+	 * @param contentLengthLimit the size up to which bodies are sent with a Content-Length
+	 */
+	public TimedJackson2HttpMessageConverter(ObjectMapper objectMapper, MetricRegistry registry, int contentLengthLimit) {
+		super(objectMapper);
+		this.timers = new SerializationTimers(registry, SERIALIZATION_PREFIX, contentLengthLimit);
+	}
+
+	@Override
+	protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+	throws IOException, HttpMessageNotWritableException {
+		timers.write(object, type, outputMessage, streamed -> super.writeInternal(object, type, streamed));
+	}
+}
@@ -0,0 +1,151 @@
+package com.springboot.brushup.students.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+import com.springboot.brushup.students.repository.PartialUpdateRepository;
+import com.springboot.brushup.students.repository.StudentRepository;
+
+/**
+ * Times every REST handler, every repository method and every connection taken from Spring Boot's pool
+ * (the pools of the replica setup are not beans, TimedDataSource times them).
+ * 
+ * Handler timers stop when the handler returns, before the response body is serialized (see
+ * {@link TimedJackson2HttpMessageConverter}), and include the repository calls made by the handler.
+ * Handlers returning a Callable are timed while the callable runs (the time spent queued for the 
+ * repository executor is in executor.repository.queue.wait).
+ * Together they tell slow SQL, slow serialization and pool starvation apart.
+ */
+@Component
+@Aspect
+public class TimingAspect {
+
+	public static final String HANDLER_PREFIX = "rest.";
+	public static final String REPOSITORY_PREFIX = "repository.";
+	public static final String CONNECTION_WAIT = "datasource.connection.wait";
+	public static final String ERRORS_SUFFIX = ".errors";
+
+	@Autowired
+	private MetricRegistry registry;
+
+	// timers are looked up by method, metric names are only built the first time
+	private final ConcurrentMap<Method, Timing> handlerTimings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Method, Timing> courseRepositoryTimings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Method, Timing> studentRepositoryTimings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Method, Timing> enrollmentRepositoryTimings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Method, Timing> partialUpdateRepositoryTimings = new ConcurrentHashMap<>();
+
+	private Timing connectionWait;
+
+	@PostConstruct
+	void init() {
+		connectionWait = new Timing(CONNECTION_WAIT);
+	}
+
+	@Around("within(com.springboot.brushup.students.rest..*) && @annotation(org.springframework.web.bind.annotation.RequestMapping)")
+	public Object timeHandler(ProceedingJoinPoint call) throws Throwable {
+		Method method = ((MethodSignature) call.getSignature()).getMethod();
+		Timing timing = handlerTimings.computeIfAbsent(method, 
+				key -> new Timing(HANDLER_PREFIX + key.getDeclaringClass().getSimpleName() + "." + key.getName()));
+		return timing.time(call);
+	}
+
+	// "this" also matches the methods inherited from the Spring Data interfaces (findOne, save...)
+	@Around("this(com.springboot.brushup.students.repository.CourseRepository)")
+	public Object timeCourseRepository(ProceedingJoinPoint call) throws Throwable {
+		return repositoryTiming(courseRepositoryTimings, CourseRepository.class, call).time(call);
+	}
+
+	@Around("this(com.springboot.brushup.students.repository.StudentRepository)")
+	public Object timeStudentRepository(ProceedingJoinPoint call) throws Throwable {
+		return repositoryTiming(studentRepositoryTimings, StudentRepository.class, call).time(call);
+	}
+
+	@Around("this(com.springboot.brushup.students.repository.EnrollmentRepository)")
+	public Object timeEnrollmentRepository(ProceedingJoinPoint call) throws Throwable {
+		return repositoryTiming(enrollmentRepositoryTimings, EnrollmentRepository.class, call).time(call);
+	}
+
+	@Around("this(com.springboot.brushup.students.repository.PartialUpdateRepository)")
+	public Object timePartialUpdateRepository(ProceedingJoinPoint call) throws Throwable {
+		return repositoryTiming(partialUpdateRepositoryTimings, PartialUpdateRepository.class, call).time(call);
+	}
+
+	/**
+	 * Time spent waiting for a pooled connection (plus opening it, when the pool has to).
+	 */
+	// by target, the pool implements getConnection in a superclass that is not a DataSource itself
+	@Around("execution(java.sql.Connection getConnection(..)) && target(org.apache.tomcat.jdbc.pool.DataSource)")
+	public Object timeConnectionWait(ProceedingJoinPoint call) throws Throwable {
+		return connectionWait.time(call);
+	}
+
+	private Timing repositoryTiming(ConcurrentMap<Method, Timing> timings, Class<?> repository, ProceedingJoinPoint call) {
+		return timings.computeIfAbsent(((MethodSignature) call.getSignature()).getMethod(),
+				key -> new Timing(REPOSITORY_PREFIX + repository.getSimpleName() + "." + key.getName()));
+	}
+
+	private class Timing {
+
+		private final Timer timer;
+
+		private final Meter errors;
+
+		Timing(String name) {
+			timer = registry.timer(name);
+			errors = registry.meter(name + ERRORS_SUFFIX);
+		}
+
+		Object time(ProceedingJoinPoint call) throws Throwable {
+			// not a Timer.Context, which would be left running for the handlers returning a callable
+			long start = Clock.defaultClock().getTick();
+			Object result;
+			try {
+				result = call.proceed();
+			} catch (Throwable t) {
+				errors.mark();
+				timer.update(Clock.defaultClock().getTick() - start, TimeUnit.NANOSECONDS);
+				throw t;
+			}
+			
+			if (result instanceof Callable) {
+				// the work is only done when the callable runs, which is what gets timed
+				return time((Callable<?>) result);
+			}
+			timer.update(Clock.defaultClock().getTick() - start, TimeUnit.NANOSECONDS);
+			return result;
+		}
+
+		private Callable<?> time(Callable<?> callable) {
+			return () -> {
+				Timer.Context context = timer.time();
+				try {
+					return callable.call();
+				} catch (Exception e) {
+					errors.mark();
+					throw e;
+				} finally {
+					context.stop();
+				}
+			};
+		}
+	}
+}
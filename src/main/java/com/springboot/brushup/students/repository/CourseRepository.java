@@ -1,12 +1,46 @@
 package com.springboot.brushup.students.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import com.springboot.brushup.students.domain.Course;
 
 public interface CourseRepository extends JpaRepository<Course, Integer> {
+	// query cache: the result (course IDs) is kept until the course table is written
+	@QueryHints(@QueryHint(name=HINT_CACHEABLE, value="true"))
 	public List<Course> findByName(String courseName);
 
+	// keyset pagination: seeks on the ID index instead of skipping rows with an offset
+	public List<Course> findByIdGreaterThanOrderByIdAsc(Integer after, Pageable page);
+	
+	/**
+	 * Streams the (id, name) rows of every course, to load the search index. 
+	 * Needs to be consumed (and closed) inside a transaction.
+	 */
+	@Query("select c.id, c.name from Course c")
+	@QueryHints({
+		@QueryHint(name=HINT_FETCH_SIZE, value=StudentRepository.STREAM_FETCH_SIZE), 
+		@QueryHint(name=HINT_READONLY, value="true")
+	})
+	public Stream<Object[]> streamAllNames();
+	
+	// set based removal of a course, whatever its number of students: its enrollments go first, in the same transaction
+	// (see EnrollmentRepository.unenrollCourse); the persistence context may still hold the course and its students,
+	// as they were before the bulk statements
+	@Modifying(clearAutomatically=true)
+	@Query("delete from Course c where c.id = :id")
+	public int deleteCourse(@Param("id") Integer courseId);
 }
@@ -0,0 +1,196 @@
+package com.springboot.brushup.students.repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.springboot.brushup.students.cache.AfterCommit;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.Enrollment;
+
+/**
+ * Writes single rows of the student x course join table, so that enrolling a student loads (and merges)
+ * neither the student's courses nor the course's students, and the rows of a course being deleted.
+ *
+ * The statements run through JDBC, in the current transaction: run as native queries, they would make Hibernate
+ * drop its whole second-level cache, not knowing what they change. The cached state of the students
+ * is evicted by {@link #evictStudents(Collection)} instead.
+ */
+@Repository
+public class EnrollmentRepository {
+
+	// reading the student and the course makes a missing one (or an existing enrollment) insert nothing,
+	// instead of breaking a foreign key and with it the whole JDBC batch
+	private static final String ENROLL = "insert into course_student (stud_id, course_id) "
+			+ "select s.id, c.id from student s, course c where s.id = ? and c.id = ? "
+			+ "and not exists (select 1 from course_student e where e.stud_id = s.id and e.course_id = c.id)";
+
+	private static final String UNENROLL = "delete from course_student where stud_id = ? and course_id = ?";
+
+	private static final String TOUCH_COURSE_STUDENTS = "update student set last_modified = ?, version = version + 1 "
+			+ "where id in (select stud_id from course_student where course_id = ?)";
+
+	private static final String UNENROLL_COURSE = "delete from course_student where course_id = ?";
+
+	private static final String TOUCH_STUDENTS = "update student set last_modified = :now, version = version + 1 where id in (:ids)";
+
+	private static final String EXISTING_STUDENTS = "select id from student where id in (:ids)";
+
+	private static final String EXISTING_COURSES = "select id from course where id in (:ids)";
+
+	private static final String COUNT_BY_COURSE = "select course_id, count(*) from course_student group by course_id";
+
+	private static final String COUNT_BY_GIVEN_COURSE = "select course_id, count(*) from course_student where course_id in (:ids) group by course_id";
+
+	private static final String STUDENT_COURSES = Student.class.getName() + ".courses";
+
+	@Autowired
+	private NamedParameterJdbcTemplate jdbc;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TableVersionRepository tableVersions;
+
+	/**
+	 * Marks the students as modified (their versions and ETags change), which also locks their rows until the transaction ends.
+	 *
+	 * @return the number of students found
+	 */
+	public int touchStudents(Collection<Integer> studentIds, long now) {
+		if (studentIds.isEmpty()) {
+			return 0;
+		}
+		tableVersions.changed(TableVersionRepository.STUDENT);
+		return jdbc.update(TOUCH_STUDENTS, new MapSqlParameterSource("now", now).addValue("ids", studentIds));
+	}
+
+	/**
+	 * Inserts the enrollments in one JDBC batch.
+	 *
+	 * @return for every enrollment, 1 if it was inserted,
+	 * 0 if the student or the course does not exist, or if the student is already enrolled
+	 */
+	public int[] enroll(List<Enrollment> enrollments) {
+		return batch(ENROLL, enrollments);
+	}
+
+	/**
+	 * Deletes the enrollments in one JDBC batch.
+	 *
+	 * @return for every enrollment, 1 if it was deleted, 0 if the student was not enrolled in the course
+	 */
+	public int[] unenroll(List<Enrollment> enrollments) {
+		return batch(UNENROLL, enrollments);
+	}
+
+	private int[] batch(String sql, List<Enrollment> enrollments) {
+		// students are listed with their courses
+		tableVersions.changed(TableVersionRepository.STUDENT);
+		List<Object[]> rows = enrollments.stream()
+				.map(enrollment -> new Object[] { enrollment.getStudentId(), enrollment.getCourseId() })
+				.collect(Collectors.toList());
+		return jdbc.getJdbcOperations().batchUpdate(sql, rows);
+	}
+
+	/**
+	 * Marks the students enrolled in the course as modified, with one statement, as a step of deleting the course
+	 * (before {@link #unenrollCourse(Integer)}). Their IDs are not read, see {@link #evictAllStudents()}.
+	 *
+	 * @return the number of students enrolled
+	 */
+	public int touchCourseStudents(Integer courseId, long now) {
+		tableVersions.changed(TableVersionRepository.STUDENT);
+		return jdbc.getJdbcOperations().update(TOUCH_COURSE_STUDENTS, now, courseId);
+	}
+
+	/**
+	 * Deletes every enrollment of the course, with one statement, as a step of deleting the course.
+	 *
+	 * @return the number of enrollments deleted
+	 */
+	public int unenrollCourse(Integer courseId) {
+		tableVersions.changed(TableVersionRepository.STUDENT);
+		return jdbc.getJdbcOperations().update(UNENROLL_COURSE, courseId);
+	}
+
+	public Set<Integer> findExistingStudentIds(Collection<Integer> studentIds) {
+		return findExisting(EXISTING_STUDENTS, studentIds);
+	}
+
+	public Set<Integer> findExistingCourseIds(Collection<Integer> courseIds) {
+		return findExisting(EXISTING_COURSES, courseIds);
+	}
+
+	private Set<Integer> findExisting(String sql, Collection<Integer> ids) {
+		if (ids.isEmpty()) {
+			return new HashSet<>();
+		}
+		return new HashSet<>(jdbc.queryForList(sql, new MapSqlParameterSource("ids", ids), Integer.class));
+	}
+
+	/**
+	 * Counts the students of every course, with one statement.
+	 *
+	 * @return the number of students by course ID, courses without students are left out
+	 */
+	public Map<Integer, Integer> countStudentsByCourse() {
+		Map<Integer, Integer> counts = new HashMap<>();
+		jdbc.getJdbcOperations().query(COUNT_BY_COURSE, counter(counts));
+		return counts;
+	}
+
+	/**
+	 * @see #countStudentsByCourse()
+	 */
+	public Map<Integer, Integer> countStudentsByCourse(Collection<Integer> courseIds) {
+		Map<Integer, Integer> counts = new HashMap<>();
+		if (!courseIds.isEmpty()) {
+			jdbc.query(COUNT_BY_GIVEN_COURSE, new MapSqlParameterSource("ids", courseIds), counter(counts));
+		}
+		return counts;
+	}
+
+	private static RowCallbackHandler counter(Map<Integer, Integer> counts) {
+		return row -> counts.put(row.getInt(1), row.getInt(2));
+	}
+
+	/**
+	 * Evicts every student, and their course IDs, from the Hibernate second-level cache once the transaction commits,
+	 * when the students changed are not known one by one (deleting a course, which is rare).
+	 */
+	public void evictAllStudents() {
+		AfterCommit.run(() -> {
+			org.hibernate.Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+			cache.evictEntityRegion(Student.class);
+			cache.evictCollectionRegion(STUDENT_COURSES);
+		});
+	}
+
+	/**
+	 * Evicts the students, and their course IDs, from the Hibernate second-level cache once the transaction commits.
+	 */
+	public void evictStudents(Collection<Integer> studentIds) {
+		AfterCommit.run(() -> {
+			org.hibernate.Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+			for (Integer studentId : studentIds) {
+				cache.evictEntity(Student.class, studentId);
+				cache.evictCollection(STUDENT_COURSES, studentId);
+			}
+		});
+	}
+}
@@ -0,0 +1,144 @@
+package com.springboot.brushup.students.repository;
+
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.springboot.brushup.students.cache.AfterCommit;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+
+/**
+ * Updates some columns of a single course or student with one UPDATE statement, without reading the row first,
+ * for partial updates (PATCH) of the REST API, and full updates (PUT) of courses. The statement bumps the version
+ * of the row, and only updates it while it has one of the expected versions, if any (optimistic concurrency,
+ * the row is not locked beyond the statement's own lock).
+ *
+ * Like {@link EnrollmentRepository}, the statements run through JDBC in the current transaction,
+ * and the cached state of the updated row is evicted once it commits.
+ */
+@Repository
+public class PartialUpdateRepository {
+
+	public static final String NAME = "name";
+	public static final String START_DT = "start_dt";
+
+	// the updatable columns of each table, with their SQL type (null values need one)
+	private static final Map<String, Integer> COURSE_COLUMNS = Collections.singletonMap(NAME, Types.VARCHAR);
+
+	private static final Map<String, Integer> STUDENT_COLUMNS = new HashMap<>();
+	static {
+		STUDENT_COLUMNS.put(NAME, Types.VARCHAR);
+		STUDENT_COLUMNS.put(START_DT, Types.TIMESTAMP);
+	}
+
+	@Autowired
+	private NamedParameterJdbcTemplate jdbc;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private TableVersionRepository tableVersions;
+
+	/**
+	 * Sets the given columns of the course, and marks it as modified, whatever its version.
+	 *
+	 * @param columns new values by column name, among {@link #NAME}
+	 * @return 1 if the course was updated, 0 if it does not exist
+	 */
+	public int updateCourse(Integer id, Map<String, Object> columns, long now) {
+		return updateCourse(id, columns, now, null);
+	}
+
+	/**
+	 * Sets the given columns of the course, and marks it as modified, if it has one of the expected versions.
+	 *
+	 * @param columns new values by column name, among {@link #NAME}
+	 * @param versions the expected versions, null for any
+	 * @return 1 if the course was updated, 0 if it does not exist or has another version
+	 */
+	public int updateCourse(Integer id, Map<String, Object> columns, long now, Collection<Long> versions) {
+		int updated = update("course", COURSE_COLUMNS, id, columns, now, versions);
+		if (updated > 0) {
+			evict(Course.class, id, columns.containsKey(NAME));
+		}
+		return updated;
+	}
+
+	/**
+	 * Sets the given columns of the student, and marks it as modified.
+	 *
+	 * @param columns new values by column name, among {@link #NAME} and {@link #START_DT}
+	 * @return 1 if the student was updated, 0 if it does not exist
+	 */
+	public int updateStudent(Integer id, Map<String, Object> columns, long now) {
+		int updated = update("student", STUDENT_COLUMNS, id, columns, now, null);
+		if (updated > 0) {
+			evict(Student.class, id, columns.containsKey(NAME));
+		}
+		return updated;
+	}
+
+	/**
+	 * Current version of the course, to tell a missing course from a version mismatch once an update changed nothing,
+	 * or to read the version an update left (the row stays locked by the update until the transaction ends).
+	 *
+	 * @return null if the course does not exist
+	 */
+	public Long findCourseVersion(Integer id) {
+		return DataAccessUtils.singleResult(
+				jdbc.queryForList("select version from course where id = :id", new MapSqlParameterSource("id", id), Long.class));
+	}
+
+	private int update(String table, Map<String, Integer> updatable, Integer id, Map<String, Object> columns, long now, Collection<Long> versions) {
+		if (columns.isEmpty() || !updatable.keySet().containsAll(columns.keySet())) {
+			throw new IllegalArgumentException("Only " + updatable.keySet() + " can be updated in " + table + ", got " + columns.keySet());
+		}
+		if (versions != null && versions.isEmpty()) {
+			return 0;
+		}
+
+		// column names only come from the lists above, the values are bound
+		StringBuilder sql = new StringBuilder("update ").append(table).append(" set last_modified = :now, version = version + 1");
+		MapSqlParameterSource params = new MapSqlParameterSource("now", now).addValue("id", id);
+		columns.forEach((column, value) -> {
+			sql.append(", ").append(column).append(" = :").append(column);
+			params.addValue(column, value, updatable.get(column));
+		});
+		sql.append(" where id = :id");
+		if (versions != null) {
+			sql.append(" and version in (:versions)");
+			params.addValue("versions", versions);
+		}
+
+		// the version rows are named after the tables
+		tableVersions.changed(table);
+		return jdbc.update(sql.toString(), params);
+	}
+
+	/**
+	 * Evicts the entity from the Hibernate second-level cache once the transaction commits.
+	 * A new name also drops the cached query results, which would still find the entity by its previous name.
+	 */
+	private void evict(Class<?> entityClass, Integer id, boolean renamed) {
+		AfterCommit.run(() -> {
+			org.hibernate.Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+			cache.evictEntity(entityClass, id);
+			if (renamed) {
+				cache.evictDefaultQueryRegion();
+			}
+		});
+	}
+}
@@ -1,11 +1,69 @@
 package com.springboot.brushup.students.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import com.springboot.brushup.students.domain.Student;
 
 public interface StudentRepository extends JpaRepository<Student, Integer>{
+	// rows fetched per round trip while streaming; a positive fetch size makes the MariaDB driver stream the result set
+	public static final String STREAM_FETCH_SIZE = "500";
+	
+	// query cache: the result (student IDs) is kept until the student table is written
+	@QueryHints(@QueryHint(name=HINT_CACHEABLE, value="true"))
 	public List<Student> findByName(String studentName);
+
+	// keyset pagination: seeks on the ID index instead of skipping rows with an offset
+	public List<Student> findByIdGreaterThanOrderByIdAsc(Integer after, Pageable page);
+	
+	/**
+	 * Streams every student joined with its courses as scalar rows 
+	 * (student id, student name, student start date, course id, course name), ordered by student id.
+	 * Course columns are null for students without courses. 
+	 * No entity is loaded, so the persistence context does not grow while the stream is consumed.
+	 * Needs to be consumed (and closed) inside a transaction.
+	 */
+	@Query("select s.id, s.name, s.startDt, c.id, c.name from Student s left join s.courses c order by s.id")
+	@QueryHints({
+		@QueryHint(name=HINT_FETCH_SIZE, value=STREAM_FETCH_SIZE), 
+		@QueryHint(name=HINT_READONLY, value="true")
+	})
+	public Stream<Object[]> streamAllWithCourses();
+	
+	/**
+	 * Same as findOne, but loads the courses in the same statement (join fetch), 
+	 * so that serializing the student does not trigger a lazy load.
+	 */
+	@EntityGraph(attributePaths="courses")
+	public Student findWithCoursesById(Integer id);
+	
+	/**
+	 * Scalar rows of a single student joined with its courses, in the same format as {@link #streamAllWithCourses()}.
+	 */
+	@Query("select s.id, s.name, s.startDt, c.id, c.name from Student s left join s.courses c where s.id = :id order by c.id")
+	public List<Object[]> findDetailRowsById(@Param("id") Integer id);
+	
+	/**
+	 * Streams the (id, name) rows of every student, to load the search index. 
+	 * Needs to be consumed (and closed) inside a transaction.
+	 */
+	@Query("select s.id, s.name from Student s")
+	@QueryHints({
+		@QueryHint(name=HINT_FETCH_SIZE, value=STREAM_FETCH_SIZE), 
+		@QueryHint(name=HINT_READONLY, value="true")
+	})
+	public Stream<Object[]> streamAllNames();
 }
@@ -0,0 +1,30 @@
+package com.springboot.brushup.students.repository;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import com.springboot.brushup.students.domain.Course;
+
+/**
+ * JPA listener of the courses and students, bumping the version of their table in the writing transaction
+ * (see {@link TableVersionRepository}). Hibernate creates the listener itself, the repository registers with it on startup.
+ */
+public class TableVersionListener {
+
+	private static volatile TableVersionRepository tableVersions;
+
+	static void setTableVersions(TableVersionRepository repository) {
+		tableVersions = repository;
+	}
+
+	@PostPersist
+	@PostUpdate
+	@PostRemove
+	void changed(Object entity) {
+		TableVersionRepository repository = tableVersions;
+		if (repository != null) {
+			repository.changed(entity instanceof Course ? TableVersionRepository.COURSE : TableVersionRepository.STUDENT);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.springboot.brushup.students.repository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Versions of the course and student tables, which the ETags of the listings are built from.
+ * Reading them is a primary key lookup whatever the size of the tables, and unlike modification times
+ * they only ever move forward, whichever instance wrote last, and deletes move them too.
+ *
+ * Every transaction writing a table bumps its version once, right before it commits (after Hibernate's flush),
+ * so the version row stays locked for the commit only. The JPA writes are reported by {@link TableVersionListener},
+ * the JDBC and bulk statements by the repositories running them, or their callers.
+ */
+@Repository
+public class TableVersionRepository {
+
+	public static final String COURSE = "course";
+	public static final String STUDENT = "student";
+
+	private static final String BUMP = "update table_version set version = version + 1 where name in (:names)";
+
+	private static final String CREATE = "insert into table_version (name, version) values (:name, 0)";
+
+	private static final String VERSIONS = "select name, version from table_version where name in (:names)";
+
+	@Autowired
+	private NamedParameterJdbcTemplate jdbc;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@PostConstruct
+	void start() {
+		Set<String> existing = findVersionsByName(Arrays.asList(COURSE, STUDENT)).keySet();
+		for (String table : Arrays.asList(COURSE, STUDENT)) {
+			if (!existing.contains(table)) {
+				try {
+					jdbc.update(CREATE, new MapSqlParameterSource("name", table));
+				} catch (DuplicateKeyException e) {
+					// created by another instance starting at the same time
+				}
+			}
+		}
+		TableVersionListener.setTableVersions(this);
+	}
+
+	@PreDestroy
+	void stop() {
+		TableVersionListener.setTableVersions(null);
+	}
+
+	/**
+	 * Bumps the version of the table as the current transaction commits, once whatever the number of calls
+	 * (right away outside of a transaction).
+	 *
+	 * @param table {@link #COURSE} or {@link #STUDENT}
+	 */
+	public void changed(String table) {
+		EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+		if (entityManager == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+			bump(new LinkedHashSet<>(Arrays.asList(table)));
+			return;
+		}
+		// keyed by session, a transaction of its own (REQUIRES_NEW) bumps its tables itself
+		EventSource session = entityManager.unwrap(EventSource.class);
+		Bump pending = (Bump) TransactionSynchronizationManager.getResource(session);
+		if (pending == null) {
+			pending = new Bump();
+			session.getActionQueue().registerProcess(pending);
+			TransactionSynchronizationManager.bindResource(session, pending);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(session);
+				}
+			});
+		}
+		pending.tables.add(table);
+	}
+
+	/**
+	 * @return the current versions of the tables, in the same order, 0 for a table never written
+	 */
+	public List<Long> findVersions(String... tables) {
+		Map<String, Long> versions = findVersionsByName(Arrays.asList(tables));
+		return Arrays.stream(tables).map(table -> versions.getOrDefault(table, 0L)).collect(Collectors.toList());
+	}
+
+	private Map<String, Long> findVersionsByName(List<String> tables) {
+		Map<String, Long> versions = new HashMap<>();
+		jdbc.query(VERSIONS, new MapSqlParameterSource("names", tables), row -> {
+			versions.put(row.getString(1), row.getLong(2));
+		});
+		return versions;
+	}
+
+	private void bump(Set<String> tables) {
+		jdbc.update(BUMP, new MapSqlParameterSource("names", tables));
+	}
+
+	/**
+	 * Run by Hibernate once it flushed the transaction, on its connection, before committing it.
+	 */
+	private class Bump implements BeforeTransactionCompletionProcess {
+
+		private final Set<String> tables = new LinkedHashSet<>();
+
+		@Override
+		public void doBeforeTransactionCompletion(SessionImplementor session) {
+			bump(tables);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.springboot.brushup.students.rest;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Binary encodings of the JSON documents of the REST API, for the clients that ask for them in their Accept header
+ * (JSON stays the default). Field names are written once per document instead of once per object,
+ * and numbers in binary: list responses get smaller and cheaper to parse.
+ */
+public final class BinaryFormats {
+
+	public static final String SMILE_VALUE = "application/x-jackson-smile";
+	public static final MediaType SMILE = MediaType.valueOf(SMILE_VALUE);
+
+	public static final String CBOR_VALUE = "application/cbor";
+	public static final MediaType CBOR = MediaType.valueOf(CBOR_VALUE);
+
+	private BinaryFormats() {
+	}
+
+	/**
+	 * A mapper of the given format, configured like the JSON one (by the builder, which is left unchanged),
+	 * except for the dates: written as epoch millis instead of ISO strings, which the clients read back the same way.
+	 */
+	public static ObjectMapper objectMapper(JsonFactory factory, Jackson2ObjectMapperBuilder builder) {
+		ObjectMapper objectMapper = new ObjectMapper(factory);
+		builder.configure(objectMapper);
+		return objectMapper.enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+	}
+}
@@ -0,0 +1,42 @@
+package com.springboot.brushup.students.rest;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.springboot.brushup.students.metrics.TimedBinaryJackson2HttpMessageConverter;
+
+/**
+ * Converters of the binary formats (see BinaryFormats), timed like the JSON one.
+ *
+ * They are appended to the converters of Spring MVC instead of being declared as beans, which Spring Boot
+ * would put first: requests accepting anything (or without an Accept header) have to keep getting JSON.
+ */
+@Configuration
+public class BinaryFormatsConfiguration extends WebMvcConfigurerAdapter {
+
+	@Autowired
+	private Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	@Value("${server.compression.min-response-size:2048}")
+	private int compressionMinSize;
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.add(new TimedBinaryJackson2HttpMessageConverter(
+				BinaryFormats.objectMapper(new SmileFactory(), objectMapperBuilder), BinaryFormats.SMILE, "smile", registry, compressionMinSize));
+		converters.add(new TimedBinaryJackson2HttpMessageConverter(
+				BinaryFormats.objectMapper(new CBORFactory(), objectMapperBuilder), BinaryFormats.CBOR, "cbor", registry, compressionMinSize));
+	}
+}
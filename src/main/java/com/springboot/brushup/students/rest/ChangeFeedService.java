@@ -0,0 +1,62 @@
+package com.springboot.brushup.students.rest;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.springboot.brushup.students.changes.ChangeFeed;
+import com.springboot.brushup.students.rest.constants.RestPaths;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stream of the changes to courses, students and enrollments (see ChangeFeed), as Server-Sent Events:
+ * course, student and enrollment events with the ChangeEvent as JSON, and reset events after which
+ * the listings have to be read again.
+ */
+@Slf4j
+@RestController
+@RequestMapping(ChangeFeedService.PATH)
+public class ChangeFeedService {
+
+	public static final String PATH = RestPaths.BASE_PATH + "/changes";
+
+	public static final String LAST_EVENT_ID = "Last-Event-ID";
+
+	// sent with the 503 when there are too many subscribers
+	private static final String RETRY_AFTER_SECONDS = "30";
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	/**
+	 * Streams the changes committed from now on, or from after the given event when reconnecting.
+	 */
+	@RequestMapping(method=RequestMethod.GET, produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter getChanges(@RequestHeader(value=LAST_EVENT_ID, required=false) String lastEventId) {
+		log.debug("Subscribing to the changes after {}", lastEventId);
+
+		return changeFeed.subscribe(lastEventId);
+	}
+
+
+	// too many subscribers already
+	@ExceptionHandler(RejectedExecutionException.class)
+	void handleRejectedExecutionException(HttpServletResponse response) throws IOException {
+	    response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+	    response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+	}
+
+}
@@ -1,25 +1,51 @@
 package com.springboot.brushup.students.rest;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.springboot.brushup.students.async.AsyncConfiguration;
+import com.springboot.brushup.students.batch.BatchInserter;
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.cache.EntityCache;
+import com.springboot.brushup.students.changes.ChangeFeed;
 import com.springboot.brushup.students.domain.Course;
-import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.ChangeEvent;
+import com.springboot.brushup.students.dto.CourseStats;
+import com.springboot.brushup.students.dto.NameMatch;
 import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+import com.springboot.brushup.students.repository.PartialUpdateRepository;
+import com.springboot.brushup.students.repository.TableVersionRepository;
 import com.springboot.brushup.students.rest.exceptions.NotFoundException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionFailedException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionRequiredException;
+import com.springboot.brushup.students.search.SearchIndex;
+import com.springboot.brushup.students.stats.EnrollmentCounts;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -31,117 +57,310 @@ public class CourseService {
 	@Autowired
 	private CourseRepository courses;
 	
+	@Autowired
+	private BatchInserter batchInserter;
+	
+	@Autowired
+	private EntityCache entityCache;
+	
+	@Autowired
+	private SearchIndex searchIndex;
+	
+	@Autowired
+	private PartialUpdateRepository partialUpdates;
+	
+	@Autowired
+	private EnrollmentRepository enrollments;
+	
+	@Autowired
+	private TableVersionRepository tableVersions;
+	
+	@Autowired
+	private EnrollmentCounts enrollmentCounts;
+	
+	@Autowired
+	private ChangeFeed changeFeed;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
 	// no @ResponseBody needed as @RestController does that
 	@RequestMapping(value="/{id}", method=RequestMethod.GET)
-	public Course getCourse(@PathVariable Integer id) 
-	throws NotFoundException {
-		log.debug("Finding course with id " + id);
-		
-		Course course = null;
-		
-		course = courses.findOne(id);
-		
-		if (course == null) {
-			String msg = "No courses found with ID " + id; 
-			log.debug(msg);
-			throw new NotFoundException(msg);
-		} 		
-		
-		log.debug("Finished finding course with id " + id);
-		
-		return course;
+	public Callable<Course> getCourse(@PathVariable Integer id, WebRequest request) {
+		// runs on the repository executor when enabled (see AsyncConfiguration), the servlet thread is released meanwhile,
+		// in a read-only transaction (served by a read replica, when there is one)
+		return Transactions.readOnly(transactionManager, () -> {
+			log.debug("Finding course with id {}", id);
+			
+			Course course = null;
+			
+			course = entityCache.findCourse(id);
+			
+			if (course == null) {
+				log.debug("No courses found with ID {}", id);
+				throw new NotFoundException("No courses found with ID " + id);
+			} 		
+			
+			// sets the ETag header, and the 304 status if the client already has this version
+			if (request.checkNotModified(ETags.of(course))) {
+				log.debug("Course with id {} not modified", id);
+				return null;
+			}
+			
+			log.debug("Finished finding course with id {}", id);
+			
+			return course;
+		});
 	}
 
 	@RequestMapping(method=RequestMethod.GET)
-	public List<Course> getAllCourses() { 
-		log.debug("Finding all courses");
-		
-		List<Course> allCourses = courses.findAll();
+	public Callable<ResponseEntity<List<Course>>> getAllCourses(
+			@RequestParam(value=Pagination.AFTER_PARAM, required=false) Integer after, 
+			@RequestParam(value=Pagination.LIMIT_PARAM, required=false) Integer limit, 
+			WebRequest request) { 
+		return Transactions.readOnly(transactionManager, () -> {
+			log.debug("Finding courses after id {}, limit {}", after, limit);
+			
+			Pageable page = Pagination.page(limit);
+			
+			// answered from the table version alone, before the page is read
+			if (request.checkNotModified(ETags.ofPage("courses", after, limit, tableVersions.findVersions(TableVersionRepository.COURSE)))) {
+				log.debug("Courses not modified");
+				return null;
+			}
+			
+			List<Course> foundCourses = courses.findByIdGreaterThanOrderByIdAsc(Pagination.after(after), page);
+			
+			ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+			// a full page means there may be more rows, so hand out the cursor for the next one
+			if (foundCourses.size() == page.getPageSize()) {
+				response.header(Pagination.NEXT_CURSOR_HEADER, String.valueOf(foundCourses.get(foundCourses.size() - 1).getId()));
+			}
+			
+			log.debug("Finished finding {} courses", foundCourses.size());
+			
+			return response.body(foundCourses);
+		});
+	}
+	
+	/**
+	 * Type-ahead search of the courses whose name (or a word of it) starts like the query, tolerating a few typos.
+	 * Answered from memory (see SearchIndex), so on the servlet thread.
+	 */
+	@RequestMapping(value="/search", method=RequestMethod.GET)
+	public List<NameMatch> searchCourses(
+			@RequestParam("q") String query, 
+			@RequestParam(value=Pagination.LIMIT_PARAM, required=false) Integer limit) {
+		log.debug("Searching courses named like {}, limit {}", query, limit);
 		
-		log.debug("Finished finding all courses");
+		return searchIndex.searchCourses(query, limit);
+	}
+	
+	/**
+	 * Number of students of every course having some, ordered by course ID.
+	 * Answered from memory (see EnrollmentCounts), so on the servlet thread: neither courses nor enrollments are read.
+	 */
+	@RequestMapping(value="/stats", method=RequestMethod.GET)
+	public List<CourseStats> getCourseStats() {
+		log.debug("Finding course stats");
 		
-		return allCourses;
+		return enrollmentCounts.getStats();
 	}
 	
 	@RequestMapping(method=RequestMethod.POST)
 	@ResponseStatus(HttpStatus.CREATED)
-	public Course createCourse(@RequestBody Course course) {
-		log.debug("Creating course " + course);
-		
+	public Callable<Course> createCourse(@RequestBody Course course) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Creating course {}", course);
+			
+			if (course.getId() != null) {
+				String msg = "The ID should not be provided when creating a new course"; 
+				log.debug(msg);
+				throw new IllegalArgumentException(msg);
+			}
+
+			// will not save the associated courses as the course is the owner of the relationship  
+			Course result = null;
+			
+			try {
+				// flushed here, for a duplicate name to fail the insert rather than the commit
+				result = courses.saveAndFlush(course);
+			} catch (DataIntegrityViolationException ex) {
+				log.error("Error creating course", ex);
+				throw new IllegalArgumentException("Error creating course, please check the course information provided", ex);
+			}
+			
+			log.debug("Finished creating {}", result);
+			
+			return result;
+		});
+	}
+	
+	/**
+	 * Creates many courses at once, inserting them in JDBC batches. 
+	 * Invalid rows are reported in the result and do not prevent the others from being created.
+	 */
+	@RequestMapping(value="/batch", method=RequestMethod.POST)
+	public Callable<ResponseEntity<BatchResult>> createCourses(@RequestBody List<Course> newCourses) {
+		return () -> {
+			log.debug("Creating {} courses", newCourses.size());
+			
+			// no transaction of the handler's own: every chunk commits in its own (see BatchInserter)
+			BatchResult result = batchInserter.insert(newCourses, Course::getId, Course::setId, this::validateNewCourse);
+			
+			log.debug("Finished creating courses: {} created, {} failed", result.getSucceeded(), result.getFailed());
+			
+			// 207 tells the client to look at the rows to find out which ones failed
+			return ResponseEntity.status(result.getFailed() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(result);
+		};
+	}
+	
+	private String validateNewCourse(Course course) {
+		if (course == null) {
+			return "No course provided";
+		}
 		if (course.getId() != null) {
-			String msg = "The ID should not be provided when creating a new course"; 
-			log.debug(msg);
-			throw new IllegalArgumentException(msg);
+			return "The ID should not be provided when creating a new course";
 		}
-
-		// will not save the associated courses as the course is the owner of the relationship  
-		Course result = null;
-		
-		try {
-			result = courses.save(course);
-		} catch (DataIntegrityViolationException ex) {
-			log.error("Error creating course", ex);
-			throw new IllegalArgumentException("Error creating course, please check the course information provided", ex);
+		if (course.getName() == null || course.getName().length() > Course.NAME_LENGTH) {
+			return "The course name should be provided and have at most " + Course.NAME_LENGTH + " characters";
 		}
-		
-		log.debug("Finished creating " + result);
-		
-		return result;
+		return null;
 	}
 	
+	/**
+	 * Replaces the course name with a single UPDATE statement, the course is not read first.
+	 * The If-Match header (the ETag of a GET) is required, 428 without it: the course is only updated while it still 
+	 * has one of the versions named, 412 otherwise, so concurrent writers do not overwrite each other's changes unknowingly, 
+	 * and the row is locked no longer than the statement. If-Match: * updates whatever the version.
+	 * Answers with the ETag of the new version.
+	 */
 	@RequestMapping(method=RequestMethod.PUT)
-	public Course updateCourse(@RequestBody Course course) 
-	throws NotFoundException {
-		log.debug("Updating course " + course);
-		
-		if (course.getId() == null) {
-			String msg = "No ID provided for course to update"; 
-			log.debug(msg);
-			throw new IllegalArgumentException();
-		}
-		
-		Course currentCourse = courses.findOne(course.getId());
-		
-		if (currentCourse == null) {
-			String msg = "No courses found with ID " + course.getId(); 
-			log.debug(msg);
-			throw new NotFoundException(msg);
-		}
+	public Callable<ResponseEntity<Course>> updateCourse(@RequestBody Course course, 
+			@RequestHeader(value=HttpHeaders.IF_MATCH, required=false) String ifMatch) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Updating course {} if matching {}", course, ifMatch);
+			
+			if (course.getId() == null) {
+				String msg = "No ID provided for course to update"; 
+				log.debug(msg);
+				throw new IllegalArgumentException();
+			}
+			if (course.getName() == null || course.getName().length() > Course.NAME_LENGTH) {
+				throw new IllegalArgumentException("The course name should be provided and have at most " + Course.NAME_LENGTH + " characters");
+			}
+			if (ifMatch == null) {
+				log.debug("No version given to update course with ID {}", course.getId());
+				throw new PreconditionRequiredException("The ETag of the course to update should be given in If-Match");
+			}
+			
+			List<Long> versions = ETags.courseVersions(course.getId(), ifMatch);
+			
+			int updated = 0;
+			try {
+				updated = partialUpdates.updateCourse(course.getId(), 
+						Collections.singletonMap(PartialUpdateRepository.NAME, course.getName()), System.currentTimeMillis(), versions);
+			} catch (DataIntegrityViolationException e) {
+				String msg = "Could not update course with ID " + course.getId() + ": " + e.getMessage(); 
+				log.debug(msg, e);
+				throw new IllegalArgumentException(msg, e);
+			}
+			
+			// a missing course matches no version either
+			if (updated == 0 && versions != null) {
+				String msg = "Course with ID " + course.getId() + " does not match " + ifMatch; 
+				log.debug(msg);
+				throw new PreconditionFailedException(msg);
+			}
+			if (updated == 0) {
+				log.debug("No courses found with ID {}", course.getId());
+				throw new NotFoundException("No courses found with ID " + course.getId());
+			}
+			
+			// the version left by the update is only read when the one expected is not known for sure
+			course.setVersion(versions != null && versions.size() == 1 
+					? versions.get(0) + 1 : partialUpdates.findCourseVersion(course.getId()));
+			entityCache.evictCourse(course.getId());
+			searchIndex.putCourse(course.getId(), course.getName());
+			changeFeed.changed(ChangeEvent.Entity.COURSE, ChangeEvent.Type.UPDATED, course.getId());
+			
+			log.debug("Finished updating {}", course);
+			
+			return ResponseEntity.ok().eTag(ETags.of(course)).body(course);
+		});
+	}
 
-		// will not save the associated courses as the course is the owner of the relationship  
-		Course result = courses.save(course);
-		
-		log.debug("Finished updating " + course);
-		
-		return result;
+	/**
+	 * Applies a JSON merge patch of the course name (see MergePatch) with a single UPDATE statement, 
+	 * the course is not read first. Answers without a body, as the updated course is not read afterwards either.
+	 */
+	@RequestMapping(value="/{id}", method=RequestMethod.PATCH, consumes={MergePatch.MEDIA_TYPE_VALUE, MediaType.APPLICATION_JSON_VALUE})
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public Callable<Void> patchCourse(@PathVariable Integer id, @RequestBody JsonNode patch) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Patching course {} with {}", id, patch);
+			
+			String name = MergePatch.text("name", MergePatch.fields(patch, id, "name").get("name"));
+			if (name.length() > Course.NAME_LENGTH) {
+				throw new IllegalArgumentException("The course name should have at most " + Course.NAME_LENGTH + " characters");
+			}
+			
+			int updated = 0;
+			try {
+				updated = partialUpdates.updateCourse(id, Collections.singletonMap(PartialUpdateRepository.NAME, name), System.currentTimeMillis());
+			} catch (DataIntegrityViolationException e) {
+				String msg = "Could not patch course with ID " + id + ": " + e.getMessage(); 
+				log.debug(msg, e);
+				throw new IllegalArgumentException(msg, e);
+			}
+			
+			if (updated == 0) {
+				log.debug("No courses found with ID {}", id);
+				throw new NotFoundException("No courses found with ID " + id);
+			}
+			entityCache.evictCourse(id);
+			searchIndex.putCourse(id, name);
+			changeFeed.changed(ChangeEvent.Entity.COURSE, ChangeEvent.Type.UPDATED, id);
+			
+			log.debug("Finished patching course with id {}", id);
+			return null;
+		});
 	}
 
 	@RequestMapping(value="/{id}", method=RequestMethod.DELETE)
 	@ResponseStatus(HttpStatus.NO_CONTENT)
-	public void removeCourse(@PathVariable("id") Integer id) 
-	throws NotFoundException {
-		Course current = courses.findOne(id);
-		
-		if (current == null) {
-			String msg = "No courses found with ID " + id; 
-			log.debug(msg);
-			throw new NotFoundException(msg);
-		}
-		
-		try {
-			// course is not the owner of the student x course relationship... 
-			// need the remove the relationship from the students first 
-			if (current.getStudents() != null) {
-				for (Student student: current.getStudents()) {
-					student.getCourses().remove(current);
-				}
-			}
-			courses.delete(current);
-		} catch (DataIntegrityViolationException e) {
-			String msg = "Could not delete course with ID " + id + ": " + e.getMessage(); 
-			log.debug(msg, e);
-			throw new IllegalArgumentException(msg, e);
-		}
+	public Callable<Void> removeCourse(@PathVariable("id") Integer id) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Removing course with id {}", id);
+			
+			int deleted = 0;
+			try {
+				// course is not the owner of the student x course relationship... 
+				// the relationships are removed with bulk statements instead of loading every enrolled student:
+				// the students own the enrollments, so they are the ones marked as modified, and evicted
+				enrollments.touchCourseStudents(id, System.currentTimeMillis());
+				enrollments.unenrollCourse(id);
+				enrollments.evictAllStudents();
+				deleted = courses.deleteCourse(id);
+			} catch (DataIntegrityViolationException e) {
+				String msg = "Could not delete course with ID " + id + ": " + e.getMessage(); 
+				log.debug(msg, e);
+				throw new IllegalArgumentException(msg, e);
+			}
+			
+			// nothing was changed by the statements above in that case, rolled back all the same
+			if (deleted == 0) {
+				log.debug("No courses found with ID {}", id);
+				throw new NotFoundException("No courses found with ID " + id);
+			}
+			// a bulk statement, unseen by the listeners of the course
+			tableVersions.changed(TableVersionRepository.COURSE);
+			entityCache.evictCourse(id);
+			searchIndex.removeCourse(id);
+			enrollmentCounts.courseRemoved(id);
+			changeFeed.changed(ChangeEvent.Entity.COURSE, ChangeEvent.Type.DELETED, id);
+			return null;
+		});
 	}
 	
 	
@@ -150,9 +369,26 @@ public class CourseService {
 	    response.sendError(HttpStatus.NOT_FOUND.value());
 	}
 	
+	@ExceptionHandler(PreconditionFailedException.class)
+	void handlePreconditionFailedException(HttpServletResponse response) throws IOException {
+	    response.sendError(HttpStatus.PRECONDITION_FAILED.value());
+	}
+	
+	@ExceptionHandler(PreconditionRequiredException.class)
+	void handlePreconditionRequiredException(HttpServletResponse response) throws IOException {
+	    response.sendError(HttpStatus.PRECONDITION_REQUIRED.value());
+	}
+	
 	@ExceptionHandler(IllegalArgumentException.class)
 	void handleIllegalArgumentException(HttpServletResponse response) throws IOException {
 	    response.sendError(HttpStatus.BAD_REQUEST.value());
 	}
 	
+	// the repository executor queue is full
+	@ExceptionHandler(RejectedExecutionException.class)
+	void handleRejectedExecutionException(HttpServletResponse response) throws IOException {
+	    response.setHeader(HttpHeaders.RETRY_AFTER, AsyncConfiguration.RETRY_AFTER_SECONDS);
+	    response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+	}
+	
 }
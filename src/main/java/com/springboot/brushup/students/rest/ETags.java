@@ -0,0 +1,104 @@
+package com.springboot.brushup.students.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+
+/**
+ * Entity tags of the REST resources, built from the modification markers of the entities 
+ * (never from the serialized body), so that a conditional GET can be answered before 
+ * anything is read from the database or serialized.
+ * 
+ * The tags of single courses and students carry their version, which the If-Match header of an update
+ * is turned back into (see {@link #courseVersions(Integer, String)}).
+ */
+public final class ETags {
+
+	private static final String COURSE = "course-";
+	private static final String STUDENT = "student-";
+
+	private ETags() {
+	}
+	
+	public static String of(Course course) {
+		return quote(COURSE + course.getId() + "-" + course.getVersion());
+	}
+
+	/**
+	 * Students are serialized with their courses, so renaming one of them changes the student's tag too.
+	 * Enrollment changes are covered by the student's own marker.
+	 */
+	public static String of(Student student) {
+		long coursesModified = 0;
+		if (student.getCourses() != null) {
+			for (Course course: student.getCourses()) {
+				if (course.getLastModified() != null) {
+					coursesModified = Math.max(coursesModified, course.getLastModified());
+				}
+			}
+		}
+		return quote(STUDENT + student.getId() + "-" + student.getVersion() + "-" + coursesModified);
+	}
+	
+	/**
+	 * Versions of the course named by the tags of an If-Match header, as handed out by {@link #of(Course)}.
+	 * Weak tags never match.
+	 * 
+	 * @return null for *, which matches any version, empty when no tag names a version of this course
+	 */
+	public static List<Long> courseVersions(Integer id, String ifMatch) {
+		return versions(COURSE + id + "-", ifMatch);
+	}
+	
+	/**
+	 * Versions of the student named by the tags of an If-Match header, as handed out by {@link #of(Student)}.
+	 * Only the student's own part of the tags is matched: renaming one of its courses does not make 
+	 * an update of the student fail, as the update does not write the courses themselves.
+	 * 
+	 * @return null for *, which matches any version, empty when no tag names a version of this student
+	 */
+	public static List<Long> studentVersions(Integer id, String ifMatch) {
+		return versions(STUDENT + id + "-", ifMatch);
+	}
+	
+	/**
+	 * @param resource name of the listed resource
+	 * @param after the pagination cursor requested
+	 * @param limit the page size requested
+	 * @param tableVersions versions of every table the listing is built from
+	 */
+	public static String ofPage(String resource, Integer after, Integer limit, List<Long> tableVersions) {
+		StringBuilder tag = new StringBuilder(resource).append("-").append(after).append("-").append(limit);
+		for (Long version: tableVersions) {
+			tag.append("-").append(version);
+		}
+		return quote(tag.toString());
+	}
+	
+	private static List<Long> versions(String prefix, String ifMatch) {
+		List<Long> versions = new ArrayList<>();
+		for (String tag: ifMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*")) {
+				return null;
+			}
+			if (!tag.startsWith("\"" + prefix) || !tag.endsWith("\"")) {
+				continue;
+			}
+			String version = tag.substring(prefix.length() + 1, tag.length() - 1);
+			int end = version.indexOf('-');
+			try {
+				versions.add(Long.valueOf(end < 0 ? version : version.substring(0, end)));
+			} catch (NumberFormatException e) {
+				// not one of ours
+			}
+		}
+		return versions;
+	}
+	
+	private static String quote(String tag) {
+		return "\"" + tag + "\"";
+	}
+}
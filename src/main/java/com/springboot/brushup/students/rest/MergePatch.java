@@ -0,0 +1,83 @@
+package com.springboot.brushup.students.rest;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON merge patches (RFC 7396) of the scalar fields of a resource: a field present in the patch replaces
+ * the current value (null clears it), a field left out is kept.
+ * Nested objects and collections are not patchable, relationships have their own endpoints.
+ */
+public final class MergePatch {
+
+	public static final String MEDIA_TYPE_VALUE = "application/merge-patch+json";
+
+	private static final String ID_FIELD = "id";
+
+	private MergePatch() {
+	}
+
+	/**
+	 * @param id the ID of the patched resource, the patch may repeat it but not change it
+	 * @param patchable the fields that can be patched
+	 * @return the patched fields, with their new (possibly null) value
+	 * @throws IllegalArgumentException if the patch is not an object, changes nothing, or any other field
+	 */
+	public static Map<String, JsonNode> fields(JsonNode patch, Integer id, String... patchable) {
+		if (patch == null || !patch.isObject()) {
+			throw new IllegalArgumentException("The patch should be a JSON object");
+		}
+
+		List<String> allowed = Arrays.asList(patchable);
+		Map<String, JsonNode> fields = new LinkedHashMap<>();
+		for (Iterator<Map.Entry<String, JsonNode>> it = patch.fields(); it.hasNext(); ) {
+			Map.Entry<String, JsonNode> field = it.next();
+			if (ID_FIELD.equals(field.getKey()) && field.getValue().isNumber() && field.getValue().asInt() == id) {
+				continue;
+			}
+			if (!allowed.contains(field.getKey())) {
+				throw new IllegalArgumentException("Only " + allowed + " can be patched, got " + field.getKey());
+			}
+			fields.put(field.getKey(), field.getValue());
+		}
+
+		if (fields.isEmpty()) {
+			throw new IllegalArgumentException("The patch should change at least one of " + allowed);
+		}
+		return fields;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value is null or not a string
+	 */
+	public static String text(String field, JsonNode value) {
+		if (value == null || !value.isTextual()) {
+			throw new IllegalArgumentException("The " + field + " should be a string");
+		}
+		return value.asText();
+	}
+
+	/**
+	 * Reads the value the way the same field of a full update would be read.
+	 *
+	 * @return null if the patch clears the field
+	 * @throws IllegalArgumentException if the value can't be read as the given type
+	 */
+	public static <T> T value(String field, JsonNode value, Class<T> type, ObjectMapper objectMapper) {
+		if (value == null || value.isNull()) {
+			return null;
+		}
+		try {
+			return objectMapper.treeToValue(value, type);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Invalid " + field + ": " + value, e);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.springboot.brushup.students.rest;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Keyset (cursor) pagination contract shared by the listing endpoints.
+ * 
+ * Clients pass the last ID they have seen as "after" and get at most "limit" rows with a bigger ID, 
+ * ordered by ID. When a full page is returned, the ID of its last row is sent back in the 
+ * {@link #NEXT_CURSOR_HEADER} header, to be used as "after" for the next call.
+ * Seeking on the primary key index keeps every page as cheap as the first one, no matter the table size.
+ */
+public final class Pagination {
+	
+	public static final String AFTER_PARAM = "after";
+	public static final String LIMIT_PARAM = "limit";
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+	public static final int DEFAULT_LIMIT = 100;
+	public static final int MAX_LIMIT = 1000;
+	
+	private Pagination() {
+	}
+	
+	/**
+	 * @return the ID to seek after, defaulting to the lowest possible ID (test data uses negative IDs)  
+	 */
+	public static Integer after(Integer after) {
+		return (after != null ? after : Integer.MIN_VALUE);
+	}
+	
+	/**
+	 * @return a first page request of the requested size, capped to {@link #MAX_LIMIT}
+	 * @throws IllegalArgumentException if the limit is not positive
+	 */
+	public static Pageable page(Integer limit) {
+		if (limit != null && limit < 1) {
+			throw new IllegalArgumentException("The limit should be a positive number, got " + limit);
+		}
+		
+		int size = (limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT)); 
+		return new PageRequest(0, size);
+	}
+}
@@ -0,0 +1,99 @@
+package com.springboot.brushup.students.rest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.springboot.brushup.students.rest.constants.RestPaths;
+import com.springboot.brushup.students.rest.exceptions.NotFoundException;
+import com.springboot.brushup.students.roster.RosterImport;
+import com.springboot.brushup.students.roster.RosterImporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk import of students from registrar roster files (see RosterImporter for the format),
+ * instead of a POST per student.
+ */
+@Slf4j
+@RestController
+@RequestMapping(RosterImportService.PATH)
+public class RosterImportService {
+
+	public static final String PATH = RestPaths.STUDENTS + "/imports";
+
+	public static final String CSV_VALUE = "text/csv";
+
+	// sent with the 503 of rejected imports, the queued ones take minutes
+	private static final String RETRY_AFTER_SECONDS = "60";
+
+	@Autowired
+	private RosterImporter rosterImporter;
+
+	/**
+	 * Takes the roster in, then imports it in the background: the response (202) points to the status of the import.
+	 * The body is copied to a temporary file as it arrives, on the servlet thread, so it is never held in memory.
+	 */
+	@RequestMapping(method=RequestMethod.POST, consumes=CSV_VALUE)
+	public ResponseEntity<RosterImport> importRoster(HttpServletRequest request)
+	throws IOException {
+		log.debug("Importing a roster of {} bytes", request.getContentLengthLong());
+
+		RosterImport rosterImport = rosterImporter.submit(request.getInputStream(), "upload");
+
+		log.debug("Queued roster import {}", rosterImport.getId());
+
+		return ResponseEntity.accepted().location(URI.create(PATH + "/" + rosterImport.getId())).body(rosterImport);
+	}
+
+	/**
+	 * Progress of an import, while it runs and once it is over.
+	 */
+	@RequestMapping(value="/{id}", method=RequestMethod.GET)
+	public RosterImport getImport(@PathVariable Long id)
+	throws NotFoundException {
+		RosterImport rosterImport = rosterImporter.getImport(id);
+		if (rosterImport == null) {
+			String msg = "No roster imports found with ID " + id;
+			log.debug(msg);
+			throw new NotFoundException(msg);
+		}
+		return rosterImport;
+	}
+
+	/**
+	 * The last imports, the latest first.
+	 */
+	@RequestMapping(method=RequestMethod.GET)
+	public List<RosterImport> getImports() {
+		return rosterImporter.getImports();
+	}
+
+
+	@ExceptionHandler(NotFoundException.class)
+	void handleNotFoundException(HttpServletResponse response) throws IOException {
+	    response.sendError(HttpStatus.NOT_FOUND.value());
+	}
+
+	// too many imports queued already
+	@ExceptionHandler(RejectedExecutionException.class)
+	void handleRejectedExecutionException(HttpServletResponse response) throws IOException {
+	    response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+	    response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+	}
+
+}
@@ -1,24 +1,70 @@
 package com.springboot.brushup.students.rest;
 
 import java.io.IOException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.brushup.students.async.AsyncConfiguration;
+import com.springboot.brushup.students.batch.BatchInserter;
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.batch.BatchResult.RowResult;
+import com.springboot.brushup.students.cache.EntityCache;
+import com.springboot.brushup.students.changes.ChangeFeed;
+import com.springboot.brushup.students.domain.Course;
 import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.ChangeEvent;
+import com.springboot.brushup.students.dto.Enrollment;
+import com.springboot.brushup.students.dto.NameMatch;
+import com.springboot.brushup.students.dto.StudentDetail;
+import com.springboot.brushup.students.dto.StudentDetailRows;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+import com.springboot.brushup.students.repository.PartialUpdateRepository;
 import com.springboot.brushup.students.repository.StudentRepository;
+import com.springboot.brushup.students.repository.TableVersionRepository;
 import com.springboot.brushup.students.rest.exceptions.NotFoundException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionFailedException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionRequiredException;
+import com.springboot.brushup.students.search.SearchIndex;
+import com.springboot.brushup.students.stats.EnrollmentCounts;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -26,108 +72,567 @@ import lombok.extern.slf4j.Slf4j;
 @RestController
 @RequestMapping("/api/v1/students")
 public class StudentService {
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+	
+	// students written between two flushes of the export response
+	private static final int EXPORT_FLUSH_EVERY = 500;
+	
 	@Autowired
 	private StudentRepository students;
 	
+	@Autowired
+	private CourseRepository courses;
+	
+	@Autowired
+	private BatchInserter batchInserter;
+	
+	@Autowired
+	private EntityCache entityCache;
+	
+	@Autowired
+	private SearchIndex searchIndex;
+	
+	@Autowired
+	private EnrollmentRepository enrollments;
+	
+	@Autowired
+	private TableVersionRepository tableVersions;
+	
+	@Autowired
+	private PartialUpdateRepository partialUpdates;
+	
+	@Autowired
+	private EnrollmentCounts enrollmentCounts;
+	
+	@Autowired
+	private ChangeFeed changeFeed;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
 	// no @ResponseBody needed as @RestController does that
 	@RequestMapping(value="/{id}", method=RequestMethod.GET)
-	public Student getStudent(@PathVariable Integer id) 
-	throws NotFoundException {
-		log.debug("Finding student with id " + id);
-		
-		Student student = null;
-		
-		student = students.findOne(id);
-		
-		if (student == null) {
-			String msg = "No students found with ID " + id; 
-			log.debug(msg);
-			throw new NotFoundException(msg);
-		} 		
-		
-		log.debug("Finished finding student with id " + id);
-		
-		return student;
+	public Callable<Student> getStudent(@PathVariable Integer id, WebRequest request) {
+		// runs on the repository executor when enabled (see AsyncConfiguration), the servlet thread is released meanwhile,
+		// in a read-only transaction (served by a read replica, when there is one)
+		return Transactions.readOnly(transactionManager, () -> {
+			log.debug("Finding student with id {}", id);
+			
+			Student student = null;
+			
+			student = entityCache.findStudent(id);
+			
+			if (student == null) {
+				log.debug("No students found with ID {}", id);
+				throw new NotFoundException("No students found with ID " + id);
+			} 		
+			
+			// sets the ETag header, and the 304 status if the client already has this version
+			if (request.checkNotModified(ETags.of(student))) {
+				log.debug("Student with id {} not modified", id);
+				return null;
+			}
+			
+			log.debug("Finished finding student with id {}", id);
+			
+			return student;
+		});
+	}
+
+	/**
+	 * Student with compact course summaries, read with a single statement.
+	 */
+	@RequestMapping(value="/{id}/detail", method=RequestMethod.GET)
+	public Callable<StudentDetail> getStudentDetail(@PathVariable Integer id) {
+		return Transactions.readOnly(transactionManager, () -> {
+			log.debug("Finding student detail with id {}", id);
+			
+			StudentDetailRows details = new StudentDetailRows(students.findDetailRowsById(id).iterator());
+			
+			if (!details.hasNext()) {
+				log.debug("No students found with ID {}", id);
+				throw new NotFoundException("No students found with ID " + id);
+			}
+			
+			log.debug("Finished finding student detail with id {}", id);
+			
+			return details.next();
+		});
 	}
 
 	@RequestMapping(method=RequestMethod.GET)
-	public List<Student> getAllStudents() {
-		log.debug("Finding all students");
+	public Callable<ResponseEntity<List<Student>>> getAllStudents(
+			@RequestParam(value=Pagination.AFTER_PARAM, required=false) Integer after, 
+			@RequestParam(value=Pagination.LIMIT_PARAM, required=false) Integer limit, 
+			WebRequest request) { 
+		return Transactions.readOnly(transactionManager, () -> {
+			log.debug("Finding students after id {}, limit {}", after, limit);
+			
+			Pageable page = Pagination.page(limit);
+			
+			// answered from the table versions alone, before the page is read (students are listed with course names)
+			if (request.checkNotModified(ETags.ofPage("students", after, limit, 
+					tableVersions.findVersions(TableVersionRepository.STUDENT, TableVersionRepository.COURSE)))) {
+				log.debug("Students not modified");
+				return null;
+			}
+			List<Student> foundStudents = students.findByIdGreaterThanOrderByIdAsc(Pagination.after(after), page);
+			
+			ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+			// a full page means there may be more rows, so hand out the cursor for the next one
+			if (foundStudents.size() == page.getPageSize()) {
+				response.header(Pagination.NEXT_CURSOR_HEADER, String.valueOf(foundStudents.get(foundStudents.size() - 1).getId()));
+			}
+			
+			log.debug("Finished finding {} students", foundStudents.size());
+			
+			return response.body(foundStudents);
+		});
+	}
+	
+	/**
+	 * Writes every student with its courses as newline delimited JSON, one student per line.
+	 * Rows are streamed from a single ordered join and written as soon as a student is complete, 
+	 * so memory use does not depend on the number of students.
+	 */
+	@RequestMapping(value="/export", method=RequestMethod.GET, produces=NDJSON_VALUE)
+	@Transactional(readOnly=true)
+	public void exportStudents(HttpServletResponse response) 
+	throws IOException {
+		log.debug("Exporting all students");
+		
+		response.setContentType(NDJSON_VALUE);
 		
-		List<Student> allStudents = students.findAll();
+		int exported = 0;
+		try (Stream<Object[]> rows = students.streamAllWithCourses()) {
+			JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+			// the response stream is closed by the container
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setRootValueSeparator(new SerializedString("\n"));
+			
+			for (StudentDetailRows details = new StudentDetailRows(rows.iterator()); details.hasNext(); ) {
+				generator.writeObject(details.next());
+				
+				if (++exported % EXPORT_FLUSH_EVERY == 0) {
+					generator.flush();
+				}
+			}
+			if (exported > 0) {
+				generator.writeRaw('\n');
+			}
+			
+			generator.close();
+		}
 		
-		log.debug("Finished finding all students");
+		log.debug("Finished exporting {} students", exported);
+	}
+	
+	/**
+	 * Type-ahead search of the students whose name (or a word of it) starts like the query, tolerating a few typos.
+	 * Answered from memory (see SearchIndex), so on the servlet thread.
+	 */
+	@RequestMapping(value="/search", method=RequestMethod.GET)
+	public List<NameMatch> searchStudents(
+			@RequestParam("q") String query, 
+			@RequestParam(value=Pagination.LIMIT_PARAM, required=false) Integer limit) {
+		log.debug("Searching students named like {}, limit {}", query, limit);
 		
-		return allStudents;
+		return searchIndex.searchStudents(query, limit);
 	}
 	
 	@RequestMapping(method=RequestMethod.POST)
 	@ResponseStatus(HttpStatus.CREATED)
-	public Student createStudent(@RequestBody Student student) {
-		log.debug("Creating student " + student);
-		
+	public Callable<Student> createStudent(@RequestBody Student student) {
+		// the enrollment counts move along with the insert, see EnrollmentCounts
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Creating student {}", student);
+			
+			if (student.getId() != null) {
+				String msg = "The ID should not be provided when creating a new student"; 
+				log.debug(msg);
+				throw new IllegalArgumentException(msg);
+			}
+
+			// will not save the associated courses as the course is the owner of the relationship  
+			Student result = students.save(student);
+			entityCache.evictCourses(result.getCourses());
+			enrollmentCounts.studentCoursesChanged(null, result.getCourses());
+			changeFeed.studentCoursesChanged(result.getId(), null, result.getCourses());
+			
+			log.debug("Finished creating {}", result);
+			
+			return result;
+		});
+	}
+	
+	/**
+	 * Creates many students at once, inserting them in JDBC batches. 
+	 * Invalid rows are reported in the result and do not prevent the others from being created.
+	 */
+	@RequestMapping(value="/batch", method=RequestMethod.POST)
+	public Callable<ResponseEntity<BatchResult>> createStudents(@RequestBody List<Student> newStudents) {
+		return () -> {
+			log.debug("Creating {} students", newStudents.size());
+			
+			// no transaction of the handler's own: every chunk commits, and is reported, in its own (see BatchInserter)
+			BatchResult result = batchInserter.insert(newStudents, Student::getId, Student::setId, this::validateNewStudent, inserted -> {
+				for (Student newStudent: inserted) {
+					entityCache.evictCourses(newStudent.getCourses());
+					enrollmentCounts.studentCoursesChanged(null, newStudent.getCourses());
+					changeFeed.studentCoursesChanged(newStudent.getId(), null, newStudent.getCourses());
+				}
+			});
+			
+			log.debug("Finished creating students: {} created, {} failed", result.getSucceeded(), result.getFailed());
+			
+			// 207 tells the client to look at the rows to find out which ones failed
+			return ResponseEntity.status(result.getFailed() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(result);
+		};
+	}
+	
+	private String validateNewStudent(Student student) {
+		if (student == null) {
+			return "No student provided";
+		}
 		if (student.getId() != null) {
-			String msg = "The ID should not be provided when creating a new student"; 
-			log.debug(msg);
-			throw new IllegalArgumentException(msg);
+			return "The ID should not be provided when creating a new student";
 		}
-
-		// will not save the associated courses as the course is the owner of the relationship  
-		Student result = students.save(student);
-		
-		log.debug("Finished creating " + result);
-		
-		return result;
+		if (student.getName() == null) {
+			return "The student name should be provided";
+		}
+		if (student.getCourses() != null && student.getCourses().stream().anyMatch(course -> course == null || course.getId() == null)) {
+			return "Only existing courses (with an ID) can be assigned to a new student";
+		}
+		return null;
 	}
 	
+	/**
+	 * Replaces the name, start date and courses of the student. As for courses, the If-Match header (the ETag of a GET)
+	 * is required, 428 without it, and the student must still have one of the versions named, 412 otherwise
+	 * (If-Match: * takes any version). The student is read first, as its previous courses are needed for the caches
+	 * and the enrollment counts, then written by an UPDATE conditioned on the version read (the optimistic lock 
+	 * of Hibernate): a concurrent write in between fails the update with a 412 too, and no row is locked meanwhile.
+	 * Answers with the ETag of the new version.
+	 */
 	@RequestMapping(method=RequestMethod.PUT)
-	public Student updateStudent(@RequestBody Student student) 
-	throws NotFoundException, IllegalArgumentException {
-		log.debug("Updating student " + student);
-		
-		if (student.getId() == null) {
-			String msg = "No ID provided for student to update"; 
-			log.debug(msg);
-			throw new IllegalArgumentException();
+	public Callable<ResponseEntity<Student>> updateStudent(@RequestBody Student student, 
+			@RequestHeader(value=HttpHeaders.IF_MATCH, required=false) String ifMatch) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Updating student {} if matching {}", student, ifMatch);
+			
+			if (student.getId() == null) {
+				String msg = "No ID provided for student to update"; 
+				log.debug(msg);
+				throw new IllegalArgumentException();
+			}
+			if (ifMatch == null) {
+				log.debug("No version given to update student with ID {}", student.getId());
+				throw new PreconditionRequiredException("The ETag of the student to update should be given in If-Match");
+			}
+			
+			Student currentStudent = students.findOne(student.getId());
+			
+			// a missing student matches no version either
+			List<Long> versions = ETags.studentVersions(student.getId(), ifMatch);
+			if (versions != null && (currentStudent == null || !versions.contains(currentStudent.getVersion()))) {
+				String msg = "Student with ID " + student.getId() + " does not match " + ifMatch; 
+				log.debug(msg);
+				throw new PreconditionFailedException(msg);
+			}
+			if (currentStudent == null) {
+				log.debug("No students found with ID {}", student.getId());
+				throw new NotFoundException("No students found with ID " + student.getId());
+			}
+
+			// the courses replaced below, to evict both sides of the old enrollments
+			List<Course> previousCourses = coursesOf(currentStudent);
+			List<Course> newCourses = existingCourses(student.getCourses());
+			
+			currentStudent.setName(student.getName());
+			currentStudent.setStartDt(student.getStartDt());
+			// the set is changed in place, so that only the enrollments added or removed are written
+			if (currentStudent.getCourses() == null) {
+				currentStudent.setCourses(new HashSet<>());
+			}
+			currentStudent.getCourses().clear();
+			currentStudent.getCourses().addAll(newCourses);
+			try {
+				// now rather than on commit, for a conflict to be told apart, and the new version known
+				students.flush();
+			} catch (ObjectOptimisticLockingFailureException e) {
+				String msg = "Student with ID " + student.getId() + " was changed concurrently"; 
+				log.debug(msg);
+				throw new PreconditionFailedException(msg, e);
+			} catch (DataIntegrityViolationException e) {
+				String msg = "Could not update student with ID " + student.getId() + ": " + e.getMessage(); 
+				log.debug(msg, e);
+				throw new IllegalArgumentException(msg, e);
+			}
+			entityCache.evictStudent(student.getId(), previousCourses, newCourses);
+			enrollmentCounts.studentCoursesChanged(previousCourses, newCourses);
+			changeFeed.studentCoursesChanged(student.getId(), previousCourses, newCourses);
+			
+			log.debug("Finished updating {}", currentStudent);
+			
+			return ResponseEntity.ok().eTag(ETags.of(currentStudent)).body(currentStudent);
+		});
+	}
+
+	/**
+	 * The courses of an update, read by their ID (they are serialized with the student).
+	 */
+	private List<Course> existingCourses(Set<Course> courseSet) {
+		if (courseSet == null || courseSet.isEmpty()) {
+			return Collections.emptyList();
 		}
-		
-		Student currentStudent = students.findOne(student.getId());
-		
-		if (currentStudent == null) {
-			String msg = "No students found with ID " + student.getId(); 
-			log.debug(msg);
-			throw new NotFoundException(msg);
+		if (courseSet.stream().anyMatch(course -> course == null || course.getId() == null)) {
+			throw new IllegalArgumentException("Only existing courses (with an ID) can be assigned to a student");
 		}
+		Set<Integer> ids = courseSet.stream().map(Course::getId).collect(Collectors.toSet());
+		List<Course> found = courses.findAll(ids);
+		if (found.size() != ids.size()) {
+			throw new IllegalArgumentException("Some of the courses " + ids + " do not exist");
+		}
+		return found;
+	}
 
-		// will not save the associated courses as the course is the owner of the relationship  
-		Student result = students.save(student);
-		
-		log.debug("Finished updating " + student);
-		
-		return result;
+	/**
+	 * Applies a JSON merge patch of the student name and start date (see MergePatch) with a single UPDATE statement, 
+	 * the student is not read first. Answers without a body, as the updated student is not read afterwards either.
+	 * Courses are changed through the enrollment endpoints.
+	 */
+	@RequestMapping(value="/{id}", method=RequestMethod.PATCH, consumes={MergePatch.MEDIA_TYPE_VALUE, MediaType.APPLICATION_JSON_VALUE})
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public Callable<Void> patchStudent(@PathVariable Integer id, @RequestBody JsonNode patch) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Patching student {} with {}", id, patch);
+			
+			Map<String, JsonNode> fields = MergePatch.fields(patch, id, "name", "startDt");
+			Map<String, Object> columns = new HashMap<>();
+			String name = null;
+			if (fields.containsKey("name")) {
+				name = MergePatch.text("name", fields.get("name"));
+				columns.put(PartialUpdateRepository.NAME, name);
+			}
+			if (fields.containsKey("startDt")) {
+				columns.put(PartialUpdateRepository.START_DT, MergePatch.value("startDt", fields.get("startDt"), Timestamp.class, objectMapper));
+			}
+			
+			int updated = 0;
+			try {
+				updated = partialUpdates.updateStudent(id, columns, System.currentTimeMillis());
+			} catch (DataIntegrityViolationException e) {
+				String msg = "Could not patch student with ID " + id + ": " + e.getMessage(); 
+				log.debug(msg, e);
+				throw new IllegalArgumentException(msg, e);
+			}
+			
+			if (updated == 0) {
+				log.debug("No students found with ID {}", id);
+				throw new NotFoundException("No students found with ID " + id);
+			}
+			// the enrollments are unchanged, so are the courses
+			entityCache.evictStudent(id, null, null);
+			if (name != null) {
+				searchIndex.putStudent(id, name);
+			}
+			changeFeed.changed(ChangeEvent.Entity.STUDENT, ChangeEvent.Type.UPDATED, id);
+			
+			log.debug("Finished patching student with id {}", id);
+			return null;
+		});
 	}
 
 	@RequestMapping(value="/{id}", method=RequestMethod.DELETE)
 	@ResponseStatus(HttpStatus.NO_CONTENT)
-	public void removeStudent(@PathVariable("id") Integer id) 
-	throws NotFoundException {
-		Student current = students.findOne(id);
+	public Callable<Void> removeStudent(@PathVariable("id") Integer id) {
+		return Transactions.readWrite(transactionManager, () -> {
+			Student current = students.findOne(id);
+			
+			if (current == null) {
+				log.debug("No students found with ID {}", id);
+				throw new NotFoundException("No students found with ID " + id);
+			}
+			
+			List<Course> currentCourses = coursesOf(current);
+			
+			try {
+				// since students are the owners in the student x course relationships, 
+				// deleting the student will also cause the relationships to be deleted
+				students.delete(current);
+				entityCache.evictStudent(id, currentCourses, null);
+				enrollmentCounts.studentCoursesChanged(currentCourses, null);
+				changeFeed.studentCoursesChanged(id, currentCourses, null);
+			} catch (DataIntegrityViolationException e) {
+				String msg = "Could not delete student with ID " + id + ": " + e.getMessage(); 
+				log.debug(msg, e);
+				throw new IllegalArgumentException(msg, e);
+			}
+			return null;
+		});
+	}
+	
+	
+	/**
+	 * Enrolls the student in the course with a single row insert, neither side's enrollments are loaded.
+	 * Enrolling an enrolled student changes nothing.
+	 */
+	@RequestMapping(value="/{id}/courses/{courseId}", method=RequestMethod.PUT)
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public Callable<Void> enroll(@PathVariable Integer id, @PathVariable Integer courseId) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Enrolling student {} in course {}", id, courseId);
+			
+			changeEnrollment(new Enrollment(id, courseId), true);
+			return null;
+		});
+	}
+
+	/**
+	 * Unenrolls the student from the course with a single row delete, neither side's enrollments are loaded.
+	 * Unenrolling a student that is not enrolled changes nothing.
+	 */
+	@RequestMapping(value="/{id}/courses/{courseId}", method=RequestMethod.DELETE)
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public Callable<Void> unenroll(@PathVariable Integer id, @PathVariable Integer courseId) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Unenrolling student {} from course {}", id, courseId);
+			
+			changeEnrollment(new Enrollment(id, courseId), false);
+			return null;
+		});
+	}
+	
+	private void changeEnrollment(Enrollment enrollment, boolean enroll) throws NotFoundException {
+		String error = changeEnrollments(Collections.singletonList(enrollment), enroll).getRows().get(0).getError();
+		if (error != null) {
+			log.debug(error);
+			throw new NotFoundException(error);
+		}
+	}
+
+	/**
+	 * Enrolls many students at once, with one JDBC batch of single row inserts.
+	 * Rows naming a missing student or course are reported in the result, the others are enrolled.
+	 */
+	@RequestMapping(value="/enrollments", method=RequestMethod.PUT)
+	public Callable<ResponseEntity<BatchResult>> enrollAll(@RequestBody List<Enrollment> enrollments) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Enrolling {} students", enrollments.size());
+			
+			BatchResult result = changeEnrollments(enrollments, true);
+			
+			log.debug("Finished enrolling students: {} enrolled, {} failed", result.getSucceeded(), result.getFailed());
+			
+			return ResponseEntity.status(result.getFailed() == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(result);
+		});
+	}
+
+	/**
+	 * Unenrolls many students at once, with one JDBC batch of single row deletes.
+	 * Rows naming a missing student or course are reported in the result, the others are unenrolled.
+	 */
+	@RequestMapping(value="/enrollments", method=RequestMethod.DELETE)
+	public Callable<ResponseEntity<BatchResult>> unenrollAll(@RequestBody List<Enrollment> enrollments) {
+		return Transactions.readWrite(transactionManager, () -> {
+			log.debug("Unenrolling {} students", enrollments.size());
+			
+			BatchResult result = changeEnrollments(enrollments, false);
+			
+			log.debug("Finished unenrolling students: {} unenrolled, {} failed", result.getSucceeded(), result.getFailed());
+			
+			return ResponseEntity.status(result.getFailed() == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(result);
+		});
+	}
+	
+	// runs in the handler's transaction, one for the whole batch
+	private BatchResult changeEnrollments(List<Enrollment> rows, boolean enroll) {
+		if (rows.size() > BatchInserter.MAX_ROWS) {
+			throw new IllegalArgumentException("At most " + BatchInserter.MAX_ROWS + " rows can be sent in a batch, got " + rows.size());
+		}
+		
+		RowResult[] results = new RowResult[rows.size()];
+		List<Integer> validIndexes = new ArrayList<>();
+		for (int i = 0; i < rows.size(); i++) {
+			Enrollment row = rows.get(i);
+			if (row == null || row.getStudentId() == null || row.getCourseId() == null) {
+				results[i] = new RowResult(i, null, "Both a student ID and a course ID should be provided");
+			} else {
+				validIndexes.add(i);
+			}
+		}
+		List<Enrollment> valid = validIndexes.stream().map(rows::get).collect(Collectors.toList());
 		
-		if (current == null) {
-			String msg = "No students found with ID " + id; 
-			log.debug(msg);
-			throw new NotFoundException(msg);
+		long now = System.currentTimeMillis();
+		if (enroll) {
+			// locks the students first, so that concurrent enrollments of one student can't both find it not enrolled yet 
+			enrollments.touchStudents(valid.stream().map(Enrollment::getStudentId).collect(Collectors.toSet()), now);
+		}
+		
+		int[] changed = (enroll ? enrollments.enroll(valid) : enrollments.unenroll(valid));
+		
+		Set<Integer> changedStudents = new HashSet<>();
+		List<Enrollment> counted = new ArrayList<>();
+		List<Enrollment> reported = new ArrayList<>();
+		Set<Integer> uncountedCourses = new HashSet<>();
+		List<Enrollment> unchanged = new ArrayList<>();
+		for (int i = 0; i < valid.size(); i++) {
+			// drivers may not count the rows of a batch, these ones are taken as changed
+			if (changed[i] > 0 || changed[i] == Statement.SUCCESS_NO_INFO) {
+				changedStudents.add(valid.get(i).getStudentId());
+				reported.add(valid.get(i));
+			} else {
+				unchanged.add(valid.get(i));
+			}
+			if (changed[i] == Statement.SUCCESS_NO_INFO) {
+				uncountedCourses.add(valid.get(i).getCourseId());
+			}
+		}
+		for (int i = 0; i < valid.size(); i++) {
+			// the courses counted again don't take the changes on top
+			if (changed[i] > 0 && !uncountedCourses.contains(valid.get(i).getCourseId())) {
+				counted.add(valid.get(i));
+			}
+		}
+		enrollmentCounts.enrollmentsChanged(counted, enroll);
+		changeFeed.enrollmentsChanged(reported, enroll);
+		if (!uncountedCourses.isEmpty()) {
+			// the courses whose enrollments may have changed are counted again, once committed
+			enrollmentCounts.recount(uncountedCourses);
+		}
+		if (!enroll) {
+			enrollments.touchStudents(changedStudents, now);
 		}
 		
-		try {
-			// since students are the owners in the student x course relationships, 
-			// deleting the student will also cause the relationships to be deleted
-			students.delete(current);
-		} catch (DataIntegrityViolationException e) {
-			String msg = "Could not delete student with ID " + id + ": " + e.getMessage(); 
-			log.debug(msg, e);
-			throw new IllegalArgumentException(msg, e);
+		// nothing changed because of a missing student or course, or because there was nothing to change
+		Set<Integer> existingStudents = enrollments.findExistingStudentIds(
+				unchanged.stream().map(Enrollment::getStudentId).collect(Collectors.toSet()));
+		Set<Integer> existingCourses = enrollments.findExistingCourseIds(
+				unchanged.stream().map(Enrollment::getCourseId).collect(Collectors.toSet()));
+		for (int i = 0; i < valid.size(); i++) {
+			Enrollment row = valid.get(i);
+			String error = null;
+			if (changed[i] == 0 && !existingStudents.contains(row.getStudentId())) {
+				error = "No students found with ID " + row.getStudentId();
+			} else if (changed[i] == 0 && !existingCourses.contains(row.getCourseId())) {
+				error = "No courses found with ID " + row.getCourseId();
+			}
+			results[validIndexes.get(i)] = new RowResult(validIndexes.get(i), null, error);
 		}
+		
+		// the courses are cached without their students, only the student side changes
+		enrollments.evictStudents(changedStudents);
+		changedStudents.forEach(studentId -> entityCache.evictStudent(studentId, null, null));
+		
+		return BatchResult.of(results);
+	}
+	
+	// a list, as hashing courses would hash (and load) their students too
+	private List<Course> coursesOf(Student student) {
+		return (student.getCourses() != null ? new ArrayList<>(student.getCourses()) : null);
 	}
 	
 	
@@ -136,9 +641,32 @@ public class StudentService {
 	    response.sendError(HttpStatus.NOT_FOUND.value());
 	}
 	
+	@ExceptionHandler(PreconditionFailedException.class)
+	void handlePreconditionFailedException(HttpServletResponse response) throws IOException {
+	    response.sendError(HttpStatus.PRECONDITION_FAILED.value());
+	}
+	
+	@ExceptionHandler(PreconditionRequiredException.class)
+	void handlePreconditionRequiredException(HttpServletResponse response) throws IOException {
+	    response.sendError(HttpStatus.PRECONDITION_REQUIRED.value());
+	}
+	
+	// a concurrent write changed the student since it was read
+	@ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+	void handleOptimisticLockingFailureException(HttpServletResponse response) throws IOException {
+	    response.sendError(HttpStatus.CONFLICT.value());
+	}
+	
 	@ExceptionHandler(IllegalArgumentException.class)
 	void handleIllegalArgumentException(HttpServletResponse response) throws IOException {
 	    response.sendError(HttpStatus.BAD_REQUEST.value());
 	}
 	
+	// the repository executor queue is full
+	@ExceptionHandler(RejectedExecutionException.class)
+	void handleRejectedExecutionException(HttpServletResponse response) throws IOException {
+	    response.setHeader(HttpHeaders.RETRY_AFTER, AsyncConfiguration.RETRY_AFTER_SECONDS);
+	    response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+	}
+	
 }
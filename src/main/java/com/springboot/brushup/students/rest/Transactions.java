@@ -0,0 +1,57 @@
+package com.springboot.brushup.students.rest;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs the body of a Callable handler in one transaction, as the handler's own @Transactional would not cover it
+ * (the callable runs on the repository executor, once the handler has returned).
+ *
+ * Read-only transactions are served by a read replica, when there are some (see ReplicaRoutingDataSource),
+ * and all the statements of the request then see the same replica.
+ * Read-write ones stay on the primary, including the reads made before writing.
+ */
+public final class Transactions {
+
+	private Transactions() {
+	}
+
+	public static <T> Callable<T> readOnly(PlatformTransactionManager transactionManager, Callable<T> body) {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+		return inTransaction(transaction, body);
+	}
+
+	public static <T> Callable<T> readWrite(PlatformTransactionManager transactionManager, Callable<T> body) {
+		return inTransaction(new TransactionTemplate(transactionManager), body);
+	}
+
+	private static <T> Callable<T> inTransaction(TransactionTemplate transaction, Callable<T> body) {
+		return () -> {
+			try {
+				return transaction.execute(status -> {
+					try {
+						return body.call();
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Exception e) {
+						// rolls back, then rethrown as is below
+						throw new CheckedException(e);
+					}
+				});
+			} catch (CheckedException e) {
+				throw (Exception) e.getCause();
+			}
+		};
+	}
+
+	private static class CheckedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		CheckedException(Exception cause) {
+			super(cause);
+		}
+	}
+}
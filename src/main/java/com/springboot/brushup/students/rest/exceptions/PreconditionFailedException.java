@@ -0,0 +1,20 @@
+package com.springboot.brushup.students.rest.exceptions;
+
+/**
+ * The version the client expects (If-Match) is not the current one, or the resource is gone.
+ */
+public class PreconditionFailedException extends Exception {
+	private static final long serialVersionUID = -4405286128457361719L;
+	
+	public PreconditionFailedException() {
+	}
+
+	public PreconditionFailedException(String message) {
+		super(message);
+	}
+
+	public PreconditionFailedException(String message, Throwable t) {
+		super(message, t);
+	}
+	
+}
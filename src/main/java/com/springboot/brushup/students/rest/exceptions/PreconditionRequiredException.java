@@ -0,0 +1,20 @@
+package com.springboot.brushup.students.rest.exceptions;
+
+/**
+ * The request would overwrite the resource without naming the version it replaces (no If-Match).
+ */
+public class PreconditionRequiredException extends Exception {
+	private static final long serialVersionUID = 6391754018824370212L;
+	
+	public PreconditionRequiredException() {
+	}
+
+	public PreconditionRequiredException(String message) {
+		super(message);
+	}
+
+	public PreconditionRequiredException(String message, Throwable t) {
+		super(message, t);
+	}
+	
+}
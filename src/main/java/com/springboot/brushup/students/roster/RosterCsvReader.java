@@ -0,0 +1,122 @@
+package com.springboot.brushup.students.roster;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records one at a time (RFC 4180: comma separated, fields optionally quoted, "" for a quote,
+ * line breaks allowed within quotes), so that only the current record is held in memory.
+ * A byte order mark at the start, as spreadsheet exports write, is skipped.
+ */
+class RosterCsvReader implements Closeable {
+
+	private static final char SEPARATOR = ',';
+	private static final char QUOTE = '"';
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	private final BufferedReader reader;
+
+	private long line = 1;
+
+	// line the last record started on
+	private long recordLine;
+
+	// read ahead after a carriage return, -2 when none
+	private int pending = -2;
+
+	private boolean started;
+
+	RosterCsvReader(Reader reader) {
+		this.reader = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+	}
+
+	/**
+	 * @return the fields of the next record, or null at the end of the input
+	 * @throws IllegalArgumentException if a quoted field is not closed before the end of the input
+	 */
+	List<String> readRecord() throws IOException {
+		int c = read();
+		if (!started) {
+			started = true;
+			if (c == BYTE_ORDER_MARK) {
+				c = read();
+			}
+		}
+		if (c == -1) {
+			return null;
+		}
+
+		recordLine = line;
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			if (quoted) {
+				if (c == -1) {
+					throw new IllegalArgumentException("Quoted field not closed, from line " + recordLine);
+				}
+				if (c == QUOTE) {
+					c = read();
+					if (c != QUOTE) {
+						// closing quote, the character after it is handled unquoted
+						quoted = false;
+						continue;
+					}
+				}
+				if (c == '\n') {
+					line++;
+				}
+				field.append((char) c);
+			} else if (c == QUOTE && field.length() == 0) {
+				quoted = true;
+			} else if (c == SEPARATOR) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n' || c == -1) {
+				fields.add(field.toString());
+				if (c == '\n') {
+					line++;
+				}
+				return fields;
+			} else {
+				field.append((char) c);
+			}
+			c = read();
+		}
+	}
+
+	/**
+	 * @return the line number of the last record read (of its first line), from 1
+	 */
+	long getRecordLine() {
+		return recordLine;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	// line breaks (\r\n, \n or \r) read as \n
+	private int read() throws IOException {
+		int c;
+		if (pending != -2) {
+			c = pending;
+			pending = -2;
+		} else {
+			c = reader.read();
+		}
+		if (c == '\r') {
+			int next = reader.read();
+			if (next != '\n') {
+				pending = next;
+			}
+			return '\n';
+		}
+		return c;
+	}
+}
@@ -0,0 +1,106 @@
+package com.springboot.brushup.students.roster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Getter;
+
+/**
+ * Progress of a roster import, updated by the importing thread as it goes and read by the status requests meanwhile.
+ * Rows are committed chunk by chunk: the rows counted as created stay created if the import fails later on.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RosterImport {
+
+	public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+	// the errors of the first failed rows are kept, the others are only counted
+	public static final int MAX_ERRORS = 100;
+
+	private final long id;
+
+	// file name, or "upload"
+	private final String source;
+
+	private volatile State state = State.QUEUED;
+
+	private volatile long rowsRead;
+
+	private volatile long studentsCreated;
+
+	private volatile long enrollmentsCreated;
+
+	private volatile long rowsFailed;
+
+	// "line N: why", of the first MAX_ERRORS failed rows
+	private final List<String> errors = new CopyOnWriteArrayList<>();
+
+	// why the import stopped, if it failed
+	private volatile String failure;
+
+	// epoch millis
+	private final long queuedAt = System.currentTimeMillis();
+
+	private volatile Long startedAt;
+
+	private volatile Long finishedAt;
+
+	RosterImport(long id, String source) {
+		this.id = id;
+		this.source = source;
+	}
+
+	/**
+	 * @return the rows read per second so far, or over the whole import once finished
+	 */
+	public long getRowsPerSecond() {
+		if (startedAt == null) {
+			return 0;
+		}
+		long millis = (finishedAt != null ? finishedAt : System.currentTimeMillis()) - startedAt;
+		return (millis > 0 ? rowsRead * 1000 / millis : rowsRead);
+	}
+
+	// the methods below are only called by the importing thread
+
+	void started() {
+		startedAt = System.currentTimeMillis();
+		state = State.RUNNING;
+	}
+
+	void rowRead() {
+		rowsRead++;
+	}
+
+	void studentCreated(int enrollments) {
+		studentsCreated++;
+		enrollmentsCreated += enrollments;
+	}
+
+	void rowFailed(long line, String error) {
+		rowsFailed++;
+		if (errors.size() < MAX_ERRORS) {
+			errors.add("line " + line + ": " + error);
+		}
+	}
+
+	void completed() {
+		finishedAt = System.currentTimeMillis();
+		state = State.COMPLETED;
+	}
+
+	void failed(String failure) {
+		this.failure = failure;
+		finishedAt = System.currentTimeMillis();
+		state = State.FAILED;
+	}
+
+	@Override
+	public String toString() {
+		return "Roster import " + id + " of " + source + ": " + state + ", " + rowsRead + " rows read, "
+				+ studentsCreated + " students and " + enrollmentsCreated + " enrollments created, " + rowsFailed + " rows failed";
+	}
+}
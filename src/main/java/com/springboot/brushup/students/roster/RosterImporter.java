@@ -0,0 +1,378 @@
+package com.springboot.brushup.students.roster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.springboot.brushup.students.batch.BatchInserter;
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.cache.EntityCache;
+import com.springboot.brushup.students.changes.ChangeFeed;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.stats.EnrollmentCounts;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Imports the students of registrar roster files: CSV with a header line naming the columns, in any order
+ * (case ignored), one student per line:
+ * <ul>
+ * <li>name: required</li>
+ * <li>start_date: optional, 2017-09-01 or 2017-09-01T08:00:00</li>
+ * <li>courses: optional, names of existing courses separated by ;</li>
+ * </ul>
+ * The file is streamed: rows are read chunk-size at a time, and the next chunk is only read once the previous one
+ * is written, so memory use does not depend on the size of the file, and reading never gets ahead of the database.
+ * Chunks are inserted by the {@link BatchInserter} (students and their COURSE_STUDENT rows in JDBC batches,
+ * a transaction per batch), course names are resolved through a cache local to the import.
+ *
+ * Rows that can't be imported (no name, unknown course, name already taken...) are counted and reported
+ * in the status of the import, the others are imported regardless.
+ *
+ * Uploads are imported in the background, one at a time, with a few more queued (roster-import.queue-capacity),
+ * from a temporary copy of the upload. The last imports are kept for their status to be looked up.
+ */
+@Slf4j
+@Component
+public class RosterImporter {
+
+	public static final String NAME_COLUMN = "name";
+	public static final String START_DATE_COLUMN = "start_date";
+	public static final String COURSES_COLUMN = "courses";
+
+	public static final String COURSE_SEPARATOR = ";";
+
+	// finished imports kept for their status
+	private static final int KEPT_IMPORTS = 20;
+
+	// course names resolved per import, the least recently used are looked up again beyond it
+	private static final int MAX_CACHED_COURSES = 10000;
+
+	private static final long PROGRESS_LOG_EVERY = 100000;
+
+	@Value("${roster-import.chunk-size:1000}")
+	private int chunkSize = 1000;
+
+	@Value("${roster-import.queue-capacity:2}")
+	private int queueCapacity = 2;
+
+	@Autowired
+	private BatchInserter batchInserter;
+
+	@Autowired
+	private CourseRepository courses;
+
+	@Autowired
+	private EntityCache entityCache;
+
+	@Autowired
+	private EnrollmentCounts enrollmentCounts;
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	private final Map<Long, RosterImport> imports = new LinkedHashMap<Long, RosterImport>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, RosterImport> eldest) {
+			return size() > KEPT_IMPORTS;
+		}
+	};
+
+	private ThreadPoolTaskExecutor executor;
+
+	@PostConstruct
+	void start() {
+		executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("roster-import-");
+		executor.initialize();
+	}
+
+	@PreDestroy
+	void stop() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Copies the roster to a temporary file, then imports it in the background.
+	 *
+	 * @return the import, queued
+	 * @throws RejectedExecutionException if too many imports are already queued
+	 */
+	public RosterImport submit(InputStream roster, String source) throws IOException {
+		// rather than after the whole upload
+		if (executor.getThreadPoolExecutor().getQueue().remainingCapacity() == 0) {
+			throw new RejectedExecutionException("Too many roster imports queued");
+		}
+
+		Path copy = Files.createTempFile("roster-", ".csv");
+		try {
+			Files.copy(roster, copy, StandardCopyOption.REPLACE_EXISTING);
+
+			RosterImport rosterImport = new RosterImport(nextId.getAndIncrement(), source);
+			executor.execute(() -> {
+				try {
+					importFile(rosterImport, copy);
+				} finally {
+					delete(copy);
+				}
+			});
+			register(rosterImport);
+			return rosterImport;
+		} catch (IOException | RuntimeException e) {
+			delete(copy);
+			throw e;
+		}
+	}
+
+	/**
+	 * Imports a roster file on the calling thread.
+	 */
+	public RosterImport importFile(Path file) {
+		RosterImport rosterImport = new RosterImport(nextId.getAndIncrement(), file.getFileName().toString());
+		register(rosterImport);
+		importFile(rosterImport, file);
+		return rosterImport;
+	}
+
+	public RosterImport getImport(long id) {
+		synchronized (imports) {
+			return imports.get(id);
+		}
+	}
+
+	/**
+	 * @return the last imports, the latest first
+	 */
+	public List<RosterImport> getImports() {
+		List<RosterImport> latestFirst;
+		synchronized (imports) {
+			latestFirst = new ArrayList<>(imports.values());
+		}
+		Collections.reverse(latestFirst);
+		return latestFirst;
+	}
+
+	private void register(RosterImport rosterImport) {
+		synchronized (imports) {
+			imports.put(rosterImport.getId(), rosterImport);
+		}
+	}
+
+	private void importFile(RosterImport rosterImport, Path file) {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			importRoster(rosterImport, reader);
+		} catch (IOException e) {
+			log.warn("{} failed", rosterImport, e);
+			rosterImport.failed(e.toString());
+		}
+	}
+
+	/**
+	 * Imports the roster, recording the progress as it goes.
+	 */
+	void importRoster(RosterImport rosterImport, Reader roster) {
+		log.info("Starting roster import {} of {}", rosterImport.getId(), rosterImport.getSource());
+		rosterImport.started();
+
+		try (RosterCsvReader csv = new RosterCsvReader(roster)) {
+			Columns columns = new Columns(csv.readRecord());
+			CourseNames courseNames = new CourseNames();
+
+			List<Student> chunk = new ArrayList<>(chunkSize);
+			List<Long> chunkLines = new ArrayList<>(chunkSize);
+			for (List<String> record = csv.readRecord(); record != null; record = csv.readRecord()) {
+				if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+					continue;
+				}
+				rosterImport.rowRead();
+
+				try {
+					chunk.add(columns.toStudent(record, courseNames));
+					chunkLines.add(csv.getRecordLine());
+				} catch (IllegalArgumentException e) {
+					rosterImport.rowFailed(csv.getRecordLine(), e.getMessage());
+				}
+
+				if (chunk.size() == chunkSize) {
+					insert(rosterImport, chunk, chunkLines);
+				}
+				if (rosterImport.getRowsRead() % PROGRESS_LOG_EVERY == 0) {
+					log.info("{}", rosterImport);
+				}
+			}
+			insert(rosterImport, chunk, chunkLines);
+
+			rosterImport.completed();
+			log.info("{}", rosterImport);
+		} catch (IllegalArgumentException | IOException e) {
+			// unreadable file
+			log.info("{} failed: {}", rosterImport, e.getMessage());
+			rosterImport.failed(e.getMessage());
+		} catch (RuntimeException e) {
+			log.warn("{} failed", rosterImport, e);
+			rosterImport.failed(NestedExceptionUtils.getMostSpecificCause(e).toString());
+		}
+	}
+
+	private void insert(RosterImport rosterImport, List<Student> chunk, List<Long> chunkLines) {
+		if (chunk.isEmpty()) {
+			return;
+		}
+
+		// reported in the transaction inserting them, see EnrollmentCounts
+		BatchResult result = batchInserter.insert(chunk, Student::getId, Student::setId, student -> null, inserted -> {
+			Set<Course> enrolledCourses = new LinkedHashSet<>();
+			for (Student student: inserted) {
+				// never null, see Columns.toStudent
+				Collection<Course> studentCourses = student.getCourses();
+				if (!studentCourses.isEmpty()) {
+					enrollmentCounts.studentCoursesChanged(null, studentCourses);
+					changeFeed.studentCoursesChanged(student.getId(), null, studentCourses);
+					enrolledCourses.addAll(studentCourses);
+				}
+			}
+			entityCache.evictCourses(enrolledCourses);
+		});
+
+		for (BatchResult.RowResult row: result.getRows()) {
+			if (row.getError() != null) {
+				rosterImport.rowFailed(chunkLines.get(row.getIndex()), row.getError());
+			} else {
+				rosterImport.studentCreated(chunk.get(row.getIndex()).getCourses().size());
+			}
+		}
+
+		log.debug("{}", rosterImport);
+		chunk.clear();
+		chunkLines.clear();
+	}
+
+	private static void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("Could not delete {}", file, e);
+		}
+	}
+
+	// positions of the columns, from the header
+	private static class Columns {
+		final int name;
+		final int startDate;
+		final int courses;
+
+		Columns(List<String> header) {
+			if (header == null) {
+				throw new IllegalArgumentException("Empty roster");
+			}
+			List<String> names = new ArrayList<>();
+			for (String column: header) {
+				names.add(column.trim().toLowerCase(Locale.ROOT));
+			}
+			name = names.indexOf(NAME_COLUMN);
+			startDate = names.indexOf(START_DATE_COLUMN);
+			courses = names.indexOf(COURSES_COLUMN);
+			if (name < 0) {
+				throw new IllegalArgumentException("No " + NAME_COLUMN + " column in the roster header");
+			}
+		}
+
+		Student toStudent(List<String> record, CourseNames courseNames) {
+			String studentName = field(record, name);
+			if (studentName.isEmpty()) {
+				throw new IllegalArgumentException("The student name should be provided");
+			}
+			Set<Course> studentCourses = new HashSet<>();
+			for (String courseName: StringUtils.tokenizeToStringArray(field(record, courses), COURSE_SEPARATOR)) {
+				// only the ID is needed to write the enrollment
+				studentCourses.add(Course.builder().id(courseNames.findId(courseName)).build());
+			}
+			return Student.builder().name(studentName).startDt(startDate(field(record, startDate))).courses(studentCourses).build();
+		}
+
+		private static String field(List<String> record, int index) {
+			return (index >= 0 && index < record.size() ? record.get(index).trim() : "");
+		}
+
+		private static Timestamp startDate(String value) {
+			if (value.isEmpty()) {
+				return null;
+			}
+			try {
+				return (value.indexOf('T') < 0
+						? Timestamp.valueOf(LocalDate.parse(value).atStartOfDay())
+						: Timestamp.valueOf(LocalDateTime.parse(value)));
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("Invalid start date " + value);
+			}
+		}
+	}
+
+	// course name -> ID, null for no such course
+	private class CourseNames extends LinkedHashMap<String, Integer> {
+		private static final long serialVersionUID = 1L;
+
+		CourseNames() {
+			super(16, 0.75f, true);
+		}
+
+		Integer findId(String courseName) {
+			Integer id;
+			if (containsKey(courseName)) {
+				id = get(courseName);
+			} else {
+				List<Course> found = courses.findByName(courseName);
+				id = (found.isEmpty() ? null : found.get(0).getId());
+				put(courseName, id);
+			}
+			if (id == null) {
+				throw new IllegalArgumentException("No courses found with name " + courseName);
+			}
+			return id;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > MAX_CACHED_COURSES;
+		}
+	}
+}
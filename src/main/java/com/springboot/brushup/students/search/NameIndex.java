@@ -0,0 +1,273 @@
+package com.springboot.brushup.students.search;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.springboot.brushup.students.dto.NameMatch;
+
+/**
+ * In-memory type-ahead index of names: a trie over the normalized names (lower case, without accents nor extra spaces),
+ * entered at every word of a name, so that "smi" finds "John Smith".
+ *
+ * Lookups walk the trie along with the edit distance row of the query, pruning branches out of reach,
+ * so a few typos are tolerated without looking at every name:
+ * none for queries of up to 2 characters, 1 up to 5 characters, 2 beyond.
+ * Exact prefix matches come first, then the closest ones, names in alphabetical order (normalized) within each.
+ * Only the best matches up to the limit are held while walking, and branches that can't beat the worst of them
+ * once the limit is reached are left out.
+ *
+ * Lookups share a read lock, writes take it exclusively.
+ */
+public class NameIndex {
+
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	private static final class Node {
+		private final TreeMap<Character, Node> children = new TreeMap<>();
+		// names entered at this node
+		private Set<Integer> ids;
+	}
+
+	private static final class Match {
+		private final Integer id;
+		private final int distance;
+		private final String normalizedName;
+
+		private Match(Integer id, int distance, String normalizedName) {
+			this.id = id;
+			this.distance = distance;
+			this.normalizedName = normalizedName;
+		}
+	}
+
+	private static final Comparator<Match> RANKING = Comparator.<Match>comparingInt(match -> match.distance)
+			.thenComparing(match -> match.normalizedName)
+			.thenComparing(match -> match.id);
+
+	/**
+	 * The best matches found so far, at most limit of them, a match per ID.
+	 */
+	private final class TopMatches {
+		private final int limit;
+		private final TreeSet<Match> ranked = new TreeSet<>(RANKING);
+		private final Map<Integer, Match> byId = new HashMap<>();
+
+		private TopMatches(int limit) {
+			this.limit = limit;
+		}
+
+		// a match at the given distance could still make it
+		private boolean accepts(int distance) {
+			return ranked.size() < limit || ranked.last().distance >= distance;
+		}
+
+		private void offer(Integer id, int distance) {
+			Match held = byId.get(id);
+			if (held != null) {
+				if (held.distance <= distance) {
+					return;
+				}
+				ranked.remove(held);
+				byId.remove(id);
+			}
+			Match match = new Match(id, distance, normalizedNames.get(id));
+			if (ranked.size() == limit) {
+				if (RANKING.compare(match, ranked.last()) >= 0) {
+					return;
+				}
+				byId.remove(ranked.pollLast().id);
+			}
+			ranked.add(match);
+			byId.put(id, match);
+		}
+	}
+
+	private final Node root = new Node();
+
+	private final Map<Integer, String> names = new HashMap<>();
+
+	// the names as ranked
+	private final Map<Integer, String> normalizedNames = new HashMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Indexes a name, replacing the previous name of the same ID (a null name removes it).
+	 */
+	public void put(Integer id, String name) {
+		if (name == null) {
+			remove(id);
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			String previous = names.get(id);
+			if (name.equals(previous)) {
+				return;
+			}
+			if (previous != null) {
+				keys(previous).forEach(key -> remove(root, key, 0, id));
+			}
+			names.put(id, name);
+			normalizedNames.put(id, normalize(name));
+			keys(name).forEach(key -> insert(key, id));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Integer id) {
+		lock.writeLock().lock();
+		try {
+			String previous = names.remove(id);
+			normalizedNames.remove(id);
+			if (previous != null) {
+				keys(previous).forEach(key -> remove(root, key, 0, id));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return names.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return at most limit names starting like the query (or one of its words), give or take a few typos
+	 */
+	public List<NameMatch> search(String query, int limit) {
+		String key = normalize(query);
+		if (key.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+
+		int maxEdits = (key.length() <= 2 ? 0 : key.length() <= 5 ? 1 : 2);
+		// distance between the query prefixes and the empty trie path
+		int[] row = new int[key.length() + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+
+		lock.readLock().lock();
+		try {
+			TopMatches matches = new TopMatches(limit);
+			root.children.forEach((label, child) -> search(child, label, key, row, maxEdits, matches));
+
+			return matches.ranked.stream()
+					.map(match -> new NameMatch(match.id, names.get(match.id)))
+					.collect(Collectors.toList());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void search(Node node, char label, String key, int[] previousRow, int maxEdits, TopMatches matches) {
+		// edit distances between every prefix of the query and the trie path down to this node
+		int[] row = new int[previousRow.length];
+		row[0] = previousRow[0] + 1;
+		int closest = row[0];
+		for (int i = 1; i < row.length; i++) {
+			int substitution = previousRow[i - 1] + (key.charAt(i - 1) == label ? 0 : 1);
+			row[i] = Math.min(substitution, Math.min(row[i - 1], previousRow[i]) + 1);
+			closest = Math.min(closest, row[i]);
+		}
+
+		int distance = row[row.length - 1];
+		if (distance <= maxEdits && matches.accepts(distance)) {
+			// the whole query is within reach of this path, so is every name below it
+			collect(node, distance, matches);
+		}
+		if (distance == 0 || closest > maxEdits || !matches.accepts(closest)) {
+			// going deeper only adds edits, or finds nothing closer than the matches held
+			return;
+		}
+		for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+			search(child.getValue(), child.getKey(), key, row, maxEdits, matches);
+		}
+	}
+
+	private static void collect(Node node, int distance, TopMatches matches) {
+		if (!matches.accepts(distance)) {
+			// closer matches filled the limit meanwhile
+			return;
+		}
+		if (node.ids != null) {
+			for (Integer id : node.ids) {
+				matches.offer(id, distance);
+			}
+		}
+		for (Node child : node.children.values()) {
+			collect(child, distance, matches);
+		}
+	}
+
+	private void insert(String key, Integer id) {
+		Node node = root;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.children.computeIfAbsent(key.charAt(i), label -> new Node());
+		}
+		if (node.ids == null) {
+			node.ids = new HashSet<>(2);
+		}
+		node.ids.add(id);
+	}
+
+	/**
+	 * @return true if the node is left empty, to be unlinked by its parent
+	 */
+	private static boolean remove(Node node, String key, int depth, Integer id) {
+		if (depth == key.length()) {
+			if (node.ids != null && node.ids.remove(id) && node.ids.isEmpty()) {
+				node.ids = null;
+			}
+		} else {
+			Node child = node.children.get(key.charAt(depth));
+			if (child != null && remove(child, key, depth + 1, id)) {
+				node.children.remove(key.charAt(depth));
+			}
+		}
+		return node.ids == null && node.children.isEmpty();
+	}
+
+	/**
+	 * @return the normalized name, followed by what follows each of its spaces
+	 */
+	static Set<String> keys(String name) {
+		String normalized = normalize(name);
+		Set<String> keys = new LinkedHashSet<>();
+		if (!normalized.isEmpty()) {
+			keys.add(normalized);
+		}
+		for (int space = normalized.indexOf(' '); space >= 0; space = normalized.indexOf(' ', space + 1)) {
+			keys.add(normalized.substring(space + 1));
+		}
+		return keys;
+	}
+
+	static String normalize(String name) {
+		String withoutAccents = DIACRITICS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+		return SPACES.matcher(withoutAccents.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,142 @@
+package com.springboot.brushup.students.search;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.springboot.brushup.students.cache.AfterCommit;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.NameMatch;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.StudentRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Name search of students and courses, answered from memory (see {@link NameIndex}).
+ *
+ * The indexes are loaded once the context is refreshed, before the web server takes requests,
+ * then follow the entity writes through {@link SearchIndexListener}, once their transaction commits.
+ * Bulk statements bypass the entity listeners, their writers update the index themselves.
+ */
+@Slf4j
+@Component
+public class SearchIndex {
+
+	public static final int DEFAULT_LIMIT = 10;
+	public static final int MAX_LIMIT = 100;
+
+	@Autowired
+	private StudentRepository students;
+
+	@Autowired
+	private CourseRepository courses;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final NameIndex studentNames = new NameIndex();
+
+	private final NameIndex courseNames = new NameIndex();
+
+	@PostConstruct
+	void register() {
+		SearchIndexListener.setSearchIndex(this);
+	}
+
+	@PreDestroy
+	void unregister() {
+		SearchIndexListener.setSearchIndex(null);
+	}
+
+	@EventListener(ContextRefreshedEvent.class)
+	public void load() {
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		readOnly.execute(status -> {
+			load(studentNames, students.streamAllNames());
+			load(courseNames, courses.streamAllNames());
+			return null;
+		});
+		log.info("Search index loaded with {} students and {} courses", studentNames.size(), courseNames.size());
+	}
+
+	private static void load(NameIndex index, Stream<Object[]> rows) {
+		try (Stream<Object[]> names = rows) {
+			names.forEach(row -> index.put((Integer) row[0], (String) row[1]));
+		}
+	}
+
+	/**
+	 * @param limit the maximum number of matches, {@link #DEFAULT_LIMIT} if null, capped to {@link #MAX_LIMIT}
+	 * @throws IllegalArgumentException if the limit is not positive
+	 */
+	public List<NameMatch> searchStudents(String query, Integer limit) {
+		return studentNames.search(query, limit(limit));
+	}
+
+	/**
+	 * @see #searchStudents(String, Integer)
+	 */
+	public List<NameMatch> searchCourses(String query, Integer limit) {
+		return courseNames.search(query, limit(limit));
+	}
+
+	private static int limit(Integer limit) {
+		if (limit != null && limit < 1) {
+			throw new IllegalArgumentException("The limit should be a positive number, got " + limit);
+		}
+		return (limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT));
+	}
+
+	/**
+	 * For students renamed with a bulk statement.
+	 */
+	public void putStudent(Integer id, String name) {
+		AfterCommit.run(() -> studentNames.put(id, name));
+	}
+
+	/**
+	 * For courses renamed with a bulk statement.
+	 */
+	public void putCourse(Integer id, String name) {
+		AfterCommit.run(() -> courseNames.put(id, name));
+	}
+
+	/**
+	 * For courses deleted with a bulk statement.
+	 */
+	public void removeCourse(Integer id) {
+		AfterCommit.run(() -> courseNames.remove(id));
+	}
+
+	void indexed(Object entity) {
+		if (entity instanceof Student) {
+			Student student = (Student) entity;
+			AfterCommit.run(() -> studentNames.put(student.getId(), student.getName()));
+		} else if (entity instanceof Course) {
+			Course course = (Course) entity;
+			AfterCommit.run(() -> courseNames.put(course.getId(), course.getName()));
+		}
+	}
+
+	void removed(Object entity) {
+		if (entity instanceof Student) {
+			Integer id = ((Student) entity).getId();
+			AfterCommit.run(() -> studentNames.remove(id));
+		} else if (entity instanceof Course) {
+			Integer id = ((Course) entity).getId();
+			AfterCommit.run(() -> courseNames.remove(id));
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.springboot.brushup.students.search;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA listener of the indexed entities, passing their writes on to the {@link SearchIndex}.
+ * Hibernate creates the listener itself, the index registers with it on startup.
+ */
+public class SearchIndexListener {
+
+	private static volatile SearchIndex searchIndex;
+
+	static void setSearchIndex(SearchIndex index) {
+		searchIndex = index;
+	}
+
+	@PostPersist
+	@PostUpdate
+	void indexed(Object entity) {
+		SearchIndex index = searchIndex;
+		if (index != null) {
+			index.indexed(entity);
+		}
+	}
+
+	@PostRemove
+	void removed(Object entity) {
+		SearchIndex index = searchIndex;
+		if (index != null) {
+			index.removed(entity);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.springboot.brushup.students.startup;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+
+/**
+ * Times the creation of the beans on the startup thread, until stopped: from their instantiation to the end
+ * of their initialization, minus the time spent creating the beans they depend on (created in between).
+ */
+class BeanCreationTimer extends InstantiationAwareBeanPostProcessorAdapter {
+
+	private static final class Creation {
+		final String beanName;
+		final long start = System.nanoTime();
+		long dependencies;
+
+		Creation(String beanName) {
+			this.beanName = beanName;
+		}
+	}
+
+	private final Thread startupThread = Thread.currentThread();
+
+	private final Deque<Creation> creations = new ArrayDeque<>();
+
+	// bean name -> nanoseconds
+	private final Map<String, Long> times = new HashMap<>();
+
+	private volatile boolean stopped;
+
+	@Override
+	public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+		if (isTiming()) {
+			creations.push(new Creation(beanName));
+		}
+		return null;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		// the products of the factory beans are post processed too, under the name of their factory
+		if (isTiming() && !creations.isEmpty() && creations.peek().beanName.equals(beanName)) {
+			Creation creation = creations.pop();
+			long time = System.nanoTime() - creation.start;
+			if (!creations.isEmpty()) {
+				creations.peek().dependencies += time;
+			}
+			times.merge(beanName, time - creation.dependencies, Long::sum);
+		}
+		return bean;
+	}
+
+	/**
+	 * Stops the timing, the beans created lazily later on are left out.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return the names of the beans slowest to create, with their time in milliseconds, the slowest first
+	 */
+	List<Map.Entry<String, Long>> slowest(int count) {
+		return times.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+				.limit(count)
+				.<Map.Entry<String, Long>>map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue() / 1_000_000))
+				.collect(Collectors.toList());
+	}
+
+	private boolean isTiming() {
+		return !stopped && Thread.currentThread() == startupThread;
+	}
+}
@@ -0,0 +1,43 @@
+package com.springboot.brushup.students.startup;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.Ordered;
+
+/**
+ * Marks the bean definitions lazy, so that the beans get created on first use (first request, first event...)
+ * instead of on boot. Controllers, repositories and most of the web infrastructure then come up with the first
+ * requests, and the beans no request needs are never created.
+ *
+ * The Spring infrastructure stays eager, with the SmartInitializingSingletons, which would otherwise miss
+ * their callback (the processor of the @EventListener methods is one of them). FactoryBeans are made lazy
+ * without resolving their product type, which could create them before their time.
+ */
+public class LazyInitializationPostProcessor implements BeanFactoryPostProcessor, Ordered {
+
+	@Override
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+		for (String name: beanFactory.getBeanDefinitionNames()) {
+			BeanDefinition definition = beanFactory.getBeanDefinition(name);
+			if (definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE || !definition.isSingleton()) {
+				continue;
+			}
+			if (!beanFactory.isFactoryBean(name)) {
+				Class<?> type = beanFactory.getType(name);
+				if (type != null && SmartInitializingSingleton.class.isAssignableFrom(type)) {
+					continue;
+				}
+			}
+			definition.setLazyInit(true);
+		}
+	}
+
+	// after the ordered post processors, once the placeholders of the definitions are resolved
+	@Override
+	public int getOrder() {
+		return Ordered.LOWEST_PRECEDENCE;
+	}
+}
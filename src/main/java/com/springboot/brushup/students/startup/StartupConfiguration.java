@@ -0,0 +1,20 @@
+package com.springboot.brushup.students.startup;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Lazy initialization of the beans when startup.lazy-init is true (as in the fast-startup profile),
+ * see {@link LazyInitializationPostProcessor}. The startup timings are logged either way ({@link StartupTimingListener}).
+ */
+@Configuration
+public class StartupConfiguration {
+
+	// static: a bean factory post processor has to be created before the other beans, this configuration included
+	@Bean
+	@ConditionalOnProperty(name="startup.lazy-init", havingValue="true")
+	public static LazyInitializationPostProcessor lazyInitializationPostProcessor() {
+		return new LazyInitializationPostProcessor();
+	}
+}
@@ -0,0 +1,120 @@
+package com.springboot.brushup.students.startup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationRunListener;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs how long the phases of the startup took, once the application has started, with the beans slowest to create:
+ * <ul>
+ * <li>environment: property sources, profiles and logging system</li>
+ * <li>context: creation of the application context, loading of its sources</li>
+ * <li>beans: refresh of the context, from the configuration classes to the eager singletons (Hibernate included)</li>
+ * <li>listeners, web server: the listeners of the refreshed context (loads of the in-memory indexes),
+ * then the start of the web server</li>
+ * <li>runners: the command line runners (see Application), and the listeners above when there is no web server</li>
+ * </ul>
+ * Registered in META-INF/spring.factories, as it has to be there before the context.
+ */
+@Slf4j
+public class StartupTimingListener implements SpringApplicationRunListener {
+
+	private static final int SLOWEST_BEANS = 10;
+
+	// phase -> milliseconds, in order
+	private final Map<String, Long> phases = new LinkedHashMap<>();
+
+	private final BeanCreationTimer beans = new BeanCreationTimer();
+
+	private long start;
+
+	private long phaseStart;
+
+	public StartupTimingListener(SpringApplication application, String[] args) {
+	}
+
+	@Override
+	public void starting() {
+		start = System.nanoTime();
+		phaseStart = start;
+	}
+
+	@Override
+	public void environmentPrepared(ConfigurableEnvironment environment) {
+		endPhase("environment");
+	}
+
+	@Override
+	public void contextPrepared(ConfigurableApplicationContext context) {
+		// first of the post processors, from the post processors of the bean factory on
+		context.getBeanFactory().addBeanPostProcessor(beans);
+	}
+
+	@Override
+	public void contextLoaded(ConfigurableApplicationContext context) {
+		endPhase("context");
+		context.addApplicationListener(new PhaseListener());
+	}
+
+	@Override
+	public void finished(ConfigurableApplicationContext context, Throwable exception) {
+		beans.stop();
+		if (exception != null) {
+			return;
+		}
+		endPhase("runners");
+		log.info(report());
+	}
+
+	String report() {
+		StringBuilder report = new StringBuilder("Started in ")
+				.append((System.nanoTime() - start) / 1_000_000).append(" ms:");
+		String separator = " ";
+		for (Map.Entry<String, Long> phase: phases.entrySet()) {
+			report.append(separator).append(phase.getKey()).append(' ').append(phase.getValue()).append(" ms");
+			separator = ", ";
+		}
+		report.append("; slowest beans to create, without their dependencies:");
+		separator = " ";
+		for (Map.Entry<String, Long> bean: beans.slowest(SLOWEST_BEANS)) {
+			report.append(separator).append(bean.getKey()).append(' ').append(bean.getValue()).append(" ms");
+			separator = ", ";
+		}
+		return report.toString();
+	}
+
+	private void endPhase(String phase) {
+		long now = System.nanoTime();
+		phases.put(phase, (now - phaseStart) / 1_000_000);
+		phaseStart = now;
+	}
+
+	// ahead of the other listeners, to end the beans phase before the loads of the indexes
+	private class PhaseListener implements ApplicationListener<ApplicationEvent>, Ordered {
+
+		@Override
+		public void onApplicationEvent(ApplicationEvent event) {
+			if (event instanceof ContextRefreshedEvent) {
+				endPhase("beans");
+			} else if (event instanceof EmbeddedServletContainerInitializedEvent) {
+				endPhase("listeners, web server");
+			}
+		}
+
+		@Override
+		public int getOrder() {
+			return Ordered.HIGHEST_PRECEDENCE;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.springboot.brushup.students.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.dto.CourseStats;
+import com.springboot.brushup.students.dto.Enrollment;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Number of students of every course, answered from memory.
+ *
+ * The counts are loaded with a single GROUP BY statement once the context is refreshed, before the web server
+ * takes requests, then follow the enrollment changes: their writers report them, and the counts move by the same amount
+ * once their transaction commits. Changes commute, so transactions committing in any order end up with the same counts.
+ *
+ * Courses whose changes can't be told (see recount) are counted again instead, once the transaction has committed.
+ * A transaction locks the courses it changed from right before its commit until its changes are applied, so a recount
+ * sees either both its rows and its changes, or neither. Writers report their changes from within the transaction
+ * making them, changes reported outside of one are applied right away.
+ */
+@Slf4j
+@Component
+public class EnrollmentCounts {
+
+	@Autowired
+	private EnrollmentRepository enrollments;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private static final int LOCK_STRIPES = 64;
+
+	// courses without students are left out
+	private final ConcurrentMap<Integer, Integer> counts = new ConcurrentHashMap<>();
+
+	// by course ID modulo the number of stripes, always taken in ascending order
+	private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+	{
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	@EventListener(ContextRefreshedEvent.class)
+	public void load() {
+		TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		Map<Integer, Integer> loaded = readOnly.execute(status -> enrollments.countStudentsByCourse());
+		counts.clear();
+		counts.putAll(loaded);
+		log.info("Enrollment counts loaded for {} courses", counts.size());
+	}
+
+	/**
+	 * @return the courses having students, by ID
+	 */
+	public List<CourseStats> getStats() {
+		return counts.entrySet().stream()
+				.map(count -> new CourseStats(count.getKey(), count.getValue()))
+				.sorted((a, b) -> a.getCourseId().compareTo(b.getCourseId()))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * For a student created, updated or deleted with its courses, which may be null.
+	 */
+	public void studentCoursesChanged(Collection<Course> previousCourses, Collection<Course> newCourses) {
+		Set<Integer> previous = idsOf(previousCourses);
+		Set<Integer> current = idsOf(newCourses);
+		Changes changes = new Changes();
+		previous.stream().filter(id -> !current.contains(id)).forEach(id -> changes.add(id, -1));
+		current.stream().filter(id -> !previous.contains(id)).forEach(id -> changes.add(id, 1));
+		report(changes);
+	}
+
+	/**
+	 * For enrollments inserted (or deleted) with single row statements, every one of them changed a row.
+	 */
+	public void enrollmentsChanged(Collection<Enrollment> changed, boolean enrolled) {
+		Changes changes = new Changes();
+		changed.forEach(enrollment -> changes.add(enrollment.getCourseId(), enrolled ? 1 : -1));
+		report(changes);
+	}
+
+	/**
+	 * For courses whose enrollments may have changed without the write telling which ones,
+	 * they are counted again once the transaction commits. Their changes should not be reported as well.
+	 */
+	public void recount(Collection<Integer> courseIds) {
+		Changes changes = new Changes();
+		changes.recounted.addAll(courseIds);
+		report(changes);
+	}
+
+	/**
+	 * For courses deleted with their enrollments.
+	 */
+	public void courseRemoved(Integer courseId) {
+		Changes changes = new Changes();
+		changes.removed.add(courseId);
+		report(changes);
+	}
+
+	private void report(Changes changes) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			changes.lock();
+			try {
+				changes.apply();
+			} finally {
+				changes.unlock();
+			}
+			return;
+		}
+		Changes pending = (Changes) TransactionSynchronizationManager.getResource(this);
+		if (pending == null) {
+			pending = new Changes();
+			TransactionSynchronizationManager.bindResource(this, pending);
+			TransactionSynchronizationManager.registerSynchronization(pending);
+		}
+		pending.merge(changes);
+	}
+
+	private void add(Integer courseId, int delta) {
+		counts.compute(courseId, (id, count) -> {
+			int updated = (count == null ? 0 : count) + delta;
+			return (updated > 0 ? updated : null);
+		});
+	}
+
+	/**
+	 * The changes of one transaction, applied once it commits.
+	 */
+	private class Changes extends TransactionSynchronizationAdapter {
+
+		private final Map<Integer, Integer> deltas = new HashMap<>();
+		private final Set<Integer> removed = new HashSet<>();
+		private final Set<Integer> recounted = new HashSet<>();
+		private final List<Lock> locked = new ArrayList<>();
+
+		void add(Integer courseId, int delta) {
+			deltas.merge(courseId, delta, Integer::sum);
+		}
+
+		void merge(Changes changes) {
+			changes.deltas.forEach(this::add);
+			removed.addAll(changes.removed);
+			recounted.addAll(changes.recounted);
+		}
+
+		void lock() {
+			Set<Integer> stripes = new TreeSet<>();
+			for (Set<Integer> courseIds : Arrays.asList(deltas.keySet(), removed, recounted)) {
+				courseIds.forEach(id -> stripes.add(Math.floorMod(id, LOCK_STRIPES)));
+			}
+			for (Integer stripe : stripes) {
+				locks[stripe].lock();
+				locked.add(locks[stripe]);
+			}
+		}
+
+		void unlock() {
+			locked.forEach(Lock::unlock);
+			locked.clear();
+		}
+
+		void apply() {
+			deltas.forEach((id, delta) -> {
+				if (!removed.contains(id) && !recounted.contains(id)) {
+					EnrollmentCounts.this.add(id, delta);
+				}
+			});
+			removed.forEach(counts::remove);
+			recounted.removeAll(removed);
+			if (!recounted.isEmpty()) {
+				// reads what has been committed, on the primary
+				TransactionTemplate recount = new TransactionTemplate(transactionManager);
+				recount.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				Map<Integer, Integer> recounts = recount.execute(status -> enrollments.countStudentsByCourse(recounted));
+				recounted.forEach(id -> {
+					Integer count = recounts.get(id);
+					if (count != null && count > 0) {
+						counts.put(id, count);
+					} else {
+						counts.remove(id);
+					}
+				});
+			}
+		}
+
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			lock();
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(EnrollmentCounts.this);
+			try {
+				if (status == STATUS_COMMITTED) {
+					apply();
+				}
+			} finally {
+				unlock();
+			}
+		}
+	}
+
+	private static Set<Integer> idsOf(Collection<Course> courses) {
+		if (courses == null) {
+			return Collections.emptySet();
+		}
+		return courses.stream().filter(Objects::nonNull).map(Course::getId).filter(Objects::nonNull).collect(Collectors.toSet());
+	}
+}
@@ -0,0 +1,55 @@
+package com.springboot.brushup.students;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.StudentRepository;
+import com.springboot.brushup.students.roster.RosterImporter;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ApplicationTest {
+
+	@InjectMocks
+	private Application application;
+
+	@Mock
+	private StudentRepository studentRepo;
+
+	@Mock
+	private CourseRepository courseRepo;
+
+	@Mock
+	private RosterImporter rosterImporter;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	public void testTablesDumpedWhenEnabled() {
+		ReflectionTestUtils.setField(application, "dumpTables", true);
+
+		application.run();
+
+		verify(studentRepo).findAll();
+		verify(courseRepo).findAll();
+	}
+
+	@Test
+	public void testTablesNotDumpedWhenDisabled() {
+		ReflectionTestUtils.setField(application, "dumpTables", false);
+
+		application.run();
+
+		verify(studentRepo, never()).findAll();
+		verify(courseRepo, never()).findAll();
+	}
+}
@@ -0,0 +1,141 @@
+package com.springboot.brushup.students.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.springboot.brushup.students.rest.constants.RestPaths;
+
+public class AdmissionControlFilterTest {
+	
+	private static final String API_KEY_HEADER = "X-API-Key";
+	
+	private AdmissionControlFilter filter;
+	
+	private MetricRegistry registry;
+	
+	@Before
+	public void setup() {
+		filter = new AdmissionControlFilter();
+		registry = new MetricRegistry();
+		ReflectionTestUtils.setField(filter, "registry", registry);
+		// a burst of 2, then a request every 100 seconds: no refill within a test
+		ReflectionTestUtils.setField(filter, "ratePerSecond", 0.01);
+		ReflectionTestUtils.setField(filter, "burst", 2.0);
+		ReflectionTestUtils.setField(filter, "apiKeyHeader", API_KEY_HEADER);
+		ReflectionTestUtils.setField(filter, "maxListings", 1);
+		ReflectionTestUtils.setField(filter, "maxExports", 1);
+		ReflectionTestUtils.setField(filter, "maxBatches", 1);
+		filter.init();
+	}
+	
+	private static MockHttpServletRequest request(String method, String path, String address) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+		request.setRemoteAddr(address);
+		return request;
+	}
+	
+	private MockHttpServletResponse filter(MockHttpServletRequest request, FilterChain chain) throws ServletException, IOException {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+	
+	private MockHttpServletResponse filter(MockHttpServletRequest request) throws ServletException, IOException {
+		return filter(request, new MockFilterChain());
+	}
+	
+	@Test
+	public void testRateLimitedPerClient() throws Exception {
+		String byId = RestPaths.COURSES + "/1";
+		assertThat(filter(request("GET", byId, "10.0.0.1")).getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(filter(request("GET", byId, "10.0.0.1")).getStatus()).isEqualTo(HttpStatus.OK.value());
+		
+		MockHttpServletResponse limited = filter(request("GET", byId, "10.0.0.1"));
+		assertThat(limited.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+		assertThat(Long.parseLong(limited.getHeader(HttpHeaders.RETRY_AFTER))).isBetween(1L, 100L);
+		assertThat(registry.meter("admission.rate-limited").getCount()).isEqualTo(1);
+		
+		// another address has its own bucket, and so has an API key from the same address
+		assertThat(filter(request("GET", byId, "10.0.0.2")).getStatus()).isEqualTo(HttpStatus.OK.value());
+		MockHttpServletRequest withKey = request("GET", byId, "10.0.0.1");
+		withKey.addHeader(API_KEY_HEADER, "key");
+		assertThat(filter(withKey).getStatus()).isEqualTo(HttpStatus.OK.value());
+	}
+	
+	@Test
+	public void testOutsideApiNotLimited() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			assertThat(filter(request("GET", "/metrics", "10.0.0.1")).getStatus()).isEqualTo(HttpStatus.OK.value());
+		}
+	}
+	
+	@Test
+	public void testExpensiveEndpointShedBeyondCap() throws Exception {
+		MockHttpServletResponse[] nested = new MockHttpServletResponse[2];
+		// a listing still in progress when the others come in
+		MockHttpServletResponse outer = filter(request("GET", RestPaths.STUDENTS, "10.0.0.1"), new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+				assertThat(registry.getGauges().get("admission.active.listings").getValue()).isEqualTo(1);
+				nested[0] = filter(request("GET", RestPaths.COURSES, "10.0.0.2"));
+				nested[1] = filter(request("GET", RestPaths.COURSES + "/1", "10.0.0.2"));
+			}
+		});
+		
+		assertThat(outer.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(nested[0].getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+		assertThat(nested[0].getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+		assertThat(registry.meter("admission.shed.listings").getCount()).isEqualTo(1);
+		// the lookup by ID has no cap
+		assertThat(nested[1].getStatus()).isEqualTo(HttpStatus.OK.value());
+		
+		// the permit is back once the listing is over
+		assertThat(registry.getGauges().get("admission.active.listings").getValue()).isEqualTo(0);
+		assertThat(filter(request("GET", RestPaths.COURSES, "10.0.0.3")).getStatus()).isEqualTo(HttpStatus.OK.value());
+	}
+	
+	@Test
+	public void testTrailingSlashAndExtensionCapped() throws Exception {
+		String[][] variants = {
+				{ "GET", RestPaths.COURSES + "/" }, { "GET", RestPaths.STUDENTS + ".json" },
+				{ "GET", RestPaths.STUDENTS + "/export/" }, { "POST", RestPaths.COURSES + "/batch/" } };
+		for (int i = 0; i < variants.length; i++) {
+			String method = variants[i][0];
+			String path = variants[i][1];
+			String address = "10.0.1." + i;
+			MockHttpServletResponse[] nested = new MockHttpServletResponse[1];
+			// the same request again while the first one is in progress
+			filter(request(method, path, address), new FilterChain() {
+				@Override
+				public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+					nested[0] = filter(request(method, path, address));
+				}
+			});
+			assertThat(nested[0].getStatus()).describedAs(path).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+		}
+	}
+	
+	@Test
+	public void testNormalizedPaths() {
+		assertThat(AdmissionControlFilter.normalized(RestPaths.STUDENTS + "//")).isEqualTo(RestPaths.STUDENTS);
+		assertThat(AdmissionControlFilter.normalized(RestPaths.COURSES + "/batch.json")).isEqualTo(RestPaths.COURSES + "/batch");
+		assertThat(AdmissionControlFilter.normalized(RestPaths.COURSES + "/1")).isEqualTo(RestPaths.COURSES + "/1");
+		assertThat(AdmissionControlFilter.normalized("/")).isEqualTo("/");
+	}
+}
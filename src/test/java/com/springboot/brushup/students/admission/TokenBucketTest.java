@@ -0,0 +1,38 @@
+package com.springboot.brushup.students.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+	
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	
+	@Test
+	public void testBurstThenRate() {
+		TokenBucket bucket = new TokenBucket(3, 2, 0);
+		
+		assertThat(bucket.tryTake(0)).isEqualTo(0);
+		assertThat(bucket.tryTake(0)).isEqualTo(0);
+		assertThat(bucket.tryTake(0)).isEqualTo(0);
+		// 2 tokens a second, the next one in half a second
+		assertThat(bucket.tryTake(0)).isEqualTo(SECOND / 2);
+		assertThat(bucket.tryTake(SECOND / 4)).isEqualTo(SECOND / 4);
+		assertThat(bucket.tryTake(SECOND / 2)).isEqualTo(0);
+		assertThat(bucket.tryTake(SECOND / 2)).isGreaterThan(0);
+	}
+	
+	@Test
+	public void testRefillCappedAtCapacity() {
+		TokenBucket bucket = new TokenBucket(2, 1, 0);
+		bucket.tryTake(0);
+		bucket.tryTake(0);
+		
+		long later = 60 * SECOND;
+		assertThat(bucket.tryTake(later)).isEqualTo(0);
+		assertThat(bucket.tryTake(later)).isEqualTo(0);
+		assertThat(bucket.tryTake(later)).isGreaterThan(0);
+	}
+}
@@ -0,0 +1,91 @@
+package com.springboot.brushup.students.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+public class InlineCallableReturnValueHandlerTest {
+
+	private HandlerMethodReturnValueHandler results;
+
+	private InlineCallableReturnValueHandler handler;
+
+	private ModelAndViewContainer mavContainer;
+
+	private NativeWebRequest request;
+
+	@Before
+	public void setup() {
+		results = mock(HandlerMethodReturnValueHandler.class);
+		handler = new InlineCallableReturnValueHandler(results);
+		mavContainer = new ModelAndViewContainer();
+		request = new ServletWebRequest(new MockHttpServletRequest());
+	}
+
+	@Test
+	public void testResultHandledAsReturnedByTheHandler() throws Exception {
+		MethodParameter returnType = returnType("list");
+		ResponseEntity<List<String>> result = ResponseEntity.ok(Collections.singletonList("Rest APIs"));
+
+		assertThat(handler.supportsReturnType(returnType)).isTrue();
+		handler.handleReturnValue((Callable<?>) () -> result, returnType, mavContainer, request);
+
+		ArgumentCaptor<MethodParameter> resultType = ArgumentCaptor.forClass(MethodParameter.class);
+		verify(results).handleReturnValue(eq(result), resultType.capture(), eq(mavContainer), eq(request));
+		assertThat(resultType.getValue().getParameterType()).isEqualTo(ResponseEntity.class);
+		assertThat(ResolvableType.forType(resultType.getValue().getGenericParameterType()).getGeneric(0).toString())
+				.isEqualTo("java.util.List<java.lang.String>");
+	}
+
+	@Test
+	public void testNoResultEndsTheRequest() throws Exception {
+		handler.handleReturnValue((Callable<?>) () -> null, returnType("nothing"), mavContainer, request);
+
+		assertThat(mavContainer.isRequestHandled()).isTrue();
+		verify(results, never()).handleReturnValue(any(), any(MethodParameter.class), any(ModelAndViewContainer.class), any(NativeWebRequest.class));
+	}
+
+	@Test
+	public void testOtherReturnTypesLeftAlone() throws Exception {
+		assertThat(handler.supportsReturnType(returnType("entity"))).isFalse();
+	}
+
+	private static MethodParameter returnType(String handlerMethod) throws NoSuchMethodException {
+		return new MethodParameter(Handlers.class.getDeclaredMethod(handlerMethod), -1);
+	}
+
+	@SuppressWarnings("unused")
+	private static class Handlers {
+
+		Callable<ResponseEntity<List<String>>> list() {
+			return null;
+		}
+
+		Callable<Void> nothing() {
+			return null;
+		}
+
+		ResponseEntity<List<String>> entity() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.springboot.brushup.students.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.springboot.brushup.students.batch.BatchResult.RowResult;
+import com.springboot.brushup.students.domain.Course;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchInserterTest {
+	
+	private static final String NO_NAME = "No name";
+	
+	@InjectMocks
+	private BatchInserter batchInserter;
+	
+	@Mock
+	private EntityManager entityManager;
+	
+	// commits and rollbacks are no-ops, the template only needs a manager to talk to
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	
+	private AtomicInteger nextId = new AtomicInteger(1);
+	
+	@Before
+	public void setup() {
+		ReflectionTestUtils.setField(batchInserter, "chunkSize", 2);
+		
+		// emulates the ID generator
+		doAnswer(invocation -> {
+			((Course) invocation.getArguments()[0]).setId(nextId.getAndIncrement());
+			return null;
+		}).when(entityManager).persist(any(Course.class));
+	}
+	
+	private BatchResult insert(List<Course> courses) {
+		return batchInserter.insert(courses, Course::getId, Course::setId, course -> course.getName() == null ? NO_NAME : null);
+	}
+
+	@Test
+	public void testInsertAllValid() {
+		BatchResult result = insert(Arrays.asList(course("a"), course("b"), course("c")));
+		
+		assertThat(result.getSucceeded()).isEqualTo(3);
+		assertThat(result.getFailed()).isEqualTo(0);
+		assertThat(result.getRows()).containsExactly(new RowResult(0, 1, null), new RowResult(1, 2, null), new RowResult(2, 3, null));
+		// one flush per chunk
+		verify(entityManager, times(2)).flush();
+	}
+
+	@Test
+	public void testInsertInvalidRowsSkipped() {
+		BatchResult result = insert(Arrays.asList(course("a"), course(null), course("c")));
+		
+		assertThat(result.getSucceeded()).isEqualTo(2);
+		assertThat(result.getFailed()).isEqualTo(1);
+		assertThat(result.getRows()).containsExactly(new RowResult(0, 1, null), new RowResult(1, null, NO_NAME), new RowResult(2, 2, null));
+		verify(entityManager, times(2)).persist(any(Course.class));
+	}
+
+	@Test
+	public void testInsertFailedChunkRetriedRowByRow() {
+		// the chunk fails, then the first row succeeds alone and the second one fails again 
+		doThrow(new PersistenceException("chunk")).doNothing().doThrow(new PersistenceException("duplicate")).when(entityManager).flush();
+		
+		BatchResult result = insert(Arrays.asList(course("a"), course("a")));
+
+		assertThat(result.getSucceeded()).isEqualTo(1);
+		assertThat(result.getFailed()).isEqualTo(1);
+		assertThat(result.getRows()).containsExactly(new RowResult(0, 3, null), new RowResult(1, null, "duplicate"));
+	}
+	
+	@Test
+	public void testInsertedRowsReportedInTheirTransaction() {
+		// the chunk fails, then both rows succeed alone
+		doThrow(new PersistenceException("chunk")).doNothing().when(entityManager).flush();
+		List<List<Integer>> reported = new ArrayList<>();
+		
+		batchInserter.insert(Arrays.asList(course("a"), course("b"), course("c")), Course::getId, Course::setId, course -> null, 
+				inserted -> reported.add(inserted.stream().map(Course::getId).collect(Collectors.toList())));
+		
+		// the failed chunk is not reported, its rows are once retried
+		assertThat(reported).containsExactly(Arrays.asList(3), Arrays.asList(4), Arrays.asList(5));
+	}
+	
+	@Test
+	public void testInsertTooManyRows() {
+		List<Course> courses = new ArrayList<>();
+		for (int i = 0; i <= BatchInserter.MAX_ROWS; i++) {
+			courses.add(course("c" + i));
+		}
+		
+		Throwable thrown = catchThrowable(() -> insert(courses));
+		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class);
+		verify(entityManager, times(0)).persist(any(Course.class));
+	}
+	
+	private static Course course(String name) {
+		return Course.builder().name(name).build();
+	}
+}
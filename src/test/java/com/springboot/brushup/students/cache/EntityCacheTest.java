@@ -0,0 +1,92 @@
+package com.springboot.brushup.students.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.repository.CourseRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EntityCacheTest {
+
+	private static final Course COURSE_DEFAULT_1 = Course.builder().id(1).name("aCourse").build();
+	private static final Course COURSE_DEFAULT_2 = Course.builder().id(2).name("bCourse").build();
+	
+	private static final Student STUDENT_DEFAULT_1 = Student.builder().id(1).name("aStudent").course(COURSE_DEFAULT_1).build();
+	private static final Course COURSE_DEFAULT_3 = Course.builder().id(3).name("cCourse").build();
+	
+	private static final Student STUDENT_DEFAULT_2 = Student.builder().id(2).name("bStudent").course(COURSE_DEFAULT_2).build();
+	
+	@InjectMocks
+	private EntityCache entityCache;
+	
+	@Spy
+	private CacheManager cacheManager = new CaffeineCacheManager(EntityCache.COURSES, EntityCache.STUDENTS);
+	
+	@Mock
+	private CourseRepository courseRepository;
+	
+	@Before
+	public void setup() {
+		cacheManager.getCache(EntityCache.COURSES).put(COURSE_DEFAULT_1.getId(), COURSE_DEFAULT_1);
+		cacheManager.getCache(EntityCache.COURSES).put(COURSE_DEFAULT_2.getId(), COURSE_DEFAULT_2);
+		cacheManager.getCache(EntityCache.STUDENTS).put(STUDENT_DEFAULT_1.getId(), STUDENT_DEFAULT_1);
+		cacheManager.getCache(EntityCache.STUDENTS).put(STUDENT_DEFAULT_2.getId(), STUDENT_DEFAULT_2);
+	}
+	
+	@Test
+	public void testEvictCourseEvictsEnrolledStudents() {
+		entityCache.evictCourse(COURSE_DEFAULT_1.getId());
+		
+		assertThat(cacheManager.getCache(EntityCache.COURSES).get(COURSE_DEFAULT_1.getId())).isNull();
+		assertThat(cacheManager.getCache(EntityCache.STUDENTS).get(STUDENT_DEFAULT_1.getId())).isNull();
+		// not enrolled in the course
+		assertThat(cacheManager.getCache(EntityCache.COURSES).get(COURSE_DEFAULT_2.getId())).isNotNull();
+		assertThat(cacheManager.getCache(EntityCache.STUDENTS).get(STUDENT_DEFAULT_2.getId())).isNotNull();
+	}
+	
+	@Test
+	public void testLoadedCourseCached() {
+		given(courseRepository.findOne(COURSE_DEFAULT_3.getId())).willReturn(COURSE_DEFAULT_3);
+		
+		assertThat(entityCache.findCourse(COURSE_DEFAULT_3.getId())).isSameAs(COURSE_DEFAULT_3);
+		
+		assertThat(cacheManager.getCache(EntityCache.COURSES).get(COURSE_DEFAULT_3.getId()).get()).isSameAs(COURSE_DEFAULT_3);
+	}
+	
+	@Test
+	public void testCourseEvictedWhileLoadingNotCached() {
+		// the course is changed once the load has read it, and evicted before the load caches it
+		given(courseRepository.findOne(COURSE_DEFAULT_3.getId())).willAnswer(invocation -> {
+			entityCache.evictCourse(COURSE_DEFAULT_3.getId());
+			return COURSE_DEFAULT_3;
+		});
+		
+		assertThat(entityCache.findCourse(COURSE_DEFAULT_3.getId())).isSameAs(COURSE_DEFAULT_3);
+		
+		assertThat(cacheManager.getCache(EntityCache.COURSES).get(COURSE_DEFAULT_3.getId())).isNull();
+	}
+	
+	@Test
+	public void testEvictStudentEvictsPreviousAndNewCourses() {
+		entityCache.evictStudent(STUDENT_DEFAULT_1.getId(), STUDENT_DEFAULT_1.getCourses(), Arrays.asList(COURSE_DEFAULT_2));
+		
+		assertThat(cacheManager.getCache(EntityCache.STUDENTS).get(STUDENT_DEFAULT_1.getId())).isNull();
+		assertThat(cacheManager.getCache(EntityCache.COURSES).get(COURSE_DEFAULT_1.getId())).isNull();
+		assertThat(cacheManager.getCache(EntityCache.COURSES).get(COURSE_DEFAULT_2.getId())).isNull();
+		assertThat(cacheManager.getCache(EntityCache.STUDENTS).get(STUDENT_DEFAULT_2.getId())).isNotNull();
+	}
+}
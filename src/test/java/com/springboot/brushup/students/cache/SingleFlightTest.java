@@ -0,0 +1,117 @@
+package com.springboot.brushup.students.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightTest {
+	
+	private static final int CALLERS = 8;
+	
+	private final SingleFlight<Integer, String> loads = new SingleFlight<>();
+	
+	private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+	
+	private final AtomicInteger queries = new AtomicInteger();
+	
+	private final CountDownLatch release = new CountDownLatch(1);
+	
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+	
+	// a query held until released
+	private Supplier<String> query(String result) {
+		return () -> {
+			queries.incrementAndGet();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (result == null) {
+				throw new IllegalStateException("Query failed");
+			}
+			return result;
+		};
+	}
+	
+	// the first caller loads, the others join it
+	private List<Future<String>> concurrentLoads(Integer key, String result) throws InterruptedException {
+		List<Future<String>> callers = new ArrayList<>();
+		callers.add(executor.submit(() -> loads.load(key, query(result))));
+		while (queries.get() == 0) {
+			Thread.sleep(1);
+		}
+		for (int i = 1; i < CALLERS; i++) {
+			callers.add(executor.submit(() -> loads.load(key, query(result))));
+		}
+		while (loads.getShared() < CALLERS - 1) {
+			Thread.sleep(1);
+		}
+		return callers;
+	}
+	
+	@Test
+	public void testConcurrentLoadsShareOneQuery() throws Exception {
+		List<Future<String>> callers = concurrentLoads(1, "aCourse");
+		release.countDown();
+		
+		for (Future<String> caller: callers) {
+			assertThat(caller.get(10, TimeUnit.SECONDS)).isEqualTo("aCourse");
+		}
+		assertThat(queries.get()).isEqualTo(1);
+		assertThat(loads.getLoads()).isEqualTo(1);
+		assertThat(loads.getShared()).isEqualTo(CALLERS - 1);
+		assertThat(loads.getCollapseRatio()).isEqualTo((double) (CALLERS - 1) / CALLERS);
+		
+		// over, the next caller queries again
+		assertThat(loads.load(1, () -> "aCourse again")).isEqualTo("aCourse again");
+		assertThat(loads.getLoads()).isEqualTo(2);
+	}
+	
+	@Test
+	public void testFailureShared() throws Exception {
+		List<Future<String>> callers = concurrentLoads(1, null);
+		release.countDown();
+		
+		for (Future<String> caller: callers) {
+			Throwable thrown = catchThrowable(() -> caller.get(10, TimeUnit.SECONDS));
+			assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IllegalStateException.class);
+		}
+		assertThat(queries.get()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testOtherKeysAndForgottenKeysNotJoined() throws Exception {
+		Future<String> first = executor.submit(() -> loads.load(1, query("aCourse")));
+		while (queries.get() == 0) {
+			Thread.sleep(1);
+		}
+		
+		assertThat(loads.load(2, () -> "bCourse")).isEqualTo("bCourse");
+		// changed meanwhile
+		loads.forget(1);
+		assertThat(loads.load(1, () -> "aCourse changed")).isEqualTo("aCourse changed");
+		
+		release.countDown();
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("aCourse");
+		assertThat(loads.getLoads()).isEqualTo(3);
+		assertThat(loads.getShared()).isEqualTo(0);
+	}
+}
@@ -0,0 +1,67 @@
+package com.springboot.brushup.students.changes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.springboot.brushup.students.dto.ChangeEvent;
+
+public class ChangeBufferTest {
+
+	private final ChangeBuffer buffer = new ChangeBuffer(3);
+
+	private void add(int events) {
+		for (int i = 0; i < events; i++) {
+			buffer.add(new ChangeEvent(0, ChangeEvent.Entity.COURSE, ChangeEvent.Type.UPDATED, i, null, null, 0));
+		}
+	}
+
+	private static long[] seqs(List<ChangeEvent> events) {
+		return events.stream().mapToLong(ChangeEvent::getSeq).toArray();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertThat(buffer.getLast()).isEqualTo(0);
+		assertThat(buffer.after(0, 10)).isEmpty();
+		assertThat(buffer.after(1, 10)).isNull();
+	}
+
+	@Test
+	public void testNumbersEventsFromOne() {
+		add(2);
+
+		assertThat(buffer.getLast()).isEqualTo(2);
+		assertThat(seqs(buffer.after(0, 10))).containsExactly(1, 2);
+		assertThat(seqs(buffer.after(1, 10))).containsExactly(2);
+		assertThat(buffer.after(2, 10)).isEmpty();
+	}
+
+	@Test
+	public void testReplayLimitedToMax() {
+		add(3);
+
+		assertThat(seqs(buffer.after(0, 2))).containsExactly(1, 2);
+	}
+
+	@Test
+	public void testDroppedEventsCantBeReplayed() {
+		add(5);
+
+		// 3, 4 and 5 are kept
+		assertThat(buffer.after(1, 10)).isNull();
+		assertThat(seqs(buffer.after(2, 10))).containsExactly(3, 4, 5);
+		assertThat(buffer.after(5, 10)).isEmpty();
+	}
+
+	@Test
+	public void testUnknownSequenceNumber() {
+		add(2);
+
+		// from before a restart, or made up
+		assertThat(buffer.after(3, 10)).isNull();
+		assertThat(buffer.after(-1, 10)).isNull();
+	}
+}
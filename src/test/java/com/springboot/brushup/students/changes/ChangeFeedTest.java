@@ -0,0 +1,87 @@
+package com.springboot.brushup.students.changes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class ChangeFeedTest {
+
+	private static final int MAX_SUBSCRIBERS = 3;
+
+	private final ChangeFeed changeFeed = new ChangeFeed();
+
+	@Before
+	public void setup() {
+		ReflectionTestUtils.setField(changeFeed, "bufferSize", 10);
+		ReflectionTestUtils.setField(changeFeed, "maxSubscribers", MAX_SUBSCRIBERS);
+		ReflectionTestUtils.setField(changeFeed, "senderThreads", 1);
+		ReflectionTestUtils.setField(changeFeed, "heartbeatSeconds", 60L);
+		ReflectionTestUtils.setField(changeFeed, "streamTimeoutMillis", 60000L);
+		ReflectionTestUtils.setField(changeFeed, "registry", new MetricRegistry());
+		changeFeed.start();
+	}
+
+	@After
+	public void tearDown() {
+		changeFeed.stop();
+	}
+
+	@Test
+	public void testConcurrentSubscribersCapped() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<SseEmitter>> subscriptions = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				subscriptions.add(executor.submit((Callable<SseEmitter>) () -> changeFeed.subscribe(null)));
+			}
+
+			int subscribed = 0;
+			int rejected = 0;
+			for (Future<SseEmitter> subscription : subscriptions) {
+				try {
+					subscription.get();
+					subscribed++;
+				} catch (ExecutionException e) {
+					assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+					rejected++;
+				}
+			}
+			assertThat(subscribed).isEqualTo(MAX_SUBSCRIBERS);
+			assertThat(rejected).isEqualTo(20 - MAX_SUBSCRIBERS);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSlotGivenBackOnceWhenStreamEnds() {
+		List<SseEmitter> emitters = new ArrayList<>();
+		for (int i = 0; i < MAX_SUBSCRIBERS; i++) {
+			emitters.add(changeFeed.subscribe(null));
+		}
+		assertThat(catchThrowable(() -> changeFeed.subscribe(null))).isInstanceOf(RejectedExecutionException.class);
+
+		// timed out, then completed: the callbacks of the async request
+		((Runnable) ReflectionTestUtils.getField(emitters.get(0), "timeoutCallback")).run();
+		((Runnable) ReflectionTestUtils.getField(emitters.get(0), "completionCallback")).run();
+
+		assertThat(changeFeed.subscribe(null)).isNotNull();
+		assertThat(catchThrowable(() -> changeFeed.subscribe(null))).isInstanceOf(RejectedExecutionException.class);
+	}
+}
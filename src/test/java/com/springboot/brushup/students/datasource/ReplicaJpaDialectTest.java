@@ -0,0 +1,58 @@
+package com.springboot.brushup.students.datasource;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+public class ReplicaJpaDialectTest {
+
+	private ReplicaJpaDialect dialect;
+
+	private EntityManager entityManager;
+
+	private Session session;
+
+	@Before
+	public void setup() {
+		dialect = new ReplicaJpaDialect();
+		dialect.setPrepareConnection(false);
+		entityManager = mock(EntityManager.class);
+		session = mock(Session.class);
+		when(entityManager.unwrap(Session.class)).thenReturn(session);
+		when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+		when(session.getCacheMode()).thenReturn(CacheMode.NORMAL);
+		when(session.getFlushMode()).thenReturn(FlushMode.AUTO);
+	}
+
+	@Test
+	public void testCacheModeRestoredAfterReadOnlyTransaction() throws Exception {
+		DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+		definition.setReadOnly(true);
+
+		dialect.cleanupTransaction(dialect.beginTransaction(entityManager, definition));
+
+		InOrder inOrder = inOrder(session);
+		inOrder.verify(session).setCacheMode(CacheMode.GET);
+		inOrder.verify(session).setCacheMode(CacheMode.NORMAL);
+	}
+
+	@Test
+	public void testCacheModeUntouchedByReadWriteTransaction() throws Exception {
+		dialect.cleanupTransaction(dialect.beginTransaction(entityManager, new DefaultTransactionDefinition()));
+
+		verify(session, never()).setCacheMode(CacheMode.GET);
+	}
+}
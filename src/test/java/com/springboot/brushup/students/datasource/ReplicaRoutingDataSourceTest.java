@@ -0,0 +1,155 @@
+package com.springboot.brushup.students.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs against embedded databases, each one holding its own name.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+	private DataSource primary;
+
+	private SwitchableDataSource replica0;
+
+	private SwitchableDataSource replica1;
+
+	@Before
+	public void setup() {
+		primary = database("primary");
+		replica0 = new SwitchableDataSource(database("replica0"));
+		replica1 = new SwitchableDataSource(database("replica1"));
+	}
+
+	@Test
+	public void testReadOnlyTransactionsOnReplicasInTurn() {
+		Routing routing = new Routing(Arrays.asList(replica0, replica1), 60000);
+
+		assertThat(routing.readOnly(4)).containsExactly("replica0", "replica1", "replica0", "replica1");
+	}
+
+	@Test
+	public void testWritesOnPrimary() {
+		Routing routing = new Routing(Arrays.asList(replica0, replica1), 60000);
+
+		assertThat(routing.readWrite()).isEqualTo("primary");
+		// outside of a transaction
+		assertThat(routing.jdbc.queryForObject("select name from db", String.class)).isEqualTo("primary");
+	}
+
+	@Test
+	public void testNoReplicas() {
+		Routing routing = new Routing(Collections.emptyList(), 60000);
+
+		assertThat(routing.readOnly(2)).containsExactly("primary", "primary");
+		assertThat(routing.dataSource.getFailovers()).isEqualTo(0);
+	}
+
+	@Test
+	public void testFailedReplicaSkipped() {
+		Routing routing = new Routing(Arrays.asList(replica0, replica1), 60000);
+		replica0.down = true;
+
+		assertThat(routing.readOnly(3)).containsExactly("replica1", "replica1", "replica1");
+		assertThat(routing.dataSource.isHealthy(0)).isFalse();
+		assertThat(routing.dataSource.isHealthy(1)).isTrue();
+		// not tried again before the retry interval
+		assertThat(replica0.attempts).isEqualTo(1);
+	}
+
+	@Test
+	public void testPrimaryWhenNoReplicaLeft() {
+		Routing routing = new Routing(Arrays.asList(replica0, replica1), 60000);
+		replica0.down = true;
+		replica1.down = true;
+
+		assertThat(routing.readOnly(2)).containsExactly("primary", "primary");
+		assertThat(routing.dataSource.getFailovers()).isEqualTo(2);
+	}
+
+	@Test
+	public void testReplicaBack() {
+		Routing routing = new Routing(Arrays.asList(replica0), 0);
+		replica0.down = true;
+		assertThat(routing.readOnly(1)).containsExactly("primary");
+
+		replica0.down = false;
+		assertThat(routing.readOnly(1)).containsExactly("replica0");
+		assertThat(routing.dataSource.isHealthy(0)).isTrue();
+	}
+
+	private static DataSource database(String name) {
+		DriverManagerDataSource database = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		JdbcTemplate jdbc = new JdbcTemplate(database);
+		jdbc.execute("drop table if exists db");
+		jdbc.execute("create table db (name varchar(20))");
+		jdbc.update("insert into db values (?)", name);
+		return database;
+	}
+
+	private class Routing {
+
+		private final ReplicaRoutingDataSource dataSource;
+
+		private final JdbcTemplate jdbc;
+
+		private final DataSourceTransactionManager transactionManager;
+
+		Routing(List<DataSource> replicas, long retryMillis) {
+			dataSource = new ReplicaRoutingDataSource(primary, replicas, retryMillis);
+			DataSource lazy = new LazyConnectionDataSourceProxy(dataSource);
+			jdbc = new JdbcTemplate(lazy);
+			transactionManager = new DataSourceTransactionManager(lazy);
+		}
+
+		List<String> readOnly(int transactions) {
+			TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+			readOnly.setReadOnly(true);
+			return IntStream.range(0, transactions)
+					.mapToObj(i -> readOnly.execute(status -> jdbc.queryForObject("select name from db", String.class)))
+					.collect(Collectors.toList());
+		}
+
+		String readWrite() {
+			return new TransactionTemplate(transactionManager).execute(status -> jdbc.queryForObject("select name from db", String.class));
+		}
+	}
+
+	private static class SwitchableDataSource extends DelegatingDataSource {
+
+		private volatile boolean down;
+
+		private int attempts;
+
+		SwitchableDataSource(DataSource database) {
+			super(database);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (down) {
+				attempts++;
+				throw new SQLException("Connection refused");
+			}
+			return super.getConnection();
+		}
+	}
+}
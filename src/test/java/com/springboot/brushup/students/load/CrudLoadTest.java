@@ -0,0 +1,85 @@
+package com.springboot.brushup.students.load;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mixed workloads against every course and student endpoint, on the embedded database.
+ * Only runs with the "load" Maven profile (see the pom for the settings).
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("embedded")
+public class CrudLoadTest {
+	
+	private static final int THREADS = Integer.getInteger("load.threads", 8);
+	private static final long WARMUP_SECONDS = Long.getLong("load.warmup", 5);
+	private static final long DURATION_SECONDS = Long.getLong("load.duration", 20);
+	private static final int SEED_COURSES = Integer.getInteger("load.seed.courses", 200);
+	private static final int SEED_STUDENTS = Integer.getInteger("load.seed.students", 2000);
+	private static final String THRESHOLDS = System.getProperty("load.thresholds", Thresholds.DEFAULT_RESOURCE);
+	private static final Path REPORTS = Paths.get(System.getProperty("load.reports", "target/load"));
+	
+	// the application context (and its database) is shared by the tests of this class, so is the seeded data
+	private static LoadClient client;
+	
+	@LocalServerPort
+	private Integer serverPort;
+	
+	@Before
+	public void setup() {
+		if (client == null) {
+			client = new LoadClient("http://localhost:" + serverPort, THREADS, SEED_COURSES / 2);
+			seed();
+		}
+	}
+	
+	@Test
+	public void testReadHeavy() throws Exception {
+		run(Workload.READ_HEAVY);
+	}
+	
+	@Test
+	public void testWriteHeavy() throws Exception {
+		run(Workload.WRITE_HEAVY);
+	}
+	
+	@Test
+	public void testEnrollmentChurn() throws Exception {
+		run(Workload.ENROLLMENT_CHURN);
+	}
+	
+	private void run(Workload workload) throws Exception {
+		LoadReport report = new LoadDriver(client, THREADS).run(workload, WARMUP_SECONDS, DURATION_SECONDS);
+		report.print(System.out);
+		report.write(REPORTS);
+		
+		List<String> violations = Thresholds.load(THRESHOLDS).violations(report);
+		assertThat(violations).as("Load test thresholds exceeded").isEmpty();
+	}
+	
+	private void seed() {
+		while (client.courseIds().size() < SEED_COURSES) {
+			client.createCourses();
+		}
+		while (client.studentIds().size() < SEED_STUDENTS) {
+			client.createStudents();
+		}
+		log.info("Seeded " + client.courseIds().size() + " courses and " + client.studentIds().size() + " students");
+	}
+}
@@ -0,0 +1,50 @@
+package com.springboot.brushup.students.load;
+
+import java.util.function.ToIntFunction;
+
+import com.springboot.brushup.students.rest.constants.RestPaths;
+
+/**
+ * The endpoints exercised by the load test (every course and student endpoint).
+ * Enrollment changes go through the student PUT, the owner of the relationship.
+ */
+enum Endpoint {
+
+	GET_COURSE("GET " + RestPaths.COURSES + "/{id}", LoadClient::getCourse),
+	GET_COURSES("GET " + RestPaths.COURSES, LoadClient::getCourses),
+	CREATE_COURSE("POST " + RestPaths.COURSES, LoadClient::createCourse),
+	CREATE_COURSES("POST " + RestPaths.COURSES + "/batch", LoadClient::createCourses),
+	UPDATE_COURSE("PUT " + RestPaths.COURSES, LoadClient::updateCourse),
+	DELETE_COURSE("DELETE " + RestPaths.COURSES + "/{id}", LoadClient::deleteCourse),
+
+	GET_STUDENT("GET " + RestPaths.STUDENTS + "/{id}", LoadClient::getStudent),
+	GET_STUDENT_DETAIL("GET " + RestPaths.STUDENTS + "/{id}/detail", LoadClient::getStudentDetail),
+	GET_STUDENTS("GET " + RestPaths.STUDENTS, LoadClient::getStudents),
+	EXPORT_STUDENTS("GET " + RestPaths.STUDENTS + "/export", LoadClient::exportStudents),
+	CREATE_STUDENT("POST " + RestPaths.STUDENTS, LoadClient::createStudent),
+	CREATE_STUDENTS("POST " + RestPaths.STUDENTS + "/batch", LoadClient::createStudents),
+	// includes the GET of the current student
+	UPDATE_STUDENT("GET+PUT " + RestPaths.STUDENTS, LoadClient::updateStudent),
+	REENROLL_STUDENT("PUT " + RestPaths.STUDENTS + " (courses)", LoadClient::reenrollStudent),
+	DELETE_STUDENT("DELETE " + RestPaths.STUDENTS + "/{id}", LoadClient::deleteStudent);
+
+	private final String label;
+
+	private final ToIntFunction<LoadClient> call;
+
+	Endpoint(String label, ToIntFunction<LoadClient> call) {
+		this.label = label;
+		this.call = call;
+	}
+
+	String label() {
+		return label;
+	}
+
+	/**
+	 * @return the HTTP status, or {@link LoadClient#SKIPPED}
+	 */
+	int call(LoadClient client) {
+		return call.applyAsInt(client);
+	}
+}
@@ -0,0 +1,68 @@
+package com.springboot.brushup.students.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * IDs of the rows the load test knows about, picked at random by the workers.
+ */
+class IdPool {
+
+	private final List<Integer> ids = new ArrayList<>();
+
+	// deletes stop below this size, so reads always have something to find
+	private final int floor;
+
+	IdPool(int floor) {
+		this.floor = floor;
+	}
+
+	synchronized void add(Integer id) {
+		if (id != null) {
+			ids.add(id);
+		}
+	}
+
+	/**
+	 * @return a random known ID, or null if there are none
+	 */
+	synchronized Integer random() {
+		return (ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+	}
+
+	/**
+	 * @return up to count distinct random IDs
+	 */
+	synchronized List<Integer> random(int count) {
+		List<Integer> picked = new ArrayList<>(count);
+		for (int i = 0; i < count && i < ids.size(); i++) {
+			Integer id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+			if (!picked.contains(id)) {
+				picked.add(id);
+			}
+		}
+		return picked;
+	}
+
+	/**
+	 * Removes a random ID, to be deleted by the caller.
+	 * 
+	 * @return the ID, or null if the pool is at its floor
+	 */
+	synchronized Integer take() {
+		if (ids.size() <= floor) {
+			return null;
+		}
+		int index = ThreadLocalRandom.current().nextInt(ids.size());
+		// swap with the last one, removing from the end doesn't shift the list
+		Integer id = ids.get(index);
+		ids.set(index, ids.get(ids.size() - 1));
+		ids.remove(ids.size() - 1);
+		return id;
+	}
+
+	synchronized int size() {
+		return ids.size();
+	}
+}
@@ -0,0 +1,257 @@
+package com.springboot.brushup.students.load;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.rest.constants.RestPaths;
+
+/**
+ * HTTP client of the load test, one method per endpoint call.
+ * Every call returns the HTTP status, or {@link #SKIPPED} when there was nothing to call it on.
+ * Error statuses are returned, not thrown, so they can be counted.
+ */
+class LoadClient {
+
+	static final int SKIPPED = -1;
+
+	static final int BATCH_SIZE = 20;
+
+	static final int PAGE_SIZE = 100;
+
+	static final int COURSES_PER_STUDENT = 5;
+
+	private final RestTemplate rest;
+
+	private final String baseUrl;
+
+	private final IdPool courseIds;
+
+	private final IdPool studentIds;
+
+	// names are unique in both tables, the run prefix keeps them unique across runs against the same database
+	private final String runPrefix = UUID.randomUUID().toString().substring(0, 8);
+
+	private final AtomicLong nameSequence = new AtomicLong();
+
+	LoadClient(String baseUrl, int connections, int minimumRows) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(connections);
+		connectionManager.setDefaultMaxPerRoute(connections);
+
+		this.rest = new RestTemplate(new HttpComponentsClientHttpRequestFactory(
+				HttpClients.custom().setConnectionManager(connectionManager).build()));
+		this.rest.setErrorHandler(new DefaultResponseErrorHandler() {
+			@Override
+			public boolean hasError(ClientHttpResponse response) {
+				return false;
+			}
+		});
+		this.baseUrl = baseUrl;
+		this.courseIds = new IdPool(minimumRows);
+		this.studentIds = new IdPool(minimumRows);
+	}
+
+	IdPool courseIds() {
+		return courseIds;
+	}
+
+	IdPool studentIds() {
+		return studentIds;
+	}
+
+	/*********************************************************************************************/
+	/** Courses                                                                                 **/
+	/*********************************************************************************************/
+
+	int getCourse() {
+		Integer id = courseIds.random();
+		if (id == null) {
+			return SKIPPED;
+		}
+		return rest.getForEntity(baseUrl + RestPaths.COURSES + "/" + id, byte[].class).getStatusCodeValue();
+	}
+
+	int getCourses() {
+		return getPage(RestPaths.COURSES, courseIds);
+	}
+
+	int createCourse() {
+		ResponseEntity<Course> response = rest.postForEntity(baseUrl + RestPaths.COURSES, newCourse(), Course.class);
+		if (response.getStatusCode().is2xxSuccessful()) {
+			courseIds.add(response.getBody().getId());
+		}
+		return response.getStatusCodeValue();
+	}
+
+	int createCourses() {
+		List<Course> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch.add(newCourse());
+		}
+		return postBatch(RestPaths.COURSES, batch, courseIds);
+	}
+
+	int updateCourse() {
+		Integer id = courseIds.random();
+		if (id == null) {
+			return SKIPPED;
+		}
+		Course course = Course.builder().id(id).name(newName("course")).build();
+		// whatever the version, the course is not read first
+		return rest.exchange(baseUrl + RestPaths.COURSES, HttpMethod.PUT, new HttpEntity<>(course, ifMatch("*")), byte[].class).getStatusCodeValue();
+	}
+
+	int deleteCourse() {
+		return delete(RestPaths.COURSES, courseIds);
+	}
+
+	/*********************************************************************************************/
+	/** Students                                                                                **/
+	/*********************************************************************************************/
+
+	int getStudent() {
+		Integer id = studentIds.random();
+		if (id == null) {
+			return SKIPPED;
+		}
+		return rest.getForEntity(baseUrl + RestPaths.STUDENTS + "/" + id, byte[].class).getStatusCodeValue();
+	}
+
+	int getStudentDetail() {
+		Integer id = studentIds.random();
+		if (id == null) {
+			return SKIPPED;
+		}
+		return rest.getForEntity(baseUrl + RestPaths.STUDENTS + "/" + id + "/detail", byte[].class).getStatusCodeValue();
+	}
+
+	int getStudents() {
+		return getPage(RestPaths.STUDENTS, studentIds);
+	}
+
+	int exportStudents() {
+		// the whole stream is read, latency is the time to the last byte
+		return rest.getForEntity(baseUrl + RestPaths.STUDENTS + "/export", byte[].class).getStatusCodeValue();
+	}
+
+	int createStudent() {
+		ResponseEntity<Student> response = rest.postForEntity(baseUrl + RestPaths.STUDENTS, newStudent(null), Student.class);
+		if (response.getStatusCode().is2xxSuccessful()) {
+			studentIds.add(response.getBody().getId());
+		}
+		return response.getStatusCodeValue();
+	}
+
+	int createStudents() {
+		List<Student> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch.add(newStudent(null));
+		}
+		return postBatch(RestPaths.STUDENTS, batch, studentIds);
+	}
+
+	/**
+	 * Renames a student, keeping its enrollments (as far as the client knows them).
+	 */
+	int updateStudent() {
+		Integer id = studentIds.random();
+		if (id == null) {
+			return SKIPPED;
+		}
+		ResponseEntity<Student> current = rest.getForEntity(baseUrl + RestPaths.STUDENTS + "/" + id, Student.class);
+		if (!current.getStatusCode().is2xxSuccessful()) {
+			return current.getStatusCodeValue();
+		}
+		Student student = current.getBody().toBuilder().name(newName("student")).build();
+		return putStudent(student, current.getHeaders().getETag());
+	}
+
+	/**
+	 * Replaces the enrollments of a student with a new random set of courses.
+	 */
+	int reenrollStudent() {
+		Integer id = studentIds.random();
+		if (id == null) {
+			return SKIPPED;
+		}
+		return putStudent(newStudent(id), "*");
+	}
+
+	int deleteStudent() {
+		return delete(RestPaths.STUDENTS, studentIds);
+	}
+
+	/*********************************************************************************************/
+	/** Helpers                                                                                 **/
+	/*********************************************************************************************/
+
+	private int getPage(String path, IdPool ids) {
+		// mostly first pages, like clients starting a listing, and some deeper ones
+		Integer after = (ThreadLocalRandom.current().nextInt(4) == 0 ? ids.random() : null);
+		String url = baseUrl + path + "?limit=" + PAGE_SIZE + (after != null ? "&after=" + after : "");
+		return rest.getForEntity(url, byte[].class).getStatusCodeValue();
+	}
+
+	private int postBatch(String path, List<?> batch, IdPool ids) {
+		ResponseEntity<BatchResult> response = rest.postForEntity(baseUrl + path + "/batch", batch, BatchResult.class);
+		if (response.getBody() != null && response.getBody().getRows() != null) {
+			response.getBody().getRows().forEach(row -> ids.add(row.getId()));
+		}
+		return response.getStatusCodeValue();
+	}
+
+	private int putStudent(Student student, String etag) {
+		return rest.exchange(baseUrl + RestPaths.STUDENTS, HttpMethod.PUT, new HttpEntity<>(student, ifMatch(etag)), byte[].class).getStatusCodeValue();
+	}
+
+	private static HttpHeaders ifMatch(String etag) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfMatch(etag);
+		return headers;
+	}
+
+	private int delete(String path, IdPool ids) {
+		Integer id = ids.take();
+		if (id == null) {
+			return SKIPPED;
+		}
+		return rest.exchange(baseUrl + path + "/" + id, HttpMethod.DELETE, null, byte[].class).getStatusCodeValue();
+	}
+
+	private Course newCourse() {
+		return Course.builder().name(newName("course")).build();
+	}
+
+	private Student newStudent(Integer id) {
+		Student.StudentBuilder student = Student.builder()
+				.id(id)
+				.name(newName("student"))
+				.startDt(new Timestamp(System.currentTimeMillis()));
+		for (Integer courseId: courseIds.random(COURSES_PER_STUDENT)) {
+			student.course(Course.builder().id(courseId).build());
+		}
+		return student.build();
+	}
+
+	private String newName(String kind) {
+		return kind + "-" + runPrefix + "-" + nameSequence.incrementAndGet();
+	}
+}
@@ -0,0 +1,77 @@
+package com.springboot.brushup.students.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs a workload from a fixed number of threads, each calling endpoints back to back (closed loop).
+ * 
+ * A closed loop sends less while the server is slow, so its percentiles understate what clients at a fixed
+ * rate would see (coordinated omission). They are comparable between runs though, which is what the
+ * thresholds are for.
+ */
+@Slf4j
+class LoadDriver {
+
+	private final LoadClient client;
+
+	private final int threads;
+
+	LoadDriver(LoadClient client, int threads) {
+		this.client = client;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs the workload for the warmup (not reported), then for the measured duration.
+	 */
+	LoadReport run(Workload workload, long warmupSeconds, long durationSeconds) throws Exception {
+		log.info("Warming up " + workload.key() + " for " + warmupSeconds + "s");
+		runFor(workload, warmupSeconds, new LoadReport(workload));
+
+		log.info("Measuring " + workload.key() + " for " + durationSeconds + "s with " + threads + " threads");
+		LoadReport report = new LoadReport(workload);
+		long start = System.nanoTime();
+		runFor(workload, durationSeconds, report);
+		report.finish(System.nanoTime() - start);
+		return report;
+	}
+
+	private void runFor(Workload workload, long seconds, LoadReport report) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<>(threads);
+			for (int i = 0; i < threads; i++) {
+				workers.add(executor.submit(() -> work(workload, deadline, report)));
+			}
+			for (Future<?> worker: workers) {
+				worker.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void work(Workload workload, long deadline, LoadReport report) {
+		while (System.nanoTime() < deadline) {
+			Endpoint endpoint = workload.next();
+			long start = System.nanoTime();
+			try {
+				int status = endpoint.call(client);
+				if (status != LoadClient.SKIPPED) {
+					report.record(endpoint, status, System.nanoTime() - start);
+				}
+			} catch (RuntimeException e) {
+				log.warn("Call to " + endpoint.label() + " failed: " + e);
+				report.recordFailure(endpoint, System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.springboot.brushup.students.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies (HdrHistogram, in microseconds) and outcome counts per endpoint, for one workload run.
+ */
+class LoadReport {
+
+	static final double MICROS_PER_MILLI = 1000.0;
+
+	private final Workload workload;
+
+	private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+
+	private long elapsedNanos;
+
+	LoadReport(Workload workload) {
+		this.workload = workload;
+		for (Endpoint endpoint: Endpoint.values()) {
+			stats.put(endpoint, new EndpointStats());
+		}
+	}
+
+	Workload workload() {
+		return workload;
+	}
+
+	void record(Endpoint endpoint, int status, long latencyNanos) {
+		EndpointStats endpointStats = stats.get(endpoint);
+		endpointStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+		if (status >= 500 || status == 0) {
+			endpointStats.failed.increment();
+		} else if (status >= 400) {
+			// expected under concurrency, like deleting a row another worker deleted first
+			endpointStats.rejected.increment();
+		}
+	}
+
+	/**
+	 * A call that didn't get any response (connection errors, timeouts).
+	 */
+	void recordFailure(Endpoint endpoint, long latencyNanos) {
+		record(endpoint, 0, latencyNanos);
+	}
+
+	void finish(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	EndpointStats stats(Endpoint endpoint) {
+		return stats.get(endpoint);
+	}
+
+	long totalCount() {
+		return stats.values().stream().mapToLong(EndpointStats::count).sum();
+	}
+
+	long totalFailed() {
+		return stats.values().stream().mapToLong(EndpointStats::failed).sum();
+	}
+
+	double throughput() {
+		return totalCount() / (elapsedNanos / 1e9);
+	}
+
+	void print(PrintStream out) {
+		out.println();
+		out.println(String.format("Workload %s: %d requests in %.1fs, %.1f req/s, %d failed",
+				workload.key(), totalCount(), elapsedNanos / 1e9, throughput(), totalFailed()));
+		out.println(String.format("%-36s %8s %8s %8s %10s %10s %10s %10s",
+				"endpoint", "count", "4xx", "failed", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+		for (Map.Entry<Endpoint, EndpointStats> entry: stats.entrySet()) {
+			EndpointStats endpointStats = entry.getValue();
+			if (endpointStats.count() > 0) {
+				out.println(String.format("%-36s %8d %8d %8d %10.2f %10.2f %10.2f %10.2f",
+						entry.getKey().label(), endpointStats.count(), endpointStats.rejected(), endpointStats.failed(),
+						endpointStats.percentileMillis(50), endpointStats.percentileMillis(99),
+						endpointStats.percentileMillis(99.9), endpointStats.maxMillis()));
+			}
+		}
+	}
+
+	/**
+	 * Writes the summary as CSV, plus the full latency distribution of every endpoint (HdrHistogram .hgrm format).
+	 */
+	void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Path summary = directory.resolve(workload.key() + ".csv");
+		try (PrintStream out = new PrintStream(Files.newOutputStream(summary), false, StandardCharsets.UTF_8.name())) {
+			out.println("endpoint,count,rejected,failed,p50_ms,p99_ms,p999_ms,max_ms,throughput_rps");
+			for (Map.Entry<Endpoint, EndpointStats> entry: stats.entrySet()) {
+				EndpointStats endpointStats = entry.getValue();
+				if (endpointStats.count() > 0) {
+					out.println(String.format("%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.1f",
+							entry.getKey(), endpointStats.count(), endpointStats.rejected(), endpointStats.failed(),
+							endpointStats.percentileMillis(50), endpointStats.percentileMillis(99),
+							endpointStats.percentileMillis(99.9), endpointStats.maxMillis(),
+							endpointStats.count() / (elapsedNanos / 1e9)));
+				}
+			}
+			out.println(String.format("TOTAL,%d,,%d,,,,,%.1f", totalCount(), totalFailed(), throughput()));
+		}
+		for (Map.Entry<Endpoint, EndpointStats> entry: stats.entrySet()) {
+			if (entry.getValue().count() > 0) {
+				Path distribution = directory.resolve(workload.key() + "-" + entry.getKey() + ".hgrm");
+				try (PrintStream out = new PrintStream(Files.newOutputStream(distribution), false, StandardCharsets.UTF_8.name())) {
+					entry.getValue().latency.outputPercentileDistribution(out, MICROS_PER_MILLI);
+				}
+			}
+		}
+	}
+
+	static class EndpointStats {
+
+		// auto resizing, the slowest call can't be known up front
+		private final Histogram latency = new ConcurrentHistogram(3);
+
+		private final LongAdder rejected = new LongAdder();
+
+		private final LongAdder failed = new LongAdder();
+
+		long count() {
+			return latency.getTotalCount();
+		}
+
+		long rejected() {
+			return rejected.sum();
+		}
+
+		long failed() {
+			return failed.sum();
+		}
+
+		double percentileMillis(double percentile) {
+			return latency.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+		}
+
+		double maxMillis() {
+			return latency.getMaxValue() / MICROS_PER_MILLI;
+		}
+	}
+}
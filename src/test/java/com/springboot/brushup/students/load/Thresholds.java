@@ -0,0 +1,83 @@
+package com.springboot.brushup.students.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Limits a load test run must stay within, read from a properties file:
+ * <pre>
+ * &lt;workload&gt;.throughput.min           requests per second, all endpoints together
+ * &lt;workload&gt;.failed.max               5xx and connection errors, all endpoints together
+ * &lt;workload&gt;.&lt;ENDPOINT&gt;.&lt;p50|p99|p999&gt;.ms   latency percentile of an endpoint, * for any endpoint
+ * </pre>
+ * Limits that are not set are not checked.
+ */
+class Thresholds {
+
+	static final String DEFAULT_RESOURCE = "/load/thresholds.properties";
+
+	private static final String ANY_ENDPOINT = "*";
+
+	private final Properties limits;
+
+	private Thresholds(Properties limits) {
+		this.limits = limits;
+	}
+
+	static Thresholds load(String resource) throws IOException {
+		Properties limits = new Properties();
+		try (InputStream in = Thresholds.class.getResourceAsStream(resource)) {
+			if (in == null) {
+				throw new IOException("No load test thresholds found at " + resource);
+			}
+			limits.load(in);
+		}
+		return new Thresholds(limits);
+	}
+
+	/**
+	 * @return a description of every limit the report exceeds, empty if it passed
+	 */
+	List<String> violations(LoadReport report) {
+		List<String> violations = new ArrayList<>();
+		String workload = report.workload().key();
+
+		Double minThroughput = limit(workload + ".throughput.min");
+		if (minThroughput != null && report.throughput() < minThroughput) {
+			violations.add(String.format("%s: throughput %.1f req/s below %.1f", workload, report.throughput(), minThroughput));
+		}
+		Double maxFailed = limit(workload + ".failed.max");
+		if (maxFailed != null && report.totalFailed() > maxFailed) {
+			violations.add(String.format("%s: %d failed requests, at most %.0f allowed", workload, report.totalFailed(), maxFailed));
+		}
+
+		for (Endpoint endpoint: Endpoint.values()) {
+			LoadReport.EndpointStats stats = report.stats(endpoint);
+			if (stats.count() == 0) {
+				continue;
+			}
+			check(violations, workload, endpoint, "p50", stats.percentileMillis(50));
+			check(violations, workload, endpoint, "p99", stats.percentileMillis(99));
+			check(violations, workload, endpoint, "p999", stats.percentileMillis(99.9));
+		}
+		return violations;
+	}
+
+	private void check(List<String> violations, String workload, Endpoint endpoint, String percentile, double valueMillis) {
+		Double limit = limit(workload + "." + endpoint + "." + percentile + ".ms");
+		if (limit == null) {
+			limit = limit(workload + "." + ANY_ENDPOINT + "." + percentile + ".ms");
+		}
+		if (limit != null && valueMillis > limit) {
+			violations.add(String.format("%s: %s %s %.2f ms above %.2f ms", workload, endpoint.label(), percentile, valueMillis, limit));
+		}
+	}
+
+	private Double limit(String key) {
+		String value = limits.getProperty(key);
+		return (value != null ? Double.valueOf(value.trim()) : null);
+	}
+}
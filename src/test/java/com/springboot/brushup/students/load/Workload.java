@@ -0,0 +1,83 @@
+package com.springboot.brushup.students.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mixes of endpoint calls, as relative weights.
+ */
+enum Workload {
+
+	READ_HEAVY("read-heavy") {{
+		weight(Endpoint.GET_COURSE, 25);
+		weight(Endpoint.GET_COURSES, 10);
+		weight(Endpoint.GET_STUDENT, 25);
+		weight(Endpoint.GET_STUDENT_DETAIL, 15);
+		weight(Endpoint.GET_STUDENTS, 10);
+		weight(Endpoint.EXPORT_STUDENTS, 1);
+		weight(Endpoint.CREATE_COURSE, 2);
+		weight(Endpoint.UPDATE_COURSE, 2);
+		weight(Endpoint.CREATE_STUDENT, 3);
+		weight(Endpoint.UPDATE_STUDENT, 3);
+		weight(Endpoint.REENROLL_STUDENT, 2);
+		weight(Endpoint.DELETE_STUDENT, 1);
+		weight(Endpoint.DELETE_COURSE, 1);
+	}},
+
+	WRITE_HEAVY("write-heavy") {{
+		weight(Endpoint.CREATE_COURSE, 10);
+		weight(Endpoint.CREATE_COURSES, 3);
+		weight(Endpoint.UPDATE_COURSE, 10);
+		weight(Endpoint.DELETE_COURSE, 4);
+		weight(Endpoint.CREATE_STUDENT, 15);
+		weight(Endpoint.CREATE_STUDENTS, 3);
+		weight(Endpoint.UPDATE_STUDENT, 15);
+		weight(Endpoint.DELETE_STUDENT, 8);
+		weight(Endpoint.GET_COURSE, 10);
+		weight(Endpoint.GET_STUDENT, 10);
+		weight(Endpoint.GET_STUDENTS, 5);
+	}},
+
+	ENROLLMENT_CHURN("enrollment-churn") {{
+		weight(Endpoint.REENROLL_STUDENT, 50);
+		weight(Endpoint.GET_STUDENT, 20);
+		weight(Endpoint.GET_STUDENT_DETAIL, 10);
+		weight(Endpoint.GET_COURSE, 15);
+		weight(Endpoint.DELETE_COURSE, 2);
+		weight(Endpoint.CREATE_COURSE, 3);
+	}};
+
+	private final String key;
+
+	private final Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+
+	private int totalWeight;
+
+	Workload(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Name of the workload in the thresholds and reports.
+	 */
+	String key() {
+		return key;
+	}
+
+	void weight(Endpoint endpoint, int weight) {
+		weights.put(endpoint, weight);
+		totalWeight += weight;
+	}
+
+	Endpoint next() {
+		int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (Map.Entry<Endpoint, Integer> weight: weights.entrySet()) {
+			pick -= weight.getValue();
+			if (pick < 0) {
+				return weight.getKey();
+			}
+		}
+		throw new IllegalStateException("Weights changed while picking");
+	}
+}
@@ -0,0 +1,64 @@
+package com.springboot.brushup.students.logging;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+
+public class SampledDebugTurboFilterTest {
+
+	private final LoggerContext context = new LoggerContext();
+
+	private final Logger ours = context.getLogger("com.springboot.brushup.students.rest.CourseService");
+
+	private final Logger theirs = context.getLogger("org.springframework.web.servlet.DispatcherServlet");
+
+	private final SampledDebugTurboFilter filter = new SampledDebugTurboFilter();
+
+	@Before
+	public void setup() {
+		filter.setLoggerPrefix("com.springboot.brushup");
+		filter.start();
+	}
+
+	@After
+	public void tearDown() {
+		MDC.clear();
+	}
+
+	@Test
+	public void testDebugDeniedWhenNotSampled() {
+		MDC.put(LogSamplingFilter.SAMPLED, "false");
+
+		assertThat(filter.decide(null, ours, Level.DEBUG, "Finding course with id {}", new Object[] { 1 }, null)).isEqualTo(FilterReply.DENY);
+		assertThat(filter.decide(null, ours, Level.TRACE, null, null, null)).isEqualTo(FilterReply.DENY);
+	}
+
+	@Test
+	public void testDebugLetThroughWhenSampled() {
+		MDC.put(LogSamplingFilter.SAMPLED, "true");
+
+		assertThat(filter.decide(null, ours, Level.DEBUG, "Finding course with id {}", new Object[] { 1 }, null)).isEqualTo(FilterReply.NEUTRAL);
+	}
+
+	@Test
+	public void testDebugLetThroughOutsideOfRequests() {
+		assertThat(filter.decide(null, ours, Level.DEBUG, "Starting roster import {}", new Object[] { 1 }, null)).isEqualTo(FilterReply.NEUTRAL);
+	}
+
+	@Test
+	public void testOtherLevelsAndLoggersLeftAlone() {
+		MDC.put(LogSamplingFilter.SAMPLED, "false");
+
+		assertThat(filter.decide(null, ours, Level.INFO, null, null, null)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(filter.decide(null, ours, Level.ERROR, null, null, null)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(filter.decide(null, theirs, Level.DEBUG, null, null, null)).isEqualTo(FilterReply.NEUTRAL);
+	}
+}
@@ -0,0 +1,141 @@
+package com.springboot.brushup.students.metrics;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.web.context.request.WebRequest;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.rest.BinaryFormats;
+import com.springboot.brushup.students.rest.CourseService;
+import com.springboot.brushup.students.rest.exceptions.NotFoundException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TimingAspectTest {
+
+	@InjectMocks
+	private TimingAspect timingAspect;
+	
+	@Spy
+	private MetricRegistry registry = new MetricRegistry();
+	
+	@Mock
+	private ProceedingJoinPoint call;
+	
+	@Mock
+	private MethodSignature signature;
+	
+	@Before
+	public void setup() {
+		when(call.getSignature()).thenReturn(signature);
+	}
+	
+	@Test
+	public void testHandlerTimed() throws Throwable {
+		when(signature.getMethod()).thenReturn(CourseService.class.getMethod("getCourse", Integer.class, WebRequest.class));
+		when(call.proceed()).thenReturn("result");
+		
+		assertThat(timingAspect.timeHandler(call)).isEqualTo("result");
+		assertThat(timingAspect.timeHandler(call)).isEqualTo("result");
+		
+		assertThat(registry.timer("rest.CourseService.getCourse").getCount()).isEqualTo(2);
+		assertThat(registry.meter("rest.CourseService.getCourse.errors").getCount()).isEqualTo(0);
+	}
+	
+	@Test
+	public void testCallableHandlerTimedOnceWhileCalled() throws Throwable {
+		when(signature.getMethod()).thenReturn(CourseService.class.getMethod("getCourse", Integer.class, WebRequest.class));
+		when(call.proceed()).thenReturn((Callable<String>) () -> "result");
+		
+		Callable<?> callable = (Callable<?>) timingAspect.timeHandler(call);
+		
+		assertThat(registry.timer("rest.CourseService.getCourse").getCount()).isEqualTo(0);
+		assertThat(callable.call()).isEqualTo("result");
+		assertThat(registry.timer("rest.CourseService.getCourse").getCount()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testHandlerErrorCounted() throws Throwable {
+		when(signature.getMethod()).thenReturn(CourseService.class.getMethod("getCourse", Integer.class, WebRequest.class));
+		when(call.proceed()).thenThrow(new NotFoundException("not found"));
+		
+		assertThatThrownBy(() -> timingAspect.timeHandler(call)).isInstanceOf(NotFoundException.class);
+		
+		assertThat(registry.timer("rest.CourseService.getCourse").getCount()).isEqualTo(1);
+		assertThat(registry.meter("rest.CourseService.getCourse.errors").getCount()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testInheritedRepositoryMethodNamedAfterRepository() throws Throwable {
+		Method findOne = CrudRepository.class.getMethod("findOne", java.io.Serializable.class);
+		when(signature.getMethod()).thenReturn(findOne);
+		
+		timingAspect.timeCourseRepository(call);
+		timingAspect.timeStudentRepository(call);
+		
+		assertThat(registry.timer("repository.CourseRepository.findOne").getCount()).isEqualTo(1);
+		assertThat(registry.timer("repository.StudentRepository.findOne").getCount()).isEqualTo(1);
+	}
+	
+	@Test
+	public void testSerializationTimerName() {
+		assertThat(SerializationTimers.name(Course.class)).isEqualTo("Course");
+		assertThat(SerializationTimers.name(new TypeReference<List<Course>>() {}.getType())).isEqualTo("List.Course");
+	}
+	
+	@Test
+	public void testBinarySerializationTimedPerFormat() throws Exception {
+		ObjectMapper smile = BinaryFormats.objectMapper(new SmileFactory(), Jackson2ObjectMapperBuilder.json());
+		TimedBinaryJackson2HttpMessageConverter converter = new TimedBinaryJackson2HttpMessageConverter(smile, BinaryFormats.SMILE, "smile", registry, 2048);
+		List<Course> courses = Arrays.asList(Course.builder().id(1).name("aCourse").build());
+		MockHttpOutputMessage output = new MockHttpOutputMessage();
+		
+		converter.write(courses, new TypeReference<List<Course>>() {}.getType(), BinaryFormats.SMILE, output);
+		
+		assertThat(registry.timer("serialization.smile.List.Course").getCount()).isEqualTo(1);
+		assertThat(output.getHeaders().getContentType()).isEqualTo(BinaryFormats.SMILE);
+		assertThat(smile.readValue(output.getBodyAsBytes(), Course[].class)).containsExactly(courses.get(0));
+		assertThat(output.getHeaders().getContentLength()).isEqualTo(output.getBodyAsBytes().length);
+	}
+	
+	@Test
+	public void testLargeBodiesStreamedWithoutContentLength() throws Exception {
+		ObjectMapper cbor = BinaryFormats.objectMapper(new CBORFactory(), Jackson2ObjectMapperBuilder.json());
+		TimedBinaryJackson2HttpMessageConverter converter = new TimedBinaryJackson2HttpMessageConverter(cbor, BinaryFormats.CBOR, "cbor", registry, 64);
+		List<Course> courses = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			courses.add(Course.builder().id(i).name("course" + i).build());
+		}
+		MockHttpOutputMessage output = new MockHttpOutputMessage();
+		
+		converter.write(courses, new TypeReference<List<Course>>() {}.getType(), BinaryFormats.CBOR, output);
+		
+		assertThat(registry.timer("serialization.cbor.List.Course").getCount()).isEqualTo(1);
+		assertThat(output.getHeaders().getContentType()).isEqualTo(BinaryFormats.CBOR);
+		assertThat(output.getHeaders().getContentLength()).isEqualTo(-1);
+		assertThat(cbor.readValue(output.getBodyAsBytes(), Course[].class)).containsExactlyElementsOf(courses);
+	}
+}
@@ -0,0 +1,224 @@
+package com.springboot.brushup.students.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static com.jayway.restassured.config.DecoderConfig.decoderConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import com.github.springtestdbunit.annotation.DatabaseTearDown;
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.config.RestAssuredConfig;
+import com.jayway.restassured.http.ContentType;
+import com.jayway.restassured.response.Response;
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.batch.BatchResult.RowResult;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.metrics.TimedJackson2HttpMessageConverter;
+import com.springboot.brushup.students.rest.constants.RestPaths;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the payload size and the encoding time of a page of students in JSON, Smile and CBOR,
+ * and checks the compression of the large responses.
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT)
+@TestExecutionListeners({
+	DependencyInjectionTestExecutionListener.class,
+    DirtiesContextTestExecutionListener.class,
+    DbUnitTestExecutionListener.class }
+)
+public class BinaryFormatsIT {
+
+	protected static final String DATASET_EMPTY = "classpath:datasets/empty.xml";
+
+	private static final int COURSES = 20;
+	private static final int STUDENTS = 100;
+	private static final int COURSES_PER_STUDENT = 5;
+	private static final int ENCODINGS = 50;
+
+	// raw bodies: the client would otherwise ask for gzip, and inflate it before we get to see its size
+	private static final RestAssuredConfig RAW = RestAssuredConfig.config().decoderConfig(decoderConfig().noContentDecoders());
+
+	@LocalServerPort
+	private Integer serverPort;
+
+	@Autowired
+	private MetricRegistry registry;
+
+	@Before
+	public void setup() {
+		RestAssured.port = serverPort;
+	}
+
+	@DatabaseSetup(BinaryFormatsIT.DATASET_EMPTY)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value= {BinaryFormatsIT.DATASET_EMPTY})
+	@Test
+	public void testBinaryFormatsSmallerThanJson() throws IOException {
+		createStudents();
+
+		byte[] json = getStudents(MediaType.APPLICATION_JSON_VALUE, null).asByteArray();
+		byte[] smile = getStudents(BinaryFormats.SMILE_VALUE, null).asByteArray();
+		byte[] cbor = getStudents(BinaryFormats.CBOR_VALUE, null).asByteArray();
+		log.info("Page of {} students: JSON {} bytes, Smile {} bytes, CBOR {} bytes", STUDENTS, json.length, smile.length, cbor.length);
+
+		assertThat(smile.length).isLessThan(json.length);
+		assertThat(cbor.length).isLessThan(json.length);
+
+		// same students, same courses
+		Student[] fromJson = Jackson2ObjectMapperBuilder.json().build().readValue(json, Student[].class);
+		Student[] fromSmile = binaryMapper(new SmileFactory()).readValue(smile, Student[].class);
+		Student[] fromCbor = binaryMapper(new CBORFactory()).readValue(cbor, Student[].class);
+		assertThat(fromJson).hasSize(STUDENTS);
+		assertThat(fromSmile).containsExactly(fromJson);
+		assertThat(fromCbor).containsExactly(fromJson);
+		for (int i = 0; i < STUDENTS; i++) {
+			assertThat(fromSmile[i].getCourses()).isEqualTo(fromJson[i].getCourses());
+			assertThat(fromCbor[i].getCourses()).isEqualTo(fromJson[i].getCourses());
+		}
+	}
+
+	@DatabaseSetup(BinaryFormatsIT.DATASET_EMPTY)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value= {BinaryFormatsIT.DATASET_EMPTY})
+	@Test
+	public void testEncodingTimes() {
+		createStudents();
+
+		String[] formats = { MediaType.APPLICATION_JSON_VALUE, BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE };
+		String[] timers = { "", "smile.", "cbor." };
+		long[] before = new long[formats.length];
+		for (int f = 0; f < formats.length; f++) {
+			before[f] = timer(timers[f]).getCount();
+		}
+		for (int i = 0; i < ENCODINGS; i++) {
+			for (String format: formats) {
+				getStudents(format, null);
+			}
+		}
+
+		// the server side serialization timers, without the network and the client
+		for (int f = 0; f < formats.length; f++) {
+			Timer timer = timer(timers[f]);
+			assertThat(timer.getCount() - before[f]).isEqualTo(ENCODINGS);
+			log.info("Encoding of a page of {} students in {}: mean {} us, p99 {} us", STUDENTS, formats[f],
+					(long) timer.getSnapshot().getMean() / 1000, (long) timer.getSnapshot().get99thPercentile() / 1000);
+		}
+	}
+
+	@DatabaseSetup(BinaryFormatsIT.DATASET_EMPTY)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value= {BinaryFormatsIT.DATASET_EMPTY})
+	@Test
+	public void testLargeResponsesCompressed() {
+		createStudents();
+
+		for (String format: new String[] { MediaType.APPLICATION_JSON_VALUE, BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE }) {
+			int plain = getStudents(format, null).asByteArray().length;
+			Response gzipped = getStudents(format, "gzip");
+			log.info("Page of {} students in {}: {} bytes, {} bytes gzipped", STUDENTS, format, plain, gzipped.asByteArray().length);
+
+			assertThat(gzipped.header(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+			assertThat(gzipped.asByteArray().length).isLessThan(plain);
+		}
+
+		// below the threshold
+		Response small = given()
+				.config(RAW)
+				.accept(ContentType.JSON)
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.queryParam(Pagination.LIMIT_PARAM, 1)
+			.expect()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.get(RestPaths.COURSES);
+		assertThat(small.header(HttpHeaders.CONTENT_ENCODING)).isNull();
+	}
+
+	private Response getStudents(String accept, String acceptEncoding) {
+		return given()
+				.config(RAW)
+				.accept(accept)
+				.header(HttpHeaders.ACCEPT_ENCODING, (acceptEncoding != null ? acceptEncoding : "identity"))
+				.queryParam(Pagination.LIMIT_PARAM, STUDENTS)
+			.expect()
+				.statusCode(HttpStatus.OK.value())
+				.contentType(accept)
+			.when()
+				.get(RestPaths.STUDENTS);
+	}
+
+	private Timer timer(String format) {
+		return registry.timer(TimedJackson2HttpMessageConverter.SERIALIZATION_PREFIX + format + "List.Student");
+	}
+
+	private static ObjectMapper binaryMapper(JsonFactory factory) {
+		return BinaryFormats.objectMapper(factory, Jackson2ObjectMapperBuilder.json());
+	}
+
+	private static void createStudents() {
+		List<Course> courses = new ArrayList<>();
+		for (int i = 0; i < COURSES; i++) {
+			courses.add(Course.builder().name("Course " + i).build());
+		}
+		BatchResult createdCourses = createBatch(RestPaths.COURSES, courses);
+		List<Integer> courseIds = new ArrayList<>();
+		for (RowResult row: createdCourses.getRows()) {
+			courseIds.add(row.getId());
+		}
+
+		List<Student> students = new ArrayList<>();
+		for (int i = 0; i < STUDENTS; i++) {
+			Student.StudentBuilder student = Student.builder()
+					.name("Student " + i)
+					.startDt(new Timestamp(1504252800000L + i * 1000L));
+			for (int c = 0; c < COURSES_PER_STUDENT; c++) {
+				student.course(Course.builder().id(courseIds.get((i + c) % COURSES)).build());
+			}
+			students.add(student.build());
+		}
+		createBatch(RestPaths.STUDENTS, students);
+	}
+
+	private static BatchResult createBatch(String path, List<?> rows) {
+		return given()
+				.contentType(ContentType.JSON)
+				.accept(ContentType.JSON)
+				.body(rows)
+			.expect()
+				.statusCode(HttpStatus.CREATED.value())
+			.when()
+				.post(path + "/batch")
+				.as(BatchResult.class);
+	}
+}
@@ -3,12 +3,20 @@ package com.springboot.brushup.students.rest;
 import static org.assertj.core.api.Assertions.*;
 import static com.jayway.restassured.RestAssured.given;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -17,15 +25,20 @@ import org.springframework.test.context.support.DirtiesContextTestExecutionListe
 
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
 import com.github.springtestdbunit.annotation.DatabaseOperation;
+import com.github.springtestdbunit.assertion.DatabaseAssertionMode;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
 import com.github.springtestdbunit.annotation.DatabaseTearDown;
 import com.github.springtestdbunit.annotation.ExpectedDatabase;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.http.ContentType;
+import com.jayway.restassured.response.Response;
 import com.springboot.brushup.students.domain.Course;
 import com.springboot.brushup.students.rest.constants.RestPaths;
 
+import lombok.extern.slf4j.Slf4j;
+
 
+@Slf4j
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT)
 @TestExecutionListeners({ 
@@ -43,6 +56,7 @@ public class CourseServiceIT {
 	protected static final String DATASET_SINGLE_CREATED = "classpath:datasets/courses_single_created.xml";
 	protected static final String DATASET_SINGLE_CHANGED = "classpath:datasets/courses_single_changed.xml";
 	protected static final String DATASET_EMPTY = "classpath:datasets/empty.xml";
+	// expected datasets only list the business columns, markers like LAST_MODIFIED can't be predicted
 	
 	private static Course COURSE_1 = Course.builder().id(-1).name("Rest APIs").build();
 	private static Course COURSE_2 = Course.builder().id(-2).name("DB Unit").build();
@@ -117,6 +131,101 @@ public class CourseServiceIT {
 		assertThat(courses).containsExactlyInAnyOrder(new Course[]{COURSE_1, COURSE_2, COURSE_3, COURSE_4});
 	}
 	
+	@DatabaseSetup(CourseServiceIT.DATASET_MULTIPLE)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value= {CourseServiceIT.DATASET_MULTIPLE})
+	@Test
+	public void testGetAllCoursesPaginated() {
+		Response firstPage = 
+			given()
+				.contentType(ContentType.JSON)
+				.accept(ContentType.JSON)
+				.queryParam(Pagination.LIMIT_PARAM, 3)
+			.expect()
+				.log().all()
+				.statusCode(HttpStatus.OK.value())
+				.header(Pagination.NEXT_CURSOR_HEADER, String.valueOf(COURSE_2.getId()))
+			.when()
+				.get(RestPaths.COURSES);
+		
+		assertThat(firstPage.as(Course[].class)).containsExactly(COURSE_4, COURSE_3, COURSE_2);
+		
+		Response lastPage = 
+			given()
+				.contentType(ContentType.JSON)
+				.accept(ContentType.JSON)
+				.queryParam(Pagination.LIMIT_PARAM, 3)
+				.queryParam(Pagination.AFTER_PARAM, firstPage.header(Pagination.NEXT_CURSOR_HEADER))
+			.expect()
+				.log().all()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.get(RestPaths.COURSES);
+		
+		assertThat(lastPage.as(Course[].class)).containsExactly(COURSE_1);
+		assertThat(lastPage.header(Pagination.NEXT_CURSOR_HEADER)).isNull();
+	}
+	
+	@DatabaseSetup(CourseServiceIT.DATASET_MULTIPLE)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value= {CourseServiceIT.DATASET_MULTIPLE})
+	@Test
+	public void testGetAllCoursesModifiedByEveryWrite() {
+		String etag = 
+			given()
+				.accept(ContentType.JSON)
+			.expect()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.get(RestPaths.COURSES)
+				.header(HttpHeaders.ETAG);
+		
+		given()
+			.accept(ContentType.JSON)
+			.header(HttpHeaders.IF_NONE_MATCH, etag)
+		.expect()
+			.statusCode(HttpStatus.NOT_MODIFIED.value())
+		.when()
+			.get(RestPaths.COURSES);
+		
+		given()
+			.contentType(ContentType.JSON)
+			.body(Course.builder().name("Kotlin").build())
+		.expect()
+			.statusCode(HttpStatus.CREATED.value())
+		.when()
+			.post(RestPaths.COURSES);
+		
+		String createdETag = 
+			given()
+				.accept(ContentType.JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, etag)
+			.expect()
+				.log().all()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.get(RestPaths.COURSES)
+				.header(HttpHeaders.ETAG);
+		
+		// a bulk delete, the count of courses is back to the one of the first tag
+		given()
+		.expect()
+			.statusCode(HttpStatus.NO_CONTENT.value())
+		.when()
+			.delete(RestPaths.COURSES + "/" + COURSE_2.getId());
+		
+		String deletedETag = 
+			given()
+				.accept(ContentType.JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, createdETag)
+			.expect()
+				.log().all()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.get(RestPaths.COURSES)
+				.header(HttpHeaders.ETAG);
+		
+		assertThat(deletedETag).isNotEqualTo(etag);
+	}
+	
 	/*********************************************************************************************/
 	/** Tests - Get                                                                             **/
 	/*********************************************************************************************/
@@ -197,7 +306,7 @@ public class CourseServiceIT {
 			.statusCode(HttpStatus.BAD_REQUEST.value());
 	}
 
-	@ExpectedDatabase(DATASET_SINGLE_CREATED)
+	@ExpectedDatabase(value=DATASET_SINGLE_CREATED, assertionMode=DatabaseAssertionMode.NON_STRICT)
 	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value= {CourseServiceIT.DATASET_SINGLE_CREATED})
 	@Test
 	public void testCreateCourseOK() {
@@ -253,6 +362,7 @@ public class CourseServiceIT {
 			.accept(ContentType.JSON)
 		.when()
 			.log().all()
+			.header(HttpHeaders.IF_MATCH, "*")
 			.body(COURSE_1.toBuilder().id(0).build())
 			.put(RestPaths.COURSES)
 		.then()
@@ -261,7 +371,7 @@ public class CourseServiceIT {
 	}
 
 	@DatabaseSetup(DATASET_SINGLE)
-	@ExpectedDatabase(DATASET_SINGLE_CHANGED)
+	@ExpectedDatabase(value=DATASET_SINGLE_CHANGED, assertionMode=DatabaseAssertionMode.NON_STRICT)
 	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value=DATASET_SINGLE)
 	@Test
 	public void testUpdateCourseOK() {
@@ -269,6 +379,7 @@ public class CourseServiceIT {
 			given()
 				.contentType(ContentType.JSON)
 				.accept(ContentType.JSON)
+				.header(HttpHeaders.IF_MATCH, getCourseETag(COURSE_1.getId()))
 				.body(COURSE_1.toBuilder().name("Changed name").build())
 			.expect()
 				.log().all()
@@ -282,6 +393,112 @@ public class CourseServiceIT {
 	}
 	
 	
+	@DatabaseSetup(DATASET_SINGLE)
+	@ExpectedDatabase(value=DATASET_SINGLE, assertionMode=DatabaseAssertionMode.NON_STRICT)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value=DATASET_SINGLE)
+	@Test
+	public void testUpdateCourseWithoutIfMatch() {
+		given()
+			.contentType(ContentType.JSON)
+			.accept(ContentType.JSON)
+			.body(COURSE_1.toBuilder().name("Blind update").build())
+		.expect()
+			.log().all()
+			.statusCode(HttpStatus.PRECONDITION_REQUIRED.value())
+		.when()
+			.put(RestPaths.COURSES);
+	}
+	
+	@DatabaseSetup(DATASET_SINGLE)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value=DATASET_SINGLE)
+	@Test
+	public void testUpdateCourseIfMatch() {
+		String etag = getCourseETag(COURSE_1.getId());
+		
+		String updatedETag = 
+			given()
+				.contentType(ContentType.JSON)
+				.accept(ContentType.JSON)
+				.header(HttpHeaders.IF_MATCH, etag)
+				.body(COURSE_1.toBuilder().name("Changed name").build())
+			.expect()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.put(RestPaths.COURSES)
+				.header(HttpHeaders.ETAG);
+		assertThat(updatedETag).isNotEqualTo(etag).isEqualTo(getCourseETag(COURSE_1.getId()));
+		
+		// the version the client had is gone
+		given()
+			.contentType(ContentType.JSON)
+			.accept(ContentType.JSON)
+			.header(HttpHeaders.IF_MATCH, etag)
+			.body(COURSE_1.toBuilder().name("Lost update").build())
+		.expect()
+			.statusCode(HttpStatus.PRECONDITION_FAILED.value())
+		.when()
+			.put(RestPaths.COURSES);
+	}
+	
+	/**
+	 * Writers of the same course, each reading it then updating it if unchanged, retrying on 412:
+	 * every update that succeeds is applied on top of the version its writer read, none is lost.
+	 */
+	@DatabaseSetup(DATASET_SINGLE)
+	@DatabaseTearDown(type=DatabaseOperation.DELETE_ALL, value=DATASET_SINGLE)
+	@Test
+	public void testConcurrentUpdatesOfPopularCourse() throws Exception {
+		int writers = 8;
+		int updatesPerWriter = 5;
+		ExecutorService executor = Executors.newFixedThreadPool(writers);
+		AtomicInteger conflicts = new AtomicInteger();
+		try {
+			List<Future<?>> done = new ArrayList<>();
+			for (int w = 0; w < writers; w++) {
+				int writer = w;
+				done.add(executor.submit(() -> {
+					for (int u = 0; u < updatesPerWriter; u++) {
+						int status;
+						do {
+							status = 
+								given()
+									.contentType(ContentType.JSON)
+									.accept(ContentType.JSON)
+									.header(HttpHeaders.IF_MATCH, getCourseETag(COURSE_1.getId()))
+									.body(COURSE_1.toBuilder().name("Writer " + writer + " update " + u).build())
+								.when()
+									.put(RestPaths.COURSES)
+									.statusCode();
+							if (status == HttpStatus.PRECONDITION_FAILED.value()) {
+								conflicts.incrementAndGet();
+							}
+						} while (status == HttpStatus.PRECONDITION_FAILED.value());
+						assertThat(status).isEqualTo(HttpStatus.OK.value());
+					}
+				}));
+			}
+			for (Future<?> writer: done) {
+				writer.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		// one version per update that succeeded, from the version 0 of the dataset
+		assertThat(getCourseETag(COURSE_1.getId())).isEqualTo("\"course-" + COURSE_1.getId() + "-" + (writers * updatesPerWriter) + "\"");
+		log.info("{} updates of the same course by {} writers: {} conflicts retried", writers * updatesPerWriter, writers, conflicts.get());
+	}
+	
+	private static String getCourseETag(Integer id) {
+		return given()
+				.accept(ContentType.JSON)
+			.expect()
+				.statusCode(HttpStatus.OK.value())
+			.when()
+				.get(RestPaths.COURSES + "/" + id)
+				.header(HttpHeaders.ETAG);
+	}
+	
 	/*********************************************************************************************/
 	/** Tests - Delete                                                                          **/
 	/*********************************************************************************************/
@@ -301,7 +518,7 @@ public class CourseServiceIT {
 	}
 	
 	@DatabaseSetup(CourseServiceIT.DATASET_SINGLE)
-	@ExpectedDatabase(CourseServiceIT.DATASET_EMPTY)
+	@ExpectedDatabase(value=CourseServiceIT.DATASET_EMPTY, assertionMode=DatabaseAssertionMode.NON_STRICT)
 	@Test
 	public void testDeleteCourseFoundWithoutStudents() {
 		given()
@@ -315,7 +532,7 @@ public class CourseServiceIT {
 	}
 	
 	@DatabaseSetup(CourseServiceIT.DATASET_SINGLE_WITH_STUDENTS)
-	@ExpectedDatabase(CourseServiceIT.DATASET_SINGLE_WITH_STUDENTS_AFTER_DELETE)
+	@ExpectedDatabase(value=CourseServiceIT.DATASET_SINGLE_WITH_STUDENTS_AFTER_DELETE, assertionMode=DatabaseAssertionMode.NON_STRICT)
 	@Test
 	public void testDeleteCourseFoundWithStudents() {
 		given()
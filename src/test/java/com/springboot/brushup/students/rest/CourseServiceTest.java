@@ -4,21 +4,59 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.brushup.students.cache.EntityCache;
+import com.springboot.brushup.students.changes.ChangeFeed;
 import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.dto.CourseStats;
 import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+import com.springboot.brushup.students.repository.PartialUpdateRepository;
+import com.springboot.brushup.students.repository.TableVersionRepository;
 import com.springboot.brushup.students.rest.exceptions.NotFoundException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionFailedException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionRequiredException;
+import com.springboot.brushup.students.search.SearchIndex;
+import com.springboot.brushup.students.stats.EnrollmentCounts;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CourseServiceTest {
@@ -32,6 +70,47 @@ public class CourseServiceTest {
 	@Mock
 	private CourseRepository courseRepository;
 	
+	@Mock
+	private EntityCache entityCache;
+	
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	
+	@Mock
+	private SearchIndex searchIndex;
+	
+	@Mock
+	private PartialUpdateRepository partialUpdates;
+	
+	@Mock
+	private TableVersionRepository tableVersions;
+	
+	@Mock
+	private EnrollmentRepository enrollmentRepository;
+	
+	@Mock
+	private EnrollmentCounts enrollmentCounts;
+	
+	@Mock
+	private ChangeFeed changeFeed;
+	
+	@Before
+	public void setup() {
+		given(tableVersions.findVersions(Matchers.<String>anyVararg())).willReturn(Arrays.asList(0L));
+	}
+	
+	private static ServletWebRequest webRequest() {
+		return webRequest(null);
+	}
+	
+	private static ServletWebRequest webRequest(String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		return new ServletWebRequest(request, new MockHttpServletResponse());
+	}
+	
 	/*******************************************************************************************************************************/
 	/***   Get Course tests                                                                                                     ***/
 	/*******************************************************************************************************************************/
@@ -39,55 +118,123 @@ public class CourseServiceTest {
 	@Test
 	public void testGetCourseNotFound() {
 		// setup the mock repository
-		given(courseRepository.findOne(anyInt())).willReturn(null);
+		given(entityCache.findCourse(anyInt())).willReturn(null);
 		
 		// make the service call
-		Throwable thrown = catchThrowable(() -> { courseService.getCourse(COURSE_DEFAULT_1.getId()); } );
+		Throwable thrown = catchThrowable(() -> { courseService.getCourse(COURSE_DEFAULT_1.getId(), webRequest()).call(); } );
 		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No courses found");
 	}
 	
 	@Test
-	public void testGetUserOneFound() {
+	public void testGetUserOneFound() throws Exception {
 		// setup the mock repository
-		given(courseRepository.findOne(anyInt())).willReturn(COURSE_DEFAULT_1);
+		given(entityCache.findCourse(anyInt())).willReturn(COURSE_DEFAULT_1);
 		
 		// make the service call
 		try {
-			assertThat(courseService.getCourse(COURSE_DEFAULT_1.getId())).isEqualTo(COURSE_DEFAULT_1);
+			assertThat(courseService.getCourse(COURSE_DEFAULT_1.getId(), webRequest()).call()).isEqualTo(COURSE_DEFAULT_1);
 		} catch (NotFoundException e) {
 			fail("Error testing getCourse: " + e.getMessage());
 		}
 	}
 
+	@Test
+	public void testGetCourseNotModified() throws Exception {
+		given(entityCache.findCourse(COURSE_DEFAULT_1.getId())).willReturn(COURSE_DEFAULT_1);
+		
+		ServletWebRequest request = webRequest(ETags.of(COURSE_DEFAULT_1));
+		
+		assertThat(courseService.getCourse(COURSE_DEFAULT_1.getId(), request).call()).isNull();
+		assertThat(request.getResponse().getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+	}
+
+	@Test
+	public void testGetCourseModified() throws Exception {
+		given(entityCache.findCourse(COURSE_DEFAULT_1.getId())).willReturn(COURSE_DEFAULT_1);
+		
+		ServletWebRequest request = webRequest("\"stale\"");
+		
+		assertThat(courseService.getCourse(COURSE_DEFAULT_1.getId(), request).call()).isEqualTo(COURSE_DEFAULT_1);
+		assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(ETags.of(COURSE_DEFAULT_1));
+	}
+
 	/*******************************************************************************************************************************/
 	/***   Get All Courses tests                                                                                                ***/
 	/*******************************************************************************************************************************/
 	
 	@Test
-	public void testGetAllCoursesNoneFound() {
+	public void testGetAllCoursesNoneFound() throws Exception {
 		// setup the mock repository
-		given(courseRepository.findAll()).willReturn(new ArrayList<Course>());
+		given(courseRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class))).willReturn(new ArrayList<Course>());
 
 		// no need to check for null, isEmpty() checks that too
-		assertThat(courseService.getAllCourses()).isEmpty();
+		ResponseEntity<List<Course>> response = courseService.getAllCourses(null, null, webRequest()).call();
+		assertThat(response.getBody()).isEmpty();
+		assertThat(response.getHeaders().containsKey(Pagination.NEXT_CURSOR_HEADER)).isFalse();
 	}
 
 	@Test
-	public void testGetAllCoursesOneFound() {
+	public void testGetAllCoursesOneFound() throws Exception {
 		// setup the mock repository
-		given(courseRepository.findAll()).willReturn(Arrays.asList(new Course[]{COURSE_DEFAULT_1}));
+		given(courseRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class))).willReturn(Arrays.asList(new Course[]{COURSE_DEFAULT_1}));
 
 		// no need to check for null, isEmpty() checks that too
-		assertThat(courseService.getAllCourses()).containsExactly(COURSE_DEFAULT_1);
+		assertThat(courseService.getAllCourses(null, null, webRequest()).call().getBody()).containsExactly(COURSE_DEFAULT_1);
 	}
 
 	@Test
-	public void testGetAllCoursesTwoFound() {
+	public void testGetAllCoursesTwoFound() throws Exception {
 		// setup the mock repository
-		given(courseRepository.findAll()).willReturn(Arrays.asList(new Course[]{COURSE_DEFAULT_1, COURSE_DEFAULT_2}));
+		given(courseRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class))).willReturn(Arrays.asList(new Course[]{COURSE_DEFAULT_1, COURSE_DEFAULT_2}));
 
 		// no need to check for null, isEmpty() checks that too
-		assertThat(courseService.getAllCourses()).containsExactly(COURSE_DEFAULT_1, COURSE_DEFAULT_2);
+		assertThat(courseService.getAllCourses(null, null, webRequest()).call().getBody()).containsExactly(COURSE_DEFAULT_1, COURSE_DEFAULT_2);
+	}
+
+	@Test
+	public void testGetAllCoursesFullPageHasNextCursor() throws Exception {
+		// setup the mock repository
+		given(courseRepository.findByIdGreaterThanOrderByIdAsc(eq(COURSE_DEFAULT_1.getId()), eq(new PageRequest(0, 1)))).willReturn(Arrays.asList(new Course[]{COURSE_DEFAULT_2}));
+
+		ResponseEntity<List<Course>> response = courseService.getAllCourses(COURSE_DEFAULT_1.getId(), 1, webRequest()).call();
+		assertThat(response.getBody()).containsExactly(COURSE_DEFAULT_2);
+		assertThat(response.getHeaders().getFirst(Pagination.NEXT_CURSOR_HEADER)).isEqualTo(String.valueOf(COURSE_DEFAULT_2.getId()));
+	}
+
+	@Test
+	public void testGetAllCoursesLimitCapped() throws Exception {
+		courseService.getAllCourses(null, Pagination.MAX_LIMIT + 1, webRequest()).call();
+		
+		verify(courseRepository).findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE, new PageRequest(0, Pagination.MAX_LIMIT));
+	}
+
+	@Test
+	public void testGetAllCoursesNotModified() throws Exception {
+		ServletWebRequest first = webRequest();
+		courseService.getAllCourses(null, null, first).call();
+		String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(etag).isNotNull();
+		
+		ServletWebRequest request = webRequest(etag);
+		assertThat(courseService.getAllCourses(null, null, request).call()).isNull();
+		assertThat(request.getResponse().getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		// only the first call reads the page
+		verify(courseRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class));
+	}
+
+	@Test
+	public void testGetAllCoursesBadLimit() {
+		Throwable thrown = catchThrowable(() -> courseService.getAllCourses(null, 0, webRequest()).call());
+		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class);
+	}
+	
+	@Test
+	public void testGetCourseStatsFromMemory() {
+		List<CourseStats> stats = Arrays.asList(new CourseStats(1, 3), new CourseStats(2, 1));
+		given(enrollmentCounts.getStats()).willReturn(stats);
+		
+		assertThat(courseService.getCourseStats()).isEqualTo(stats);
+		verify(courseRepository, never()).findAll();
 	}
 	
 	/*******************************************************************************************************************************/
@@ -97,9 +244,9 @@ public class CourseServiceTest {
 	@Test
 	public void testCreateCourseWithId() {
 		// setup the mock repository
-		given(courseRepository.save(Matchers.any(Course.class))).willReturn(null);
+		given(courseRepository.saveAndFlush(Matchers.any(Course.class))).willReturn(null);
 		
-		Throwable thrown = catchThrowable(() -> courseService.createCourse(COURSE_DEFAULT_1));
+		Throwable thrown = catchThrowable(() -> courseService.createCourse(COURSE_DEFAULT_1).call());
 		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class).hasMessage("The ID should not be provided when creating a new course");
 	}
 
@@ -112,7 +259,7 @@ public class CourseServiceTest {
 		// can't use this as the repository is actually an interface (Spring creates the actual implementation class internally)
 		//given(studentRepository.save(Matchers.any(Course.class))).willCallRealMethod();
 		
-		Throwable thrown = catchThrowable(() -> courseService.createCourse(new Course.Builder(COURSE_DEFAULT_1).id(null).name(null).build()));
+		Throwable thrown = catchThrowable(() -> courseService.createCourse(new Course.Builder(COURSE_DEFAULT_1).id(null).name(null).build()).call());
 		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class).hasMessage("The ID should not be provided when creating a new student");
 	}
 
@@ -122,11 +269,11 @@ public class CourseServiceTest {
 	**/
 	
 	@Test
-	public void testCreateCourseOK() {
+	public void testCreateCourseOK() throws Exception {
 		Course toCreate = COURSE_DEFAULT_1.toBuilder().id(null).build();
-		given(courseRepository.save(toCreate)).willReturn(COURSE_DEFAULT_1);
+		given(courseRepository.saveAndFlush(toCreate)).willReturn(COURSE_DEFAULT_1);
 		
-		Course created = courseService.createCourse(toCreate);
+		Course created = courseService.createCourse(toCreate).call();
 		
 		assertThat(created).isEqualTo(COURSE_DEFAULT_1);
 	}
@@ -137,32 +284,106 @@ public class CourseServiceTest {
 
 	@Test
 	public void testUpdateCourseBadId() {
-		given(courseRepository.findOne(COURSE_DEFAULT_1.getId())).willReturn(null);
+		given(partialUpdates.updateCourse(eq(1), Matchers.<Map<String, Object>>any(), anyLong(), Matchers.<Collection<Long>>eq(null))).willReturn(0);
 		
-		Throwable thrown = catchThrowable(() -> courseService.updateCourse(COURSE_DEFAULT_1));
+		Throwable thrown = catchThrowable(() -> courseService.updateCourse(COURSE_DEFAULT_1.toBuilder().build(), "*").call());
 		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No courses found with ID");
 	}
 
-	// column enforcement (not null, unique, etc) needs to be tested by the Integration tests, 
-	/** 
 	@Test
-	public void testUpdateCourseMissingName() {
+	public void testUpdateCourseWithoutIfMatch() {
+		Throwable thrown = catchThrowable(() -> courseService.updateCourse(COURSE_DEFAULT_1.toBuilder().build(), null).call());
+		assertThat(thrown).isNotNull().isInstanceOf(PreconditionRequiredException.class);
+		verify(partialUpdates, never()).updateCourse(anyInt(), Matchers.<Map<String, Object>>any(), anyLong(), Matchers.<Collection<Long>>any());
+	}
+
+	@Test
+	public void testUpdateCourseTooLongName() {
+		Course course = COURSE_DEFAULT_1.toBuilder().name(String.join("", Collections.nCopies(Course.NAME_LENGTH + 1, "x"))).build();
+		
+		Throwable thrown = catchThrowable(() -> courseService.updateCourse(course, null).call());
+		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class);
+		verify(partialUpdates, never()).updateCourse(anyInt(), Matchers.<Map<String, Object>>any(), anyLong(), Matchers.<Collection<Long>>any());
 	}
-	**/
 	
 	@Test
-	public void testUpdateCourseOK() {
-		given(courseRepository.findOne(COURSE_DEFAULT_1.getId())).willReturn(COURSE_DEFAULT_1);
-		given(courseRepository.save(COURSE_DEFAULT_1)).willReturn(COURSE_DEFAULT_1);
+	public void testUpdateCourseOK() throws Exception {
+		given(partialUpdates.updateCourse(eq(1), eq(Collections.singletonMap("name", "aCourse")), anyLong(), Matchers.<Collection<Long>>eq(null))).willReturn(1);
+		given(partialUpdates.findCourseVersion(1)).willReturn(4L);
 		
-		Course updated = null;
-		try {
-			updated = courseService.updateCourse(COURSE_DEFAULT_1);
-		} catch (Throwable t) {
-			fail("Course update should not have caused an exception", t);
-		}
-		assertThat(updated).isEqualTo(COURSE_DEFAULT_1);
+		ResponseEntity<Course> updated = courseService.updateCourse(COURSE_DEFAULT_1.toBuilder().build(), "*").call();
+		
+		assertThat(updated.getBody()).isEqualTo(COURSE_DEFAULT_1);
+		assertThat(updated.getBody().getVersion()).isEqualTo(4L);
+		assertThat(updated.getHeaders().getETag()).isEqualTo("\"course-1-4\"");
+		verify(entityCache).evictCourse(COURSE_DEFAULT_1.getId());
+		verify(searchIndex).putCourse(1, "aCourse");
+	}
+	
+	@Test
+	public void testUpdateCourseIfMatch() throws Exception {
+		given(partialUpdates.updateCourse(eq(1), eq(Collections.singletonMap("name", "aCourse")), anyLong(), eq(Collections.singletonList(3L)))).willReturn(1);
+		
+		ResponseEntity<Course> updated = courseService.updateCourse(COURSE_DEFAULT_1.toBuilder().build(), "\"course-1-3\"").call();
+		
+		// the version is known without reading it
+		assertThat(updated.getHeaders().getETag()).isEqualTo("\"course-1-4\"");
+		verify(partialUpdates, never()).findCourseVersion(anyInt());
+	}
+	
+	@Test
+	public void testUpdateCourseIfMatchChanged() {
+		given(partialUpdates.updateCourse(eq(1), Matchers.<Map<String, Object>>any(), anyLong(), eq(Collections.singletonList(3L)))).willReturn(0);
 		
+		Throwable thrown = catchThrowable(() -> courseService.updateCourse(COURSE_DEFAULT_1.toBuilder().build(), "\"course-1-3\"").call());
+		assertThat(thrown).isNotNull().isInstanceOf(PreconditionFailedException.class);
+		verify(entityCache, never()).evictCourse(anyInt());
+	}
+	
+	/*******************************************************************************************************************************/
+	/***   Patch Courses tests                                                                                                  ***/
+	/*******************************************************************************************************************************/
+
+	@Test
+	public void testPatchCourseOK() throws Exception {
+		given(partialUpdates.updateCourse(eq(1), eq(Collections.singletonMap("name", "cCourse")), anyLong())).willReturn(1);
+		
+		courseService.patchCourse(1, patch("{\"name\":\"cCourse\"}")).call();
+		
+		// a single statement, the course is not read
+		verify(courseRepository, never()).findOne(anyInt());
+		verify(entityCache).evictCourse(1);
+		verify(searchIndex).putCourse(1, "cCourse");
+		// in a read-write transaction, the evictions wait for its commit
+		verify(transactionManager).getTransaction(argThat(new ArgumentMatcher<TransactionDefinition>() {
+			@Override
+			public boolean matches(Object definition) {
+				return !((TransactionDefinition) definition).isReadOnly();
+			}
+		}));
+		verify(transactionManager).commit(any());
+	}
+	
+	@Test
+	public void testPatchCourseBadId() throws Exception {
+		given(partialUpdates.updateCourse(eq(1), Matchers.<Map<String, Object>>any(), anyLong())).willReturn(0);
+		
+		Throwable thrown = catchThrowable(() -> courseService.patchCourse(1, patch("{\"id\":1,\"name\":\"cCourse\"}")).call());
+		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No courses found with ID 1");
+		verify(entityCache, never()).evictCourse(1);
+	}
+	
+	@Test
+	public void testPatchCourseBadFields() throws Exception {
+		for (String patch: Arrays.asList("{}", "{\"name\":null}", "{\"id\":2,\"name\":\"cCourse\"}", "{\"students\":[]}", "[]")) {
+			Throwable thrown = catchThrowable(() -> courseService.patchCourse(1, patch(patch)).call());
+			assertThat(thrown).describedAs(patch).isNotNull().isInstanceOf(IllegalArgumentException.class);
+		}
+		verify(partialUpdates, never()).updateCourse(anyInt(), Matchers.<Map<String, Object>>any(), anyLong());
+	}
+	
+	private static JsonNode patch(String json) throws IOException {
+		return new ObjectMapper().readTree(json);
 	}
 	
 	/*******************************************************************************************************************************/
@@ -171,17 +392,37 @@ public class CourseServiceTest {
 
 	@Test
 	public void testDeleteCourseBadId() {
-		given(courseRepository.findOne(COURSE_DEFAULT_1.getId())).willReturn(null);
+		given(courseRepository.deleteCourse(COURSE_DEFAULT_1.getId())).willReturn(0);
 
-		Throwable thrown = catchThrowable(() -> courseService.removeCourse(COURSE_DEFAULT_1.getId()));
+		Throwable thrown = catchThrowable(() -> courseService.removeCourse(COURSE_DEFAULT_1.getId()).call());
 		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No courses found with ID");
+		verify(entityCache, never()).evictCourse(COURSE_DEFAULT_1.getId());
+		verify(searchIndex, never()).removeCourse(COURSE_DEFAULT_1.getId());
 	}
 	
 	@Test
 	public void testDeleteCourseOK() {
-		given(courseRepository.findOne(COURSE_DEFAULT_1.getId())).willReturn(COURSE_DEFAULT_1);
-		Throwable thrown = catchThrowable(() -> courseService.removeCourse(COURSE_DEFAULT_1.getId()));
+		given(courseRepository.deleteCourse(COURSE_DEFAULT_1.getId())).willReturn(1);
+		Throwable thrown = catchThrowable(() -> courseService.removeCourse(COURSE_DEFAULT_1.getId()).call());
 		assertThat(thrown).describedAs("Course deletion with a valid ID should not have caused an exception").isNull();
+		verify(entityCache).evictCourse(COURSE_DEFAULT_1.getId());
+		verify(searchIndex).removeCourse(COURSE_DEFAULT_1.getId());
+		verify(enrollmentCounts).courseRemoved(COURSE_DEFAULT_1.getId());
+	}
+	
+	@Test
+	public void testDeleteCourseDoesNotLoadStudents() {
+		given(courseRepository.deleteCourse(COURSE_DEFAULT_1.getId())).willReturn(1);
+		Throwable thrown = catchThrowable(() -> courseService.removeCourse(COURSE_DEFAULT_1.getId()).call());
+		assertThat(thrown).isNull();
+		
+		InOrder inOrder = inOrder(enrollmentRepository, courseRepository);
+		inOrder.verify(enrollmentRepository).touchCourseStudents(eq(COURSE_DEFAULT_1.getId()), anyLong());
+		inOrder.verify(enrollmentRepository).unenrollCourse(COURSE_DEFAULT_1.getId());
+		inOrder.verify(courseRepository).deleteCourse(COURSE_DEFAULT_1.getId());
+		verify(courseRepository, never()).findOne(COURSE_DEFAULT_1.getId());
+		// not a native query, which would make Hibernate drop its whole second-level cache
+		verify(enrollmentRepository).evictAllStudents();
 	}
 	
 }
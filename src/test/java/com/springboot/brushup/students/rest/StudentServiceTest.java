@@ -4,23 +4,70 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import java.io.IOException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.batch.BatchResult.RowResult;
+import com.springboot.brushup.students.cache.EntityCache;
+import com.springboot.brushup.students.changes.ChangeFeed;
 import com.springboot.brushup.students.domain.Course;
 import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.dto.CourseSummary;
+import com.springboot.brushup.students.dto.Enrollment;
+import com.springboot.brushup.students.dto.StudentDetail;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+import com.springboot.brushup.students.repository.PartialUpdateRepository;
+import com.springboot.brushup.students.repository.TableVersionRepository;
 import com.springboot.brushup.students.repository.StudentRepository;
 import com.springboot.brushup.students.rest.exceptions.NotFoundException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionFailedException;
+import com.springboot.brushup.students.rest.exceptions.PreconditionRequiredException;
+import com.springboot.brushup.students.search.SearchIndex;
+import com.springboot.brushup.students.stats.EnrollmentCounts;
 
 @RunWith(MockitoJUnitRunner.class)
 public class StudentServiceTest {
@@ -43,6 +90,53 @@ public class StudentServiceTest {
 	@Mock
 	private StudentRepository studentRepository;
 	
+	@Mock
+	private EntityCache entityCache;
+	
+	@Mock
+	private CourseRepository courseRepository;
+	
+	@Mock
+	private EnrollmentRepository enrollmentRepository;
+	
+	@Mock
+	private PartialUpdateRepository partialUpdates;
+	
+	@Mock
+	private TableVersionRepository tableVersions;
+	
+	@Mock
+	private SearchIndex searchIndex;
+	
+	@Mock
+	private EnrollmentCounts enrollmentCounts;
+	
+	@Mock
+	private ChangeFeed changeFeed;
+	
+	@Mock
+	private PlatformTransactionManager transactionManager;
+	
+	@Before
+	public void setup() {
+		given(tableVersions.findVersions(Matchers.<String>anyVararg())).willReturn(Arrays.asList(0L, 0L));
+	}
+	
+	private static ServletWebRequest webRequest() {
+		return webRequest(null);
+	}
+	
+	private static ServletWebRequest webRequest(String ifNoneMatch) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		if (ifNoneMatch != null) {
+			request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		return new ServletWebRequest(request, new MockHttpServletResponse());
+	}
+	
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+	
 	/*******************************************************************************************************************************/
 	/***   Get Student tests                                                                                                     ***/
 	/*******************************************************************************************************************************/
@@ -50,55 +144,186 @@ public class StudentServiceTest {
 	@Test
 	public void testGetStudentNotFound() {
 		// setup the mock repository
-		given(studentRepository.findOne(anyInt())).willReturn(null);
+		given(entityCache.findStudent(anyInt())).willReturn(null);
 		
 		// make the service call
-		Throwable thrown = catchThrowable(() -> { studentService.getStudent(STUDENT_DEFAULT_1.getId()); } );
+		Throwable thrown = catchThrowable(() -> { studentService.getStudent(STUDENT_DEFAULT_1.getId(), webRequest()).call(); } );
 		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No students found");
 	}
 	
 	@Test
-	public void testGetUserOneFound() {
+	public void testGetUserOneFound() throws Exception {
 		// setup the mock repository
-		given(studentRepository.findOne(anyInt())).willReturn(STUDENT_DEFAULT_1);
+		given(entityCache.findStudent(anyInt())).willReturn(STUDENT_DEFAULT_1);
 		
 		// make the service call
 		try {
-			assertThat(studentService.getStudent(STUDENT_DEFAULT_1.getId())).isEqualTo(STUDENT_DEFAULT_1);
+			assertThat(studentService.getStudent(STUDENT_DEFAULT_1.getId(), webRequest()).call()).isEqualTo(STUDENT_DEFAULT_1);
 		} catch (NotFoundException e) {
 			fail("Error testing getStudent: " + e.getMessage());
 		}
 	}
 
+	@Test
+	public void testGetStudentDetailNotFound() {
+		given(studentRepository.findDetailRowsById(anyInt())).willReturn(new ArrayList<Object[]>());
+		
+		Throwable thrown = catchThrowable(() -> { studentService.getStudentDetail(STUDENT_DEFAULT_1.getId()).call(); } );
+		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No students found");
+	}
+	
+	@Test
+	public void testGetStudentDetailFound() throws Exception {
+		given(studentRepository.findDetailRowsById(STUDENT_DEFAULT_1.getId())).willReturn(Arrays.asList(
+				new Object[]{STUDENT_DEFAULT_1.getId(), STUDENT_DEFAULT_1.getName(), STUDENT_DEFAULT_1.getStartDt(), COURSE_DEFAULT_1.getId(), COURSE_DEFAULT_1.getName()},
+				new Object[]{STUDENT_DEFAULT_1.getId(), STUDENT_DEFAULT_1.getName(), STUDENT_DEFAULT_1.getStartDt(), COURSE_DEFAULT_2.getId(), COURSE_DEFAULT_2.getName()}));
+		
+		StudentDetail detail = studentService.getStudentDetail(STUDENT_DEFAULT_1.getId()).call();
+		
+		assertThat(detail).isEqualTo(StudentDetail.builder()
+				.id(STUDENT_DEFAULT_1.getId())
+				.name(STUDENT_DEFAULT_1.getName())
+				.startDt(STUDENT_DEFAULT_1.getStartDt())
+				.course(new CourseSummary(COURSE_DEFAULT_1.getId(), COURSE_DEFAULT_1.getName()))
+				.course(new CourseSummary(COURSE_DEFAULT_2.getId(), COURSE_DEFAULT_2.getName()))
+				.build());
+	}
+
+	@Test
+	public void testGetStudentDetailWithoutCourses() throws Exception {
+		given(studentRepository.findDetailRowsById(STUDENT_DEFAULT_1.getId())).willReturn(Arrays.<Object[]>asList(
+				new Object[]{STUDENT_DEFAULT_1.getId(), STUDENT_DEFAULT_1.getName(), null, null, null}));
+		
+		assertThat(studentService.getStudentDetail(STUDENT_DEFAULT_1.getId()).call().getCourses()).isEmpty();
+	}
+
+	@Test
+	public void testGetStudentNotModified() throws Exception {
+		given(entityCache.findStudent(STUDENT_DEFAULT_1.getId())).willReturn(STUDENT_DEFAULT_1);
+		
+		ServletWebRequest request = webRequest(ETags.of(STUDENT_DEFAULT_1));
+		
+		assertThat(studentService.getStudent(STUDENT_DEFAULT_1.getId(), request).call()).isNull();
+		assertThat(request.getResponse().getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+	}
+
+	@Test
+	public void testGetStudentModified() throws Exception {
+		given(entityCache.findStudent(STUDENT_DEFAULT_1.getId())).willReturn(STUDENT_DEFAULT_1);
+		
+		ServletWebRequest request = webRequest("\"stale\"");
+		
+		assertThat(studentService.getStudent(STUDENT_DEFAULT_1.getId(), request).call()).isEqualTo(STUDENT_DEFAULT_1);
+		assertThat(request.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(ETags.of(STUDENT_DEFAULT_1));
+	}
+
 	/*******************************************************************************************************************************/
 	/***   Get All Students tests                                                                                                ***/
 	/*******************************************************************************************************************************/
 	
 	@Test
-	public void testGetAllStudentsNoneFound() {
+	public void testGetAllStudentsNoneFound() throws Exception {
 		// setup the mock repository
-		given(studentRepository.findAll()).willReturn(new ArrayList<Student>());
+		given(studentRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class))).willReturn(new ArrayList<Student>());
 
 		// no need to check for null, isEmpty() checks that too
-		assertThat(studentService.getAllStudents()).isEmpty();
+		ResponseEntity<List<Student>> response = studentService.getAllStudents(null, null, webRequest()).call();
+		assertThat(response.getBody()).isEmpty();
+		assertThat(response.getHeaders().containsKey(Pagination.NEXT_CURSOR_HEADER)).isFalse();
 	}
 
 	@Test
-	public void testGetAllStudentsOneFound() {
+	public void testGetAllStudentsOneFound() throws Exception {
 		// setup the mock repository
-		given(studentRepository.findAll()).willReturn(Arrays.asList(new Student[]{STUDENT_DEFAULT_1}));
+		given(studentRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class))).willReturn(Arrays.asList(new Student[]{STUDENT_DEFAULT_1}));
 
 		// no need to check for null, isEmpty() checks that too
-		assertThat(studentService.getAllStudents()).containsExactly(STUDENT_DEFAULT_1);
+		assertThat(studentService.getAllStudents(null, null, webRequest()).call().getBody()).containsExactly(STUDENT_DEFAULT_1);
 	}
 
 	@Test
-	public void testGetAllStudentsTwoFound() {
+	public void testGetAllStudentsTwoFound() throws Exception {
 		// setup the mock repository
-		given(studentRepository.findAll()).willReturn(Arrays.asList(new Student[]{STUDENT_DEFAULT_1, STUDENT_DEFAULT_2}));
+		given(studentRepository.findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class))).willReturn(Arrays.asList(new Student[]{STUDENT_DEFAULT_1, STUDENT_DEFAULT_2}));
 
 		// no need to check for null, isEmpty() checks that too
-		assertThat(studentService.getAllStudents()).containsExactly(STUDENT_DEFAULT_1, STUDENT_DEFAULT_2);
+		assertThat(studentService.getAllStudents(null, null, webRequest()).call().getBody()).containsExactly(STUDENT_DEFAULT_1, STUDENT_DEFAULT_2);
+	}
+
+	@Test
+	public void testGetAllStudentsFullPageHasNextCursor() throws Exception {
+		// setup the mock repository
+		given(studentRepository.findByIdGreaterThanOrderByIdAsc(eq(STUDENT_DEFAULT_1.getId()), eq(new PageRequest(0, 1)))).willReturn(Arrays.asList(new Student[]{STUDENT_DEFAULT_2}));
+
+		ResponseEntity<List<Student>> response = studentService.getAllStudents(STUDENT_DEFAULT_1.getId(), 1, webRequest()).call();
+		assertThat(response.getBody()).containsExactly(STUDENT_DEFAULT_2);
+		assertThat(response.getHeaders().getFirst(Pagination.NEXT_CURSOR_HEADER)).isEqualTo(String.valueOf(STUDENT_DEFAULT_2.getId()));
+	}
+
+	@Test
+	public void testGetAllStudentsLimitCapped() throws Exception {
+		studentService.getAllStudents(null, Pagination.MAX_LIMIT + 1, webRequest()).call();
+		
+		verify(studentRepository).findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE, new PageRequest(0, Pagination.MAX_LIMIT));
+	}
+
+	@Test
+	public void testGetAllStudentsNotModified() throws Exception {
+		ServletWebRequest first = webRequest();
+		studentService.getAllStudents(null, null, first).call();
+		String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(etag).isNotNull();
+		
+		ServletWebRequest request = webRequest(etag);
+		assertThat(studentService.getAllStudents(null, null, request).call()).isNull();
+		assertThat(request.getResponse().getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		// only the first call reads the page
+		verify(studentRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(Integer.MIN_VALUE), any(Pageable.class));
+	}
+
+	@Test
+	public void testGetAllStudentsBadLimit() {
+		Throwable thrown = catchThrowable(() -> studentService.getAllStudents(null, 0, webRequest()).call());
+		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class);
+	}
+	
+	/*******************************************************************************************************************************/
+	/***   Export Students tests                                                                                                 ***/
+	/*******************************************************************************************************************************/
+	
+	@Test
+	public void testExportStudentsNoneFound() throws IOException {
+		given(studentRepository.streamAllWithCourses()).willReturn(Stream.empty());
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		studentService.exportStudents(response);
+		
+		assertThat(response.getContentType()).isEqualTo(StudentService.NDJSON_VALUE);
+		assertThat(response.getContentAsString()).isEmpty();
+	}
+
+	@Test
+	public void testExportStudentsOneLinePerStudent() throws IOException {
+		Timestamp startDt = new Timestamp(1000L);
+		given(studentRepository.streamAllWithCourses()).willReturn(Stream.of(
+				new Object[]{1, "aStudent", startDt, 1, "aCourse"},
+				new Object[]{1, "aStudent", startDt, 2, "bCourse"},
+				new Object[]{2, "bStudent", null, null, null}));
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		studentService.exportStudents(response);
+		
+		String[] lines = response.getContentAsString().split("\n");
+		assertThat(lines).hasSize(2);
+		
+		Student first = objectMapper.readValue(lines[0], Student.class);
+		assertThat(first.getName()).isEqualTo("aStudent");
+		assertThat(first.getStartDt()).isEqualTo(startDt);
+		assertThat(first.getCourses()).containsExactlyInAnyOrder(COURSE_DEFAULT_1, COURSE_DEFAULT_2);
+		
+		Student second = objectMapper.readValue(lines[1], Student.class);
+		assertThat(second.getId()).isEqualTo(2);
+		assertThat(second.getCourses()).isEmpty();
 	}
 	
 	/*******************************************************************************************************************************/
@@ -110,7 +335,7 @@ public class StudentServiceTest {
 		// setup the mock repository
 		given(studentRepository.save(Matchers.any(Student.class))).willReturn(null);
 		
-		Throwable thrown = catchThrowable(() -> studentService.createStudent(STUDENT_DEFAULT_1));
+		Throwable thrown = catchThrowable(() -> studentService.createStudent(STUDENT_DEFAULT_1).call());
 		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class).hasMessage("The ID should not be provided when creating a new student");
 	}
 
@@ -123,7 +348,7 @@ public class StudentServiceTest {
 		// can't use this as the repository is actually an interface (Spring creates the actual implementation class internally)
 		//given(studentRepository.save(Matchers.any(Student.class))).willCallRealMethod();
 		
-		Throwable thrown = catchThrowable(() -> studentService.createStudent(new Student.Builder(STUDENT_DEFAULT_1).id(null).name(null).build()));
+		Throwable thrown = catchThrowable(() -> studentService.createStudent(new Student.Builder(STUDENT_DEFAULT_1).id(null).name(null).build()).call());
 		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class).hasMessage("The ID should not be provided when creating a new student");
 	}
 
@@ -133,11 +358,11 @@ public class StudentServiceTest {
 	**/
 	
 	@Test
-	public void testCreateStudentOK() {
+	public void testCreateStudentOK() throws Exception {
 		Student toCreate = STUDENT_DEFAULT_1.toBuilder().id(null).build();
 		given(studentRepository.save(toCreate)).willReturn(STUDENT_DEFAULT_1);
 		
-		Student created = studentService.createStudent(toCreate);
+		Student created = studentService.createStudent(toCreate).call();
 		
 		assertThat(created).isEqualTo(STUDENT_DEFAULT_1);
 	}
@@ -150,10 +375,17 @@ public class StudentServiceTest {
 	public void testUpdateStudentBadId() {
 		given(studentRepository.findOne(STUDENT_DEFAULT_1.getId())).willReturn(null);
 		
-		Throwable thrown = catchThrowable(() -> studentService.updateStudent(STUDENT_DEFAULT_1));
+		Throwable thrown = catchThrowable(() -> studentService.updateStudent(STUDENT_DEFAULT_1, "*").call());
 		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No students found with ID");
 	}
 
+	@Test
+	public void testUpdateStudentWithoutIfMatch() {
+		Throwable thrown = catchThrowable(() -> studentService.updateStudent(STUDENT_DEFAULT_1, null).call());
+		assertThat(thrown).isNotNull().isInstanceOf(PreconditionRequiredException.class);
+		verify(studentRepository, never()).findOne(anyInt());
+	}
+
 	// column enforcement (not null, unique, etc) needs to be tested by the Integration tests, 
 	/** 
 	@Test
@@ -162,18 +394,180 @@ public class StudentServiceTest {
 	**/
 	
 	@Test
-	public void testUpdateStudentOK() {
-		given(studentRepository.findOne(STUDENT_DEFAULT_1.getId())).willReturn(STUDENT_DEFAULT_1);
-		given(studentRepository.save(STUDENT_DEFAULT_1)).willReturn(STUDENT_DEFAULT_1);
+	public void testUpdateStudentOK() throws Exception {
+		Student current = currentStudent(3L);
+		given(studentRepository.findOne(1)).willReturn(current);
+		given(courseRepository.findAll(Collections.singleton(2))).willReturn(Collections.singletonList(COURSE_DEFAULT_2));
 		
-		Student updated = null;
-		try {
-			updated = studentService.updateStudent(STUDENT_DEFAULT_1);
-		} catch (Throwable t) {
-			fail("Student update should not have caused an exception", t);
-		}
-		assertThat(updated).isEqualTo(STUDENT_DEFAULT_1);
+		Student changed = STUDENT_DEFAULT_1.toBuilder().name("cStudent").clearCourses().course(COURSE_DEFAULT_2).build();
+		ResponseEntity<Student> updated = studentService.updateStudent(changed, "\"student-1-3-0\"").call();
+		
+		assertThat(updated.getBody()).isSameAs(current).isEqualTo(changed);
+		assertThat(updated.getBody().getCourses()).containsExactly(COURSE_DEFAULT_2);
+		assertThat(updated.getHeaders().getETag()).startsWith("\"student-1-3-");
+		verify(studentRepository).flush();
+		verify(entityCache).evictStudent(1, Collections.singletonList(COURSE_DEFAULT_1), Collections.singletonList(COURSE_DEFAULT_2));
+		verify(enrollmentCounts).studentCoursesChanged(Collections.singletonList(COURSE_DEFAULT_1), Collections.singletonList(COURSE_DEFAULT_2));
+	}
+	
+	@Test
+	public void testUpdateStudentUnknownCourse() {
+		given(studentRepository.findOne(1)).willReturn(currentStudent(3L));
+		given(courseRepository.findAll(Collections.singleton(2))).willReturn(Collections.emptyList());
+		
+		Student changed = STUDENT_DEFAULT_1.toBuilder().clearCourses().course(COURSE_DEFAULT_2).build();
+		Throwable thrown = catchThrowable(() -> studentService.updateStudent(changed, "*").call());
+		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class);
+		verify(studentRepository, never()).flush();
+	}
+	
+	@Test
+	public void testUpdateStudentIfMatchChanged() {
+		given(studentRepository.findOne(1)).willReturn(currentStudent(3L));
+		
+		Throwable thrown = catchThrowable(() -> studentService.updateStudent(STUDENT_DEFAULT_1, "\"student-1-2-0\"").call());
+		assertThat(thrown).isNotNull().isInstanceOf(PreconditionFailedException.class);
+		verify(studentRepository, never()).flush();
+	}
+	
+	@Test
+	public void testUpdateStudentConcurrentWrite() {
+		given(studentRepository.findOne(1)).willReturn(currentStudent(3L));
+		given(courseRepository.findAll(Collections.singleton(1))).willReturn(Collections.singletonList(COURSE_DEFAULT_1));
+		// the versioned UPDATE found another version
+		doThrow(new ObjectOptimisticLockingFailureException(Student.class, 1)).when(studentRepository).flush();
+		
+		// the version named was the current one when read, not any more when written
+		Throwable thrown = catchThrowable(() -> studentService.updateStudent(STUDENT_DEFAULT_1, "\"student-1-3-0\"").call());
+		assertThat(thrown).isNotNull().isInstanceOf(PreconditionFailedException.class);
+		verify(enrollmentCounts, never()).studentCoursesChanged(Matchers.<Collection<Course>>any(), Matchers.<Collection<Course>>any());
+	}
+	
+	// as read by the repository: a mutable set of courses, and a version
+	private static Student currentStudent(long version) {
+		Student current = STUDENT_DEFAULT_1.toBuilder().version(version).build();
+		current.setCourses(new HashSet<>(STUDENT_DEFAULT_1.getCourses()));
+		return current;
+	}
+	
+	/*******************************************************************************************************************************/
+	/***   Patch Students tests                                                                                                 ***/
+	/*******************************************************************************************************************************/
+
+	@Test
+	public void testPatchStudentOK() throws Exception {
+		Map<String, Object> columns = new HashMap<>();
+		columns.put("name", "Ross");
+		columns.put("start_dt", new Timestamp(1000));
+		given(partialUpdates.updateStudent(eq(1), eq(columns), anyLong())).willReturn(1);
+		
+		studentService.patchStudent(1, objectMapper.readTree("{\"name\":\"Ross\",\"startDt\":1000}")).call();
+		
+		verify(studentRepository, never()).findOne(anyInt());
+		verify(entityCache).evictStudent(1, null, null);
+		verify(searchIndex).putStudent(1, "Ross");
+	}
+	
+	@Test
+	public void testPatchStudentClearsStartDate() throws Exception {
+		given(partialUpdates.updateStudent(eq(1), eq(Collections.singletonMap("start_dt", null)), anyLong())).willReturn(1);
+		
+		studentService.patchStudent(1, objectMapper.readTree("{\"startDt\":null}")).call();
+		
+		verify(entityCache).evictStudent(1, null, null);
+		// not renamed
+		verify(searchIndex, never()).putStudent(anyInt(), any());
+	}
+	
+	@Test
+	public void testPatchStudentBadId() throws Exception {
+		given(partialUpdates.updateStudent(eq(99), Matchers.<Map<String, Object>>any(), anyLong())).willReturn(0);
+		
+		Throwable thrown = catchThrowable(() -> studentService.patchStudent(99, objectMapper.readTree("{\"name\":\"Ross\"}")).call());
+		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No students found with ID 99");
+		verify(entityCache, never()).evictStudent(anyInt(), any(), any());
+	}
+	
+	@Test
+	public void testPatchStudentCourses() throws Exception {
+		Throwable thrown = catchThrowable(() -> studentService.patchStudent(1, objectMapper.readTree("{\"courses\":[{\"id\":1}]}")).call());
+		assertThat(thrown).isNotNull().isInstanceOf(IllegalArgumentException.class);
+		verify(partialUpdates, never()).updateStudent(anyInt(), Matchers.<Map<String, Object>>any(), anyLong());
+	}
+	
+	/*******************************************************************************************************************************/
+	/***   Enrollment tests                                                                                                      ***/
+	/*******************************************************************************************************************************/
+
+	@Test
+	public void testEnrollOK() throws Exception {
+		given(enrollmentRepository.enroll(Arrays.asList(new Enrollment(1, 2)))).willReturn(new int[] { 1 });
+		
+		studentService.enroll(1, 2).call();
+		
+		InOrder inOrder = inOrder(enrollmentRepository);
+		// the student is locked before the insert
+		inOrder.verify(enrollmentRepository).touchStudents(eq(Collections.singleton(1)), anyLong());
+		inOrder.verify(enrollmentRepository).enroll(Arrays.asList(new Enrollment(1, 2)));
+		verify(enrollmentRepository).evictStudents(Collections.singleton(1));
+		verify(entityCache).evictStudent(1, null, null);
+		verify(enrollmentCounts).enrollmentsChanged(Arrays.asList(new Enrollment(1, 2)), true);
+		verify(studentRepository, never()).findOne(anyInt());
+	}
+	
+	@Test
+	public void testEnrollCourseNotFound() {
+		given(enrollmentRepository.enroll(Arrays.asList(new Enrollment(1, 99)))).willReturn(new int[] { 0 });
+		given(enrollmentRepository.findExistingStudentIds(Collections.singleton(1))).willReturn(new HashSet<>(Arrays.asList(1)));
+		given(enrollmentRepository.findExistingCourseIds(Collections.singleton(99))).willReturn(new HashSet<>());
+		
+		Throwable thrown = catchThrowable(() -> studentService.enroll(1, 99).call());
+		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No courses found with ID 99");
+		verify(entityCache, never()).evictStudent(anyInt(), any(), any());
+	}
+	
+	@Test
+	public void testUnenrollNotEnrolled() throws Exception {
+		given(enrollmentRepository.unenroll(Arrays.asList(new Enrollment(1, 2)))).willReturn(new int[] { 0 });
+		given(enrollmentRepository.findExistingStudentIds(Collections.singleton(1))).willReturn(new HashSet<>(Arrays.asList(1)));
+		given(enrollmentRepository.findExistingCourseIds(Collections.singleton(2))).willReturn(new HashSet<>(Arrays.asList(2)));
+		
+		// nothing to do is not an error
+		studentService.unenroll(1, 2).call();
+		
+		verify(enrollmentRepository).touchStudents(eq(Collections.emptySet()), anyLong());
+		verify(entityCache, never()).evictStudent(anyInt(), any(), any());
+	}
+	
+	@Test
+	public void testEnrollAllPartially() throws Exception {
+		List<Enrollment> rows = Arrays.asList(new Enrollment(1, 2), new Enrollment(2, null), new Enrollment(3, 2));
+		List<Enrollment> validRows = Arrays.asList(new Enrollment(1, 2), new Enrollment(3, 2));
+		given(enrollmentRepository.enroll(validRows)).willReturn(new int[] { 1, 0 });
+		given(enrollmentRepository.findExistingStudentIds(Collections.singleton(3))).willReturn(new HashSet<>());
+		given(enrollmentRepository.findExistingCourseIds(Collections.singleton(2))).willReturn(new HashSet<>(Arrays.asList(2)));
+		
+		ResponseEntity<BatchResult> response = studentService.enrollAll(rows).call();
+		
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.MULTI_STATUS);
+		assertThat(response.getBody().getSucceeded()).isEqualTo(1);
+		assertThat(response.getBody().getRows()).extracting(RowResult::getError)
+				.containsExactly(null, "Both a student ID and a course ID should be provided", "No students found with ID 3");
+		verify(enrollmentRepository).evictStudents(Collections.singleton(1));
+		verify(enrollmentCounts).enrollmentsChanged(Arrays.asList(new Enrollment(1, 2)), true);
+	}
+	
+	@Test
+	public void testEnrollAllUncountedRowsRecounted() throws Exception {
+		List<Enrollment> rows = Arrays.asList(new Enrollment(1, 2), new Enrollment(3, 4), new Enrollment(5, 4));
+		given(enrollmentRepository.enroll(rows)).willReturn(new int[] { 1, Statement.SUCCESS_NO_INFO, 1 });
+		
+		studentService.enrollAll(rows).call();
 		
+		// the driver could not tell whether the second row was inserted, its course is counted again instead
+		verify(enrollmentCounts).enrollmentsChanged(Arrays.asList(new Enrollment(1, 2)), true);
+		verify(enrollmentCounts).recount(Collections.singleton(4));
+		verify(enrollmentRepository, never()).countStudentsByCourse(anyCollectionOf(Integer.class));
 	}
 	
 	/*******************************************************************************************************************************/
@@ -184,15 +578,16 @@ public class StudentServiceTest {
 	public void testDeleteStudentBadId() {
 		given(studentRepository.findOne(STUDENT_DEFAULT_1.getId())).willReturn(null);
 
-		Throwable thrown = catchThrowable(() -> studentService.removeStudent(STUDENT_DEFAULT_1.getId()));
+		Throwable thrown = catchThrowable(() -> studentService.removeStudent(STUDENT_DEFAULT_1.getId()).call());
 		assertThat(thrown).isNotNull().isInstanceOf(NotFoundException.class).hasMessageContaining("No students found with ID");
 	}
 	
 	@Test
 	public void testDeleteStudentOK() {
 		given(studentRepository.findOne(STUDENT_DEFAULT_1.getId())).willReturn(STUDENT_DEFAULT_1);
-		Throwable thrown = catchThrowable(() -> studentService.removeStudent(STUDENT_DEFAULT_1.getId()));
+		Throwable thrown = catchThrowable(() -> studentService.removeStudent(STUDENT_DEFAULT_1.getId()).call());
 		assertThat(thrown).describedAs("Student deletion with a valid ID should not have caused an exception").isNull();
+		verify(enrollmentCounts).studentCoursesChanged(new ArrayList<>(STUDENT_DEFAULT_1.getCourses()), null);
 	}
 	
 }
@@ -0,0 +1,41 @@
+package com.springboot.brushup.students.roster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class RosterCsvReaderTest {
+	
+	@Test
+	public void testQuotedFieldsAndLineBreaks() throws IOException {
+		RosterCsvReader csv = new RosterCsvReader(new StringReader(
+				"﻿name,courses\r\n"
+				+ "Levi,RCPK\r\n"
+				+ "\"Smith, Rachel\",\"Atlassian;\"\"Java\"\" 101\"\n"
+				+ "\"Two\nLines\",\n"
+				+ "Last,"));
+		
+		assertThat(csv.readRecord()).containsExactly("name", "courses");
+		assertThat(csv.readRecord()).containsExactly("Levi", "RCPK");
+		assertThat(csv.getRecordLine()).isEqualTo(2);
+		assertThat(csv.readRecord()).containsExactly("Smith, Rachel", "Atlassian;\"Java\" 101");
+		assertThat(csv.readRecord()).containsExactly("Two\nLines", "");
+		assertThat(csv.getRecordLine()).isEqualTo(4);
+		assertThat(csv.readRecord()).containsExactly("Last", "");
+		assertThat(csv.getRecordLine()).isEqualTo(6);
+		assertThat(csv.readRecord()).isNull();
+	}
+	
+	@Test
+	public void testUnclosedQuote() throws IOException {
+		RosterCsvReader csv = new RosterCsvReader(new StringReader("name\n\"Levi\n"));
+		csv.readRecord();
+		
+		Throwable thrown = catchThrowable(csv::readRecord);
+		assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("line 2");
+	}
+}
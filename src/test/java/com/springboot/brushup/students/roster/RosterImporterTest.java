@@ -0,0 +1,155 @@
+package com.springboot.brushup.students.roster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.springboot.brushup.students.batch.BatchInserter;
+import com.springboot.brushup.students.batch.BatchResult;
+import com.springboot.brushup.students.batch.BatchResult.RowResult;
+import com.springboot.brushup.students.cache.EntityCache;
+import com.springboot.brushup.students.changes.ChangeFeed;
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.domain.Student;
+import com.springboot.brushup.students.repository.CourseRepository;
+import com.springboot.brushup.students.stats.EnrollmentCounts;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RosterImporterTest {
+	
+	private static final Course COURSE_DEFAULT_1 = Course.builder().id(1).name("aCourse").build();
+	private static final Course COURSE_DEFAULT_2 = Course.builder().id(2).name("bCourse").build();
+	
+	private static final String TAKEN_NAME = "Taken";
+	
+	@InjectMocks
+	private RosterImporter rosterImporter;
+	
+	@Mock
+	private BatchInserter batchInserter;
+	
+	@Mock
+	private CourseRepository courses;
+	
+	@Mock
+	private EntityCache entityCache;
+	
+	@Mock
+	private EnrollmentCounts enrollmentCounts;
+	
+	@Mock
+	private ChangeFeed changeFeed;
+	
+	// names of the students of every inserted chunk
+	private List<List<String>> chunks = new ArrayList<>();
+	
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		ReflectionTestUtils.setField(rosterImporter, "chunkSize", 2);
+		
+		given(courses.findByName(anyString())).willReturn(Collections.emptyList());
+		given(courses.findByName(COURSE_DEFAULT_1.getName())).willReturn(Arrays.asList(COURSE_DEFAULT_1));
+		given(courses.findByName(COURSE_DEFAULT_2.getName())).willReturn(Arrays.asList(COURSE_DEFAULT_2));
+		
+		// the chunk is reused once inserted, so the names are copied; taken names fail, the others are reported inserted
+		doAnswer(invocation -> {
+			List<Student> rows = (List<Student>) invocation.getArguments()[0];
+			List<String> names = new ArrayList<>();
+			List<Student> inserted = new ArrayList<>();
+			RowResult[] results = new RowResult[rows.size()];
+			for (int i = 0; i < rows.size(); i++) {
+				names.add(rows.get(i).getName());
+				if (TAKEN_NAME.equals(rows.get(i).getName())) {
+					results[i] = new RowResult(i, null, "Name taken");
+				} else {
+					results[i] = new RowResult(i, 100 + i, null);
+					inserted.add(rows.get(i));
+				}
+			}
+			chunks.add(names);
+			((Consumer<List<Student>>) invocation.getArguments()[4]).accept(inserted);
+			return BatchResult.of(results);
+		}).when(batchInserter).insert(anyListOf(Student.class), any(Function.class), any(BiConsumer.class), any(Function.class), any(Consumer.class));
+	}
+	
+	private RosterImport importRoster(String roster) {
+		RosterImport rosterImport = new RosterImport(1, "test");
+		rosterImporter.importRoster(rosterImport, new StringReader(roster));
+		return rosterImport;
+	}
+	
+	@Test
+	public void testImportInChunks() {
+		RosterImport rosterImport = importRoster(
+				"Courses,Name,Start_Date\n"
+				+ "aCourse;bCourse,Levi,2017-09-01\n"
+				+ "aCourse,Rachel,2017-09-01T08:00:00\n"
+				+ "\n"
+				+ ",Sam,\n");
+		
+		assertThat(rosterImport.getState()).isEqualTo(RosterImport.State.COMPLETED);
+		assertThat(chunks).containsExactly(Arrays.asList("Levi", "Rachel"), Arrays.asList("Sam"));
+		assertThat(rosterImport.getRowsRead()).isEqualTo(3);
+		assertThat(rosterImport.getStudentsCreated()).isEqualTo(3);
+		assertThat(rosterImport.getEnrollmentsCreated()).isEqualTo(3);
+		assertThat(rosterImport.getRowsFailed()).isEqualTo(0);
+		assertThat(rosterImport.getFinishedAt()).isNotNull();
+		
+		// looked up once per import
+		verify(courses, times(1)).findByName(COURSE_DEFAULT_1.getName());
+		verify(enrollmentCounts, times(2)).studentCoursesChanged(any(), any());
+	}
+	
+	@Test
+	public void testFailedRowsReportedWithTheirLines() {
+		RosterImport rosterImport = importRoster(
+				"name,courses\n"
+				+ "Levi,unknownCourse\n"
+				+ ",aCourse\n"
+				+ TAKEN_NAME + ",aCourse\n"
+				+ "Rachel,bCourse\n");
+		
+		assertThat(rosterImport.getState()).isEqualTo(RosterImport.State.COMPLETED);
+		assertThat(rosterImport.getRowsRead()).isEqualTo(4);
+		assertThat(rosterImport.getStudentsCreated()).isEqualTo(1);
+		assertThat(rosterImport.getRowsFailed()).isEqualTo(3);
+		assertThat(rosterImport.getErrors()).containsExactly(
+				"line 2: No courses found with name unknownCourse", 
+				"line 3: The student name should be provided",
+				"line 4: Name taken");
+		
+		verify(courses, times(1)).findByName("unknownCourse");
+	}
+	
+	@Test
+	public void testNoNameColumn() {
+		RosterImport rosterImport = importRoster("student,courses\nLevi,aCourse\n");
+		
+		assertThat(rosterImport.getState()).isEqualTo(RosterImport.State.FAILED);
+		assertThat(rosterImport.getFailure()).contains("No name column");
+		assertThat(chunks).isEmpty();
+	}
+}
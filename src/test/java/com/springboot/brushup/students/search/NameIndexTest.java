@@ -0,0 +1,93 @@
+package com.springboot.brushup.students.search;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.springboot.brushup.students.dto.NameMatch;
+
+public class NameIndexTest {
+
+	private NameIndex index;
+
+	@Before
+	public void setup() {
+		index = new NameIndex();
+		index.put(1, "Rachel Green");
+		index.put(2, "Ross Geller");
+		index.put(3, "Monica Geller");
+		index.put(4, "Chandler Bing");
+		index.put(5, "Zoë Rachmaninoff");
+	}
+
+	@Test
+	public void testPrefixOfNameOrWord() {
+		assertThat(names("ra", 10)).containsExactly("Rachel Green", "Zoë Rachmaninoff");
+		assertThat(names("gell", 10)).containsExactly("Monica Geller", "Ross Geller");
+		assertThat(names("ross g", 10)).containsExactly("Ross Geller");
+	}
+
+	@Test
+	public void testNormalized() {
+		assertThat(names("  CHANDLER   b", 10)).containsExactly("Chandler Bing");
+		assertThat(names("zoe", 10)).containsExactly("Zoë Rachmaninoff");
+	}
+
+	@Test
+	public void testTypoTolerated() {
+		assertThat(names("chnadler", 10)).containsExactly("Chandler Bing");
+		assertThat(names("monika", 10)).containsExactly("Monica Geller");
+		// too short to guess
+		assertThat(names("xo", 10)).isEmpty();
+	}
+
+	@Test
+	public void testExactPrefixesFirst() {
+		// "rach" is a prefix of both, "rachm" only of the second; "rache" is one edit away from it
+		assertThat(names("rache", 10)).containsExactly("Rachel Green", "Zoë Rachmaninoff");
+		assertThat(names("rache", 1)).containsExactly("Rachel Green");
+	}
+
+	@Test
+	public void testLimitAppliedAfterRanking() {
+		index.put(6, "Smith Adams");
+		index.put(7, "Zed Smith");
+
+		// names of one node, then names deeper under it: the first ones in alphabetical order make it
+		assertThat(names("gell", 1)).containsExactly("Monica Geller");
+		assertThat(names("smi", 1)).containsExactly("Smith Adams");
+	}
+
+	@Test
+	public void testRankedByNormalizedName() {
+		index.put(6, "bea Arthur");
+		index.put(7, "Ben Arthur");
+
+		assertThat(names("arthur", 10)).containsExactly("bea Arthur", "Ben Arthur");
+		assertThat(names("be", 1)).containsExactly("bea Arthur");
+	}
+
+	@Test
+	public void testUpdatedAndRemoved() {
+		index.put(2, "Ross Geller-Bing");
+		index.remove(4);
+
+		assertThat(names("bing", 10)).isEmpty();
+		assertThat(names("geller-bi", 10)).containsExactly("Ross Geller-Bing");
+		assertThat(index.size()).isEqualTo(4);
+		assertThat(index.search("ross", 10)).containsExactly(new NameMatch(2, "Ross Geller-Bing"));
+	}
+
+	@Test
+	public void testBlankQuery() {
+		assertThat(index.search("   ", 10)).isEmpty();
+	}
+
+	private List<String> names(String query, int limit) {
+		return index.search(query, limit).stream().map(NameMatch::getName).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,77 @@
+package com.springboot.brushup.students.startup;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+
+public class LazyInitializationPostProcessorTest {
+
+	static final AtomicInteger created = new AtomicInteger();
+	static final AtomicInteger initialized = new AtomicInteger();
+	static final AtomicInteger refreshed = new AtomicInteger();
+
+	static class Plain {
+		Plain() {
+			created.incrementAndGet();
+		}
+	}
+
+	static class Initializing implements SmartInitializingSingleton {
+		@Override
+		public void afterSingletonsInstantiated() {
+			initialized.incrementAndGet();
+		}
+	}
+
+	static class Loader {
+		@EventListener(ContextRefreshedEvent.class)
+		void load() {
+			refreshed.incrementAndGet();
+		}
+	}
+
+	@Before
+	public void setup() {
+		created.set(0);
+		initialized.set(0);
+		refreshed.set(0);
+	}
+
+	@Test
+	public void testBeansCreatedOnFirstUse() {
+		try (AnnotationConfigApplicationContext context = context()) {
+			assertThat(created.get()).isEqualTo(0);
+			assertThat(context.getBeanFactory().getBeanDefinition("plain").isLazyInit()).isTrue();
+
+			context.getBean(Plain.class);
+			assertThat(created.get()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void testSmartInitializingSingletonsAndEventListenersStillCalled() {
+		try (AnnotationConfigApplicationContext context = context()) {
+			assertThat(initialized.get()).isEqualTo(1);
+			// the listener methods of lazy beans too, the bean gets created for the event
+			assertThat(refreshed.get()).isEqualTo(1);
+		}
+	}
+
+	private static AnnotationConfigApplicationContext context() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.registerBeanDefinition("plain", new RootBeanDefinition(Plain.class));
+		context.registerBeanDefinition("initializing", new RootBeanDefinition(Initializing.class));
+		context.registerBeanDefinition("loader", new RootBeanDefinition(Loader.class));
+		context.addBeanFactoryPostProcessor(new LazyInitializationPostProcessor());
+		context.refresh();
+		return context;
+	}
+}
@@ -0,0 +1,132 @@
+package com.springboot.brushup.students.stats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.springboot.brushup.students.domain.Course;
+import com.springboot.brushup.students.dto.CourseStats;
+import com.springboot.brushup.students.dto.Enrollment;
+import com.springboot.brushup.students.repository.EnrollmentRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EnrollmentCountsTest {
+
+	private static final Course COURSE_DEFAULT_1 = Course.builder().id(1).name("aCourse").build();
+	private static final Course COURSE_DEFAULT_2 = Course.builder().id(2).name("bCourse").build();
+	private static final Course COURSE_DEFAULT_3 = Course.builder().id(3).name("cCourse").build();
+
+	@InjectMocks
+	private EnrollmentCounts enrollmentCounts;
+
+	@Mock
+	private EnrollmentRepository enrollmentRepository;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@Before
+	public void setup() {
+		Map<Integer, Integer> counts = new HashMap<>();
+		counts.put(2, 1);
+		counts.put(1, 3);
+		given(enrollmentRepository.countStudentsByCourse()).willReturn(counts);
+		enrollmentCounts.load();
+	}
+
+	@Test
+	public void testLoadedCountsByCourseId() {
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 3), new CourseStats(2, 1));
+	}
+
+	@Test
+	public void testStudentCoursesChangedMovesTheDifferenceOnly() {
+		enrollmentCounts.studentCoursesChanged(Arrays.asList(COURSE_DEFAULT_1, COURSE_DEFAULT_2), Arrays.asList(COURSE_DEFAULT_1, COURSE_DEFAULT_3));
+
+		// the only student of course 2 left it
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 3), new CourseStats(3, 1));
+	}
+
+	@Test
+	public void testNewAndDeletedStudents() {
+		enrollmentCounts.studentCoursesChanged(null, Arrays.asList(COURSE_DEFAULT_2, null));
+		enrollmentCounts.studentCoursesChanged(Arrays.asList(COURSE_DEFAULT_1), null);
+
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 2), new CourseStats(2, 2));
+	}
+
+	@Test
+	public void testEnrollmentsChanged() {
+		enrollmentCounts.enrollmentsChanged(Arrays.asList(new Enrollment(5, 2), new Enrollment(6, 2), new Enrollment(6, 3)), true);
+		enrollmentCounts.enrollmentsChanged(Arrays.asList(new Enrollment(7, 1)), false);
+
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 2), new CourseStats(2, 3), new CourseStats(3, 1));
+	}
+
+	@Test
+	public void testRecountReplacesTheCounts() {
+		given(enrollmentRepository.countStudentsByCourse(new HashSet<>(Arrays.asList(1, 2)))).willReturn(Collections.singletonMap(2, 4));
+
+		enrollmentCounts.recount(Arrays.asList(1, 2));
+
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(2, 4));
+	}
+
+	@Test
+	public void testChangesAppliedOnceCommitted() {
+		given(enrollmentRepository.countStudentsByCourse(Collections.singleton(2))).willReturn(Collections.singletonMap(2, 5));
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			enrollmentCounts.enrollmentsChanged(Arrays.asList(new Enrollment(5, 1), new Enrollment(5, 2)), true);
+			enrollmentCounts.recount(Collections.singleton(2));
+
+			assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 3), new CourseStats(2, 1));
+
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			assertThat(synchronizations).hasSize(1);
+			synchronizations.get(0).beforeCommit(false);
+			synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		// the recounted course does not take the change on top
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 4), new CourseStats(2, 5));
+	}
+
+	@Test
+	public void testChangesDroppedOnRollback() {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			enrollmentCounts.courseRemoved(1);
+			TransactionSynchronizationManager.getSynchronizations().get(0).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(1, 3), new CourseStats(2, 1));
+	}
+
+	@Test
+	public void testCourseRemoved() {
+		enrollmentCounts.courseRemoved(1);
+
+		assertThat(enrollmentCounts.getStats()).containsExactly(new CourseStats(2, 1));
+	}
+}